@@ -0,0 +1,113 @@
+package umu.tds.chord.bench;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.PlaylistFactory;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.SongRepository;
+import umu.tds.chord.model.User;
+import umu.tds.chord.model.UserRepository;
+
+/**
+ * Generador de catálogos sintéticos para las pruebas de rendimiento. Los textos
+ * se forman con sílabas para que los n-gramas se repartan como en nombres
+ * reales. Con la misma semilla se obtiene siempre el mismo catálogo.
+ */
+final class Catalog {
+
+	private static final String[] syllables = { "la", "ro", "sa", "me", "ti", "no", "ca", "de", "bo", "ra", "el",
+			"mi", "so", "lu", "ve", "ga", "tu", "fa", "pe", "ni" };
+	private static final String[] styles = { "Rock", "Pop", "Jazz", "Folk", "Tango", "Blues", "Soul", "Reggae",
+			"Metal", "Clasica", "Flamenco", "Bolero" };
+	private static final String password = "bench";
+	private static final int favouritesPerUser = 50;
+	private static final int playlistsPerUser = 5;
+	private static final int songsPerPlaylist = 20;
+
+	private Catalog() {
+	}
+
+	/**
+	 * Genera un texto aleatorio de las palabras indicadas.
+	 *
+	 * @param random Generador de números aleatorios.
+	 * @param words  Cantidad de palabras.
+	 *
+	 * @return Texto generado.
+	 */
+	static String text(Random random, int words) {
+		StringBuilder b = new StringBuilder();
+		for (int w = 0; w < words; w++) {
+			if (w > 0) {
+				b.append(' ');
+			}
+			int length = 2 + random.nextInt(3);
+			for (int i = 0; i < length; i++) {
+				b.append(syllables[random.nextInt(syllables.length)]);
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Obtiene un estilo aleatorio de los utilizados en el catálogo.
+	 *
+	 * @param random Generador de números aleatorios.
+	 *
+	 * @return Estilo elegido.
+	 */
+	static String style(Random random) {
+		return styles[random.nextInt(styles.length)];
+	}
+
+	/**
+	 * Vacía el repositorio de canciones y lo llena con un catálogo sintético.
+	 *
+	 * @param size Cantidad de canciones.
+	 * @param seed Semilla del catálogo.
+	 *
+	 * @return Canciones añadidas.
+	 */
+	static List<Song> fill(int size, long seed) {
+		SongRepository.INSTANCE.clearSonRepositoryState();
+		Random random = new Random(seed);
+		List<Song> songs = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			SongRepository.INSTANCE.addSong(text(random, 1 + random.nextInt(3)), text(random, 1 + random.nextInt(2)),
+					"bench/" + i + ".mp3", style(random)).ifPresent(songs::add);
+		}
+		return songs;
+	}
+
+	/**
+	 * Crea usuarios con favoritas y playlists que referencian canciones del
+	 * catálogo, para medir el coste de mantener su consistencia.
+	 *
+	 * @param users Cantidad de usuarios.
+	 * @param songs Canciones del catálogo.
+	 * @param seed  Semilla de la selección de canciones.
+	 */
+	static void addUsers(int users, List<Song> songs, long seed) {
+		Random random = new Random(seed);
+		for (int i = 0; i < users; i++) {
+			String name = "bench" + i;
+			UserRepository.INSTANCE.addUser(name, password, new Date());
+			User u = UserRepository.INSTANCE.getUser(name, password).get();
+			for (int f = 0; f < favouritesPerUser && !songs.isEmpty(); f++) {
+				u.asMut().addFavouriteSong(songs.get(random.nextInt(songs.size())));
+			}
+			for (int p = 0; p < playlistsPerUser; p++) {
+				Playlist playlist = PlaylistFactory.createPlaylist(name + "/" + p, name).get();
+				for (int s = 0; s < songsPerPlaylist && !songs.isEmpty(); s++) {
+					playlist.asMut().addSong(songs.get(random.nextInt(songs.size())));
+				}
+				u.asMut().addPlaylist(playlist);
+			}
+			UserRepository.INSTANCE.updateUser(u);
+		}
+	}
+}
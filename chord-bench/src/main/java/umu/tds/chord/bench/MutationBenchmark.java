@@ -0,0 +1,91 @@
+package umu.tds.chord.bench;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.dao.DAOFactory.DAOImplementation;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.SongRepository;
+
+/**
+ * Pruebas de rendimiento de las operaciones que modifican o consultan la
+ * identidad de las canciones de {@link SongRepository}. La eliminación incluye
+ * la actualización de las favoritas y playlists de los usuarios.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationBenchmark {
+
+	private static final long seed = 7;
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	private int size;
+
+	@Param({ "0", "100" })
+	private int users;
+
+	private List<Song> songs;
+	private Random random;
+	private int added;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		DAOFactory.getInstance(DAOImplementation.IN_MEMORY);
+		songs = Catalog.fill(size, seed);
+		Catalog.addUsers(users, songs, seed);
+		random = new Random(seed);
+		added = 0;
+	}
+
+	@Benchmark
+	public Optional<Song> addSong() {
+		// Cada invocación añade una canción nueva. El catálogo crece durante la
+		// medición en una fracción despreciable de su tamaño.
+		added++;
+		return SongRepository.INSTANCE.addSong(Catalog.text(random, 2), Catalog.text(random, 1),
+				"bench/added/" + added + ".mp3", Catalog.style(random));
+	}
+
+	@Benchmark
+	public boolean removeAndAddSong() {
+		// Se vuelve a añadir la canción para mantener el tamaño del catálogo.
+		int index = random.nextInt(songs.size());
+		Song s = songs.get(index);
+		boolean removed = SongRepository.INSTANCE.removeSong(s);
+		SongRepository.INSTANCE.addSong(s.getName(), s.getAuthor(), s.getPath(), s.getStyle())
+				.ifPresent(n -> songs.set(index, n));
+		return removed;
+	}
+
+	@Benchmark
+	public boolean existSongHit() {
+		Song s = songs.get(random.nextInt(songs.size()));
+		return SongRepository.INSTANCE.existSong(s.getName(), s.getAuthor(), s.getPath(), s.getStyle());
+	}
+
+	@Benchmark
+	public boolean existSongMiss() {
+		Song s = songs.get(random.nextInt(songs.size()));
+		return SongRepository.INSTANCE.existSong(s.getName(), s.getAuthor(), s.getPath() + "#", s.getStyle());
+	}
+}
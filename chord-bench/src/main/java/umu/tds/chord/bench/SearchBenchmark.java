@@ -0,0 +1,139 @@
+package umu.tds.chord.bench;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.dao.DAOFactory.DAOImplementation;
+import umu.tds.chord.model.SearchPage;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.SongQuery;
+import umu.tds.chord.model.SongRepository;
+
+/**
+ * Pruebas de rendimiento de las búsquedas de {@link SongRepository} con
+ * distintas formas de filtro. Las consultas rotan sobre un conjunto mayor que la
+ * caché de resultados para medir búsquedas reales, salvo en
+ * {@link SearchBenchmark#repeatedSearch()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	private static final long seed = 42;
+	private static final int queries = 1024;
+	private static final int pageSize = 100;
+	private static final int fuzzyLimit = 50;
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	private int size;
+
+	private String[] titles;
+	private String[] authors;
+	private String[] letters;
+	private String[] styles;
+	private BitSet favourites;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		DAOFactory.getInstance(DAOImplementation.IN_MEMORY);
+		List<Song> songs = Catalog.fill(size, seed);
+
+		// Las consultas son fragmentos de textos del catálogo.
+		Random random = new Random(seed + 1);
+		titles = new String[queries];
+		authors = new String[queries];
+		letters = new String[queries];
+		styles = new String[queries];
+		for (int i = 0; i < queries; i++) {
+			Song s = songs.get(random.nextInt(songs.size()));
+			titles[i] = fragment(random, s.getName());
+			authors[i] = fragment(random, s.getAuthor());
+			letters[i] = String.valueOf(s.getName().charAt(random.nextInt(s.getName().length())));
+			styles[i] = Catalog.style(random);
+		}
+		favourites = new BitSet();
+		songs.stream().limit(100).forEach(s -> favourites.set(s.asMut().getId()));
+		next = 0;
+	}
+
+	private String fragment(Random random, String text) {
+		int length = Math.min(text.length(), 3 + random.nextInt(4));
+		int start = random.nextInt(text.length() - length + 1);
+		return text.substring(start, start + length);
+	}
+
+	private int nextQuery() {
+		next = (next + 1) % queries;
+		return next;
+	}
+
+	@Benchmark
+	public List<Song> titleSearch() {
+		return SongRepository.INSTANCE.getSearch(Optional.of(titles[nextQuery()]), Optional.empty(),
+				Optional.empty());
+	}
+
+	@Benchmark
+	public List<Song> titleAndAuthorSearch() {
+		int q = nextQuery();
+		return SongRepository.INSTANCE.getSearch(Optional.of(titles[q]), Optional.of(authors[q]), Optional.empty());
+	}
+
+	@Benchmark
+	public List<Song> singleCharacterSearch() {
+		return SongRepository.INSTANCE.getSearch(Optional.of(letters[nextQuery()]), Optional.empty(),
+				Optional.empty());
+	}
+
+	@Benchmark
+	public List<Song> styleSearch() {
+		return SongRepository.INSTANCE.getSearch(Optional.empty(), Optional.empty(),
+				Optional.of(styles[nextQuery()]));
+	}
+
+	@Benchmark
+	public List<Song> repeatedSearch() {
+		return SongRepository.INSTANCE.getSearch(Optional.empty(), Optional.empty(), Optional.empty());
+	}
+
+	@Benchmark
+	public SearchPage singleCharacterFirstPage() {
+		return SongRepository.INSTANCE.getSearchPage(Optional.of(letters[nextQuery()]), Optional.empty(),
+				Optional.empty(), favourites, false, Optional.empty(), pageSize);
+	}
+
+	@Benchmark
+	public List<Song> fuzzySearch() {
+		return SongRepository.INSTANCE.getFuzzySearch(Optional.empty(), Optional.of(authors[nextQuery()] + "x"),
+				Optional.empty(), s -> true, fuzzyLimit);
+	}
+
+	@Benchmark
+	public List<Song> querySearch() {
+		int q = nextQuery();
+		SongQuery query = SongQuery.parse("autor:\"" + authors[q] + "\" estilo:" + styles[q] + " plays<10").get();
+		return SongRepository.INSTANCE.getQuerySearch(query, favourites);
+	}
+}
@@ -5,11 +5,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
@@ -22,7 +25,10 @@ import com.itextpdf.text.pdf.PdfWriter;
 
 import umu.tds.chord.model.Playlist;
 import umu.tds.chord.model.PlaylistFactory;
+import umu.tds.chord.model.SearchFacets;
+import umu.tds.chord.model.SearchPage;
 import umu.tds.chord.model.Song;
+import umu.tds.chord.model.SongQuery;
 import umu.tds.chord.model.SongRepository;
 import umu.tds.chord.model.User;
 import umu.tds.chord.model.UserRepository;
@@ -49,11 +55,20 @@ public enum Controller {
 
 	private static final String adminUser = "admin";
 	private static final String pdfTitle = "Chord. Resumen del usuario ";
+	private static final int searchPageSize = 100;
+	private static final int fuzzySearchLimit = 50;
+	private static final int completionLimit = 8;
 
 	private BuscadorCanciones buscadorCanciones;
 
 	private Optional<User> currentUser;
 
+	private SearchScheduler searchScheduler;
+	// Búsqueda paginada en curso. Obtiene la página posterior al cursor dado.
+	private Function<Optional<Song>, SearchPage> searchPager;
+	private Optional<Song> searchCursor;
+	private boolean searchHasMore;
+
 	private Set<SongStatusListener> songStatusListeners;
 	private Set<UserStatusListener> userStatusListeners;
 
@@ -61,6 +76,8 @@ public enum Controller {
 		registerCancionesListener();
 
 		currentUser = Optional.empty();
+		searchScheduler = new SearchScheduler();
+		clearSearchState();
 
 		userStatusListeners = new HashSet<>();
 		songStatusListeners = new HashSet<>();
@@ -97,6 +114,9 @@ public enum Controller {
 		if (currentUser.isEmpty()) {
 			currentUser = UserRepository.INSTANCE.getUser(username, password);
 			currentUser.ifPresent(u -> {
+				// Los usuarios se recuperan sin sus referencias. Se cargan al
+				// iniciar sesión.
+				u.asMut().resolveReferences();
 				UserStatusEvent e = new UserStatusEvent(this, u);
 				userStatusListeners.forEach(l -> l.onUserLogin(e));
 			});
@@ -118,12 +138,14 @@ public enum Controller {
 	 */
 	public boolean logout() {
 		currentUser.ifPresent(u -> {
-			boolean updated = UserRepository.INSTANCE.updateUser(u);
+			// Se escriben también las actualizaciones diferidas del usuario.
+			boolean updated = UserRepository.INSTANCE.updateUser(u) && UserRepository.INSTANCE.flush();
 			if (updated) {
 				currentUser = Optional.empty();
 				UserStatusEvent e = new UserStatusEvent(this, null);
 				userStatusListeners.forEach(l -> l.onUserLogout(e));
 				Player.INSTANCE.clearState();
+				clearSearchState();
 			}
 		});
 		return currentUser.isEmpty();
@@ -148,6 +170,7 @@ public enum Controller {
 				UserStatusEvent e = new UserStatusEvent(this, null);
 				userStatusListeners.forEach(l -> l.onUserLogout(e));
 				Player.INSTANCE.clearState();
+				clearSearchState();
 			}
 		});
 		return currentUser.isEmpty();
@@ -172,7 +195,7 @@ public enum Controller {
 	 */
 	public void toggleFavourite(Song s) {
 		currentUser.ifPresent(u -> {
-			boolean isFavourite = u.getFavouriteSongs().contains(s);
+			boolean isFavourite = u.isFavourite(s);
 
 			if (isFavourite)
 				u.asMut().removeFavouriteSong(s);
@@ -202,6 +225,14 @@ public enum Controller {
 	/**
 	 * Realiza una búsqueda de canciones a partir de los filtros proporcionados.
 	 * 
+	 * La búsqueda es asíncrona. Las peticiones recibidas dentro de la ventana de
+	 * agrupación se reducen a la última, que se ejecuta en segundo plano. Sólo el
+	 * resultado de la búsqueda más reciente se notifica a los escuchadores, en el
+	 * hilo de eventos de Swing.
+	 * 
+	 * Se notifica únicamente la primera página de resultados. Las siguientes se
+	 * solicitan mediante {@link Controller#nextSearchPage()}.
+	 * 
 	 * @param n Nombre de la canción.
 	 * @param a Autor de la canción.
 	 * @param f El usuario la ha marcado como favorita.
@@ -212,16 +243,199 @@ public enum Controller {
 		if (!currentUser.isPresent())
 			return;
 
-		// Buscar y eliminar las que no coincidan con el filtro de favorito.
-		List<Song> searched = new ArrayList<>(SongRepository.INSTANCE.getSearch(n, a, s));
-		// Si se buscan favoritas eliminar las no favoritas.
-		if (f)
-			searched.removeIf(song -> !currentUser.get().getFavouriteSongs().contains(song));
+		// Copia de las ids favoritas para no leer el estado del usuario desde el
+		// hilo de búsqueda.
+		BitSet favourites = currentUser.get().getFavouriteIds();
+		Function<Optional<Song>, SearchPage> pager = cursor -> SongRepository.INSTANCE.getSearchPage(n, a, s,
+				favourites, f, cursor, searchPageSize);
 
-		// Pasar la infomración a los escuchadores interesados.
-		SongStatusEvent e = new SongStatusEvent(this);
-		e.setSongs(searched);
-		songStatusListeners.forEach(l -> l.onSongSearch(e));
+		submitSearch(pager);
+	}
+
+	/**
+	 * Realiza una búsqueda de canciones a partir de una expresión del lenguaje de
+	 * consultas. Véase {@link SongQuery}.
+	 * 
+	 * La búsqueda es asíncrona y paginada igual que
+	 * {@link Controller#searchSongs}. Si la expresión no es válida se notifica
+	 * una búsqueda fallida.
+	 * 
+	 * @param query Expresión de la consulta.
+	 */
+	public void querySongs(String query) {
+		if (!currentUser.isPresent())
+			return;
+
+		Optional<SongQuery> q = SongQuery.parse(query);
+		if (q.isEmpty()) {
+			// Descartar la búsqueda en curso, ya no corresponde al formulario.
+			clearSearchState();
+			SongStatusEvent e = new SongStatusEvent(this);
+			e.setFailed(true);
+			songStatusListeners.forEach(l -> l.onSongSearch(e));
+			return;
+		}
+
+		BitSet favourites = currentUser.get().getFavouriteIds();
+		Function<Optional<Song>, SearchPage> pager = cursor -> SongRepository.INSTANCE.getQueryPage(q.get(),
+				favourites, cursor, searchPageSize);
+
+		submitSearch(pager);
+	}
+
+	private void submitSearch(Function<Optional<Song>, SearchPage> pager) {
+		searchScheduler.submit(() -> pager.apply(Optional.empty()), page -> {
+			// La sesión ha podido cerrarse mientras se buscaba.
+			if (!currentUser.isPresent())
+				return;
+
+			searchPager = pager;
+			searchCursor = page.getCursor();
+			searchHasMore = page.hasMore();
+
+			// Pasar la infomración a los escuchadores interesados.
+			SongStatusEvent e = new SongStatusEvent(this);
+			e.setSongs(page.getSongs());
+			e.setHasMore(page.hasMore());
+			e.setFacets(page.getFacets());
+			songStatusListeners.forEach(l -> l.onSongSearch(e));
+		});
+	}
+
+	/**
+	 * Realiza una búsqueda aproximada de canciones, tolerante a errores
+	 * tipográficos en el nombre y el autor. Véase
+	 * {@link SongRepository#getFuzzySearch}.
+	 * 
+	 * La búsqueda es asíncrona igual que {@link Controller#searchSongs}. Se
+	 * notifican las canciones más parecidas ordenadas por parecido, sin páginas
+	 * adicionales.
+	 * 
+	 * @param n Nombre aproximado de la canción.
+	 * @param a Autor aproximado de la canción.
+	 * @param s Estilo de la canción.
+	 * @param f El usuario la ha marcado como favorita.
+	 */
+	public void fuzzySearchSongs(Optional<String> n, Optional<String> a, Optional<String> s, boolean f) {
+		if (!currentUser.isPresent())
+			return;
+
+		Predicate<Song> filter = favouriteFilter(f);
+
+		searchScheduler.submit(() -> SongRepository.INSTANCE.getFuzzySearch(n, a, s, filter, fuzzySearchLimit),
+				songs -> {
+					if (!currentUser.isPresent())
+						return;
+
+					// No hay más páginas que solicitar.
+					searchPager = null;
+					searchCursor = Optional.empty();
+					searchHasMore = false;
+
+					SongStatusEvent e = new SongStatusEvent(this);
+					e.setSongs(songs);
+					songStatusListeners.forEach(l -> l.onSongSearch(e));
+				});
+	}
+
+	private Predicate<Song> favouriteFilter(boolean f) {
+		if (!f)
+			return song -> true;
+		// Copia de las ids favoritas para no leer el estado del usuario desde el
+		// hilo de búsqueda. Se quedan las canciones que tengan su bit activo.
+		BitSet favourites = currentUser.get().getFavouriteIds();
+		return song -> favourites.get(song.asMut().getId());
+	}
+
+	/**
+	 * Solicita la siguiente página de resultados de la última búsqueda notificada.
+	 * No hace nada si no quedan resultados o ya se está obteniendo una página.
+	 */
+	public void nextSearchPage() {
+		// Una búsqueda en curso tiene prioridad sobre la página solicitada.
+		if (!currentUser.isPresent() || searchPager == null || !searchHasMore || searchScheduler.isBusy())
+			return;
+
+		Function<Optional<Song>, SearchPage> pager = searchPager;
+		Optional<Song> cursor = searchCursor;
+		// Evitar peticiones repetidas mientras se obtiene la página.
+		searchHasMore = false;
+
+		searchScheduler.submitNow(() -> pager.apply(cursor), page -> {
+			if (!currentUser.isPresent() || pager != searchPager)
+				return;
+
+			searchCursor = page.getCursor().or(() -> cursor);
+			searchHasMore = page.hasMore();
+
+			SongStatusEvent e = new SongStatusEvent(this);
+			e.setSongs(page.getSongs());
+			e.setHasMore(page.hasMore());
+			songStatusListeners.forEach(l -> l.onSongSearchPage(e));
+		});
+	}
+
+	private void clearSearchState() {
+		searchScheduler.cancel();
+		searchPager = null;
+		searchCursor = Optional.empty();
+		searchHasMore = false;
+	}
+
+	/**
+	 * Obtiene el recuento por estilo y autor del catálogo de canciones. Véase
+	 * {@link Controller#getFavouriteCount(SearchFacets)}.
+	 * 
+	 * @return Recuento del catálogo.
+	 */
+	public SearchFacets getFacets() {
+		return SongRepository.INSTANCE.getFacets();
+	}
+
+	/**
+	 * Obtiene la cantidad de canciones de un recuento que son favoritas del
+	 * usuario con la sesión iniciada. Se calcula con sus favoritas actuales, por
+	 * lo que no es necesario obtener de nuevo el recuento al cambiarlas.
+	 * 
+	 * @param facets Recuento del catálogo o de una búsqueda.
+	 * 
+	 * @return Número de canciones favoritas. 0 si no hay sesión iniciada.
+	 */
+	public int getFavouriteCount(SearchFacets facets) {
+		return currentUser.map(u -> facets.getFavouriteCount(u.getFavouriteIds())).orElse(0);
+	}
+
+	/**
+	 * Obtiene sugerencias de nombres de canción que comienzan por el texto dado,
+	 * priorizando las más reproducidas.
+	 * 
+	 * @param prefix Texto escrito por el usuario.
+	 * 
+	 * @return Lista de nombres sugeridos.
+	 */
+	public List<String> getTitleCompletions(String prefix) {
+		return SongRepository.INSTANCE.getTitleCompletions(prefix, completionLimit);
+	}
+
+	/**
+	 * Obtiene sugerencias de autores que comienzan por el texto dado, priorizando
+	 * los más reproducidos.
+	 * 
+	 * @param prefix Texto escrito por el usuario.
+	 * 
+	 * @return Lista de autores sugeridos.
+	 */
+	public List<String> getAuthorCompletions(String prefix) {
+		return SongRepository.INSTANCE.getAuthorCompletions(prefix, completionLimit);
+	}
+
+	/**
+	 * Establece la ventana de agrupación de las búsquedas de canciones.
+	 * 
+	 * @param millis Ventana en milisegundos.
+	 */
+	public void setSearchDebounce(long millis) {
+		searchScheduler.setDebounce(millis);
 	}
 
 	/**
@@ -418,8 +632,7 @@ public enum Controller {
 	 * @param s Canción a la que se le desean incrementar las reproducciones.
 	 */
 	protected void incrementSongReproduction(Song s) {
-		s.asMut().addReproduccion();
-		SongRepository.INSTANCE.updateSong(s);
+		SongRepository.INSTANCE.addPlay(s);
 	}
 
 	/**
@@ -460,6 +673,7 @@ public enum Controller {
 	public void cargarCancionesLocal(String path) {
 		SongStatusEvent ev = new SongStatusEvent(this);
 		File dir = new File(path);
+		List<Song> batch = new ArrayList<>();
 		
 		Arrays.asList(dir.listFiles((c, n) -> new File(c, n).isDirectory())).forEach(subdir -> {
 			String style = subdir.getName();
@@ -469,12 +683,14 @@ public enum Controller {
 					String name = songFile.getName().split(Player.EXTENSION)[0];
 					String author = name.split("-")[0].replace('&', ',');
 					String title = name.split("-")[1];
-					SongRepository.INSTANCE.addSong(title, author, songPath, style).ifPresent(ev::addSong);
+					new Song.Builder(title).author(author).path(songPath).style(style).build().ifPresent(batch::add);
 				}
 				catch (IOException e) {}	
 			});
 		});
 		
+		// Registro en bloque de todas las canciones del directorio.
+		ev.setSongs(SongRepository.INSTANCE.addSongs(batch));
 		songStatusListeners.forEach(l -> l.onSongLoad(ev));
 	}
 
@@ -497,15 +713,17 @@ public enum Controller {
 			return;
 		}
 		
-		// Añadir las canciones al repositorio.
+		// Añadir las canciones al repositorio en un único lote.
 		Canciones canciones = c.get();
+		List<Song> batch = new ArrayList<>();
 		canciones.getCancion().forEach(s -> {
 			String name = s.getTitulo();
 			String author = s.getInterprete();
 			String url = s.getURL();
 			String style = s.getEstilo();
-			SongRepository.INSTANCE.addSong(name, author, url, style).ifPresent(e::addSong);
+			new Song.Builder(name).author(author).path(url).style(style).build().ifPresent(batch::add);
 		});
+		e.setSongs(SongRepository.INSTANCE.addSongs(batch));
 
 		// Envío del evento.
 		songStatusListeners.forEach(l -> l.onSongLoad(e));
@@ -569,8 +787,13 @@ public enum Controller {
 	 *          forzada actualizando sus datos en el caso de que hubiese cambios.
 	 */
 	public void clearControllerState() {
+		clearSearchState();
 		currentUser.ifPresent(u -> {
-			UserRepository.INSTANCE.updateUser(u);
+			// Se escriben también las actualizaciones diferidas del usuario. El
+			// reseteo es forzado, por lo que la sesión se cierra aunque fallen.
+			if (UserRepository.INSTANCE.updateUser(u)) {
+				UserRepository.INSTANCE.flush();
+			}
 			currentUser = Optional.empty();
 		});
 		songStatusListeners.clear();
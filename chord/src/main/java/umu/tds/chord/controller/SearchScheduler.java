@@ -0,0 +1,136 @@
+package umu.tds.chord.controller;
+
+import java.awt.EventQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Planificador de búsquedas en segundo plano. Agrupa las peticiones que llegan
+ * dentro de una ventana de tiempo configurable, ejecuta la última de ellas en
+ * un hilo de trabajo cancelando las que hayan quedado obsoletas y publica su
+ * resultado en el hilo de eventos de Swing sólo si sigue siendo la petición más
+ * reciente.
+ *
+ * Las búsquedas obsoletas en ejecución se interrumpen. Las búsquedas del
+ * repositorio de canciones comprueban la interrupción mientras recorren los
+ * candidatos, por lo que no siguen ocupando el hilo ni el repositorio.
+ */
+final class SearchScheduler {
+
+	/**
+	 * Propiedad del sistema con la ventana de agrupación en milisegundos.
+	 */
+	static final String DEBOUNCE_PROPERTY = "chord.search.debounce";
+
+	private static final long defaultDebounce = 150;
+	private static final String threadName = "chord-search";
+
+	private final ScheduledExecutorService executor;
+	private final AtomicLong generation;
+	private Future<?> pending;
+	private long debounce;
+
+	/**
+	 * Crea un planificador con la ventana indicada en
+	 * {@link SearchScheduler#DEBOUNCE_PROPERTY} o la ventana por defecto.
+	 */
+	SearchScheduler() {
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, threadName);
+			t.setDaemon(true);
+			return t;
+		});
+		generation = new AtomicLong();
+		pending = null;
+		debounce = Long.getLong(DEBOUNCE_PROPERTY, defaultDebounce);
+	}
+
+	/**
+	 * Programa una búsqueda, sustituyendo a la que estuviese pendiente o en
+	 * ejecución.
+	 *
+	 * @param <T>       Tipo del resultado de la búsqueda.
+	 * @param search    Búsqueda que se ejecutará en el hilo de trabajo.
+	 * @param publisher Consumidor del resultado. Se invoca en el hilo de eventos
+	 *                  de Swing.
+	 */
+	synchronized <T> void submit(Supplier<T> search, Consumer<T> publisher) {
+		schedule(search, publisher, debounce);
+	}
+
+	/**
+	 * Programa una búsqueda sin esperar la ventana de agrupación, sustituyendo a
+	 * la que estuviese pendiente o en ejecución. Utilizado para continuar
+	 * búsquedas ya publicadas.
+	 *
+	 * @param <T>       Tipo del resultado de la búsqueda.
+	 * @param search    Búsqueda que se ejecutará en el hilo de trabajo.
+	 * @param publisher Consumidor del resultado. Se invoca en el hilo de eventos
+	 *                  de Swing.
+	 */
+	synchronized <T> void submitNow(Supplier<T> search, Consumer<T> publisher) {
+		schedule(search, publisher, 0);
+	}
+
+	private <T> void schedule(Supplier<T> search, Consumer<T> publisher, long delay) {
+		long id = generation.incrementAndGet();
+		if (pending != null) {
+			pending.cancel(true);
+		}
+
+		pending = executor.schedule(() -> {
+			T result;
+			try {
+				result = search.get();
+			} catch (CancellationException e) {
+				// La búsqueda se ha interrumpido al ser sustituida.
+				return;
+			}
+			// Descartar resultados de búsquedas ya sustituidas.
+			if (Thread.currentThread().isInterrupted() || generation.get() != id) {
+				return;
+			}
+			EventQueue.invokeLater(() -> {
+				if (generation.get() == id) {
+					publisher.accept(result);
+				}
+			});
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Indica si hay una búsqueda pendiente o en ejecución.
+	 *
+	 * @return {@code true} si la última búsqueda programada no ha terminado.
+	 */
+	synchronized boolean isBusy() {
+		return pending != null && !pending.isDone();
+	}
+
+	/**
+	 * Cancela la búsqueda pendiente o en ejecución. Su resultado no se publicará.
+	 */
+	synchronized void cancel() {
+		generation.incrementAndGet();
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Establece la ventana de agrupación de peticiones.
+	 *
+	 * @param millis Ventana en milisegundos. Los valores negativos se tratan como
+	 *               0.
+	 */
+	synchronized void setDebounce(long millis) {
+		debounce = Math.max(0, millis);
+	}
+}
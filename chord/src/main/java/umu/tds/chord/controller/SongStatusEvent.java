@@ -3,7 +3,9 @@ package umu.tds.chord.controller;
 import java.util.ArrayList;
 import java.util.EventObject;
 import java.util.List;
+import java.util.Optional;
 
+import umu.tds.chord.model.SearchFacets;
 import umu.tds.chord.model.Song;
 
 /**
@@ -16,6 +18,8 @@ public class SongStatusEvent extends EventObject {
 
 	private List<Song> songs;
 	private boolean failed;
+	private boolean hasMore;
+	private Optional<SearchFacets> facets;
 
 	/**
 	 * Constructor por defecto.
@@ -27,6 +31,8 @@ public class SongStatusEvent extends EventObject {
 
 		this.songs = new ArrayList<>();
 		this.failed = false;
+		this.hasMore = false;
+		this.facets = Optional.empty();
 	}
 
 	/**
@@ -64,4 +70,32 @@ public class SongStatusEvent extends EventObject {
 	protected void setFailed(boolean failed) {
 		this.failed = failed;
 	}
+
+	/**
+	 * Indica si la búsqueda notificada tiene más resultados que pueden
+	 * solicitarse mediante {@link Controller#nextSearchPage()}.
+	 * 
+	 * @return {@code true} si existen más páginas de resultados.
+	 */
+	public boolean hasMore() {
+		return hasMore;
+	}
+
+	protected void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+
+	/**
+	 * Obtiene el recuento por estilo, autor y favoritas del resultado completo de
+	 * la búsqueda notificada, si se ha calculado.
+	 * 
+	 * @return Opcional con el recuento del resultado.
+	 */
+	public Optional<SearchFacets> getFacets() {
+		return facets;
+	}
+
+	protected void setFacets(Optional<SearchFacets> facets) {
+		this.facets = facets;
+	}
 }
@@ -30,4 +30,14 @@ public interface SongStatusListener extends EventListener {
 	 */
 	public default void onSongSearch(SongStatusEvent e) {
 	}
+
+	/**
+	 * Emitido cuando se obtiene una nueva página de resultados de la última
+	 * búsqueda de canciones. Las canciones del evento se añaden a las ya
+	 * notificadas.
+	 * 
+	 * @param e Evento de estado de canciones.
+	 */
+	public default void onSongSearchPage(SongStatusEvent e) {
+	}
 }
@@ -3,6 +3,7 @@ package umu.tds.chord.dao;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import umu.tds.chord.model.Persistent;
@@ -34,6 +35,35 @@ public interface DAO<T extends Persistent> {
 				.collect(Collectors.joining(REPRESENTATION_STRING_SEPARATOR));
 	}
 
+	/**
+	 * Obtiene el conjunto de ids de una cadena de texto generada mediante
+	 * {@link DAO#persistentsToString(List)}, sin recuperar los objetos. Permite
+	 * calcular diferencias entre listas de objetos persistentes.
+	 *
+	 * @param representation Cadena con las ids de los objetos.
+	 *
+	 * @return Conjunto de las ids de la cadena.
+	 */
+	public static Set<Integer> stringToIds(String representation) {
+		return Arrays.stream(representation.split(REPRESENTATION_STRING_SEPARATOR)).filter(s -> !s.isEmpty())
+				.map(Integer::valueOf).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Obtiene la lista de ids de una cadena de texto generada mediante
+	 * {@link DAO#persistentsToString(List)}, sin recuperar los objetos. A
+	 * diferencia de {@link DAO#stringToIds(String)} conserva el orden y las ids
+	 * repetidas.
+	 *
+	 * @param representation Cadena con las ids de los objetos.
+	 *
+	 * @return Lista no modificable de las ids de la cadena.
+	 */
+	public static List<Integer> stringToIdList(String representation) {
+		return Arrays.stream(representation.split(REPRESENTATION_STRING_SEPARATOR)).filter(s -> !s.isEmpty())
+				.map(Integer::valueOf).toList();
+	}
+
 	/**
 	 * Elimina una entidad registrada en persistencia.
 	 *
@@ -72,6 +102,21 @@ public interface DAO<T extends Persistent> {
 		// Continuar en las implementaciones.
 	}
 
+	/**
+	 * Modifica en bloque una lista de objetos registrados para actualizar sus
+	 * datos persistentes.
+	 *
+	 * @param list Objetos que se desean modificar en persistencia.
+	 *
+	 * @return Lista de solo lectura con los objetos modificados con éxito, en el
+	 *         orden de la lista dada.
+	 *
+	 * @implNote La implementación por defecto modifica los objetos uno a uno.
+	 */
+	public default List<T> modifyAll(List<T> list) {
+		return list.stream().filter(this::modify).toList();
+	}
+
 	/**
 	 * Obtiene el objeto identificado mediante el id dado.
 	 *
@@ -82,6 +127,23 @@ public interface DAO<T extends Persistent> {
 	 */
 	public Optional<T> recover(int id);
 
+	/**
+	 * Incorpora a la familia un objeto registrado obtenido sin su adaptador, por
+	 * ejemplo de una instantánea local. Las recuperaciones posteriores de su id
+	 * devolverán el mismo objeto.
+	 *
+	 * @param t Objeto registrado que se desea incorporar.
+	 *
+	 * @return Objeto de la familia asociado a la id de t. Será el propio t salvo
+	 *         que la familia ya tuviera otro objeto con esa id.
+	 *
+	 * @implNote La implementación por defecto no conserva los objetos y devuelve
+	 *           el propio t.
+	 */
+	public default T intern(T t) {
+		return t;
+	}
+
 	/**
 	 * Obtiene una lista con todos los objetos registrados.
 	 *
@@ -110,6 +172,24 @@ public interface DAO<T extends Persistent> {
 		// Continuar checks y registro en implementaciones.
 	}
 
+	/**
+	 * Registra en bloque una lista de objetos persistentes y establece la id
+	 * persistente de cada uno de los que se registren.
+	 *
+	 * @param list Objetos que se desean registrar.
+	 *
+	 * @return Lista de solo lectura con los objetos registrados con éxito, en el
+	 *         orden de la lista dada. Se omiten los que no cumplan los requisitos
+	 *         de {@link DAO#register(Persistent)}.
+	 *
+	 * @implNote La implementación por defecto registra los objetos uno a uno. Las
+	 *           implementaciones pueden aprovechar que todos los objetos son
+	 *           nuevos para reducir las consultas al servicio de persistencia.
+	 */
+	public default List<T> registerAll(List<T> list) {
+		return list.stream().filter(this::register).toList();
+	}
+
 	/**
 	 * Obtiene una lista de objetos persistentes a partir de una cadena de texto que
 	 * contiene la ids de los objetos a recuperar.
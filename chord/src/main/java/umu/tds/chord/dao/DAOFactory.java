@@ -1,5 +1,9 @@
 package umu.tds.chord.dao;
 
+import java.util.Optional;
+
+import umu.tds.chord.dao.log.LogDAOFactory;
+import umu.tds.chord.dao.memory.MemoryDAOFactory;
 import umu.tds.chord.dao.tds.TDSDAOFactory;
 import umu.tds.chord.model.Playlist;
 import umu.tds.chord.model.Song;
@@ -20,17 +24,41 @@ public abstract class DAOFactory {
 		 *
 		 * {@link TDSDAOFactory}
 		 */
-		TDS_FAMILY
+		TDS_FAMILY,
+
+		/**
+		 * Familia de adaptadores DAO que utiliza registros locales de solo adición.
+		 *
+		 * {@link LogDAOFactory}
+		 */
+		LOG_FAMILY,
+
+		/**
+		 * Familia de adaptadores DAO en memoria, sin persistencia entre
+		 * ejecuciones.
+		 *
+		 * {@link MemoryDAOFactory}
+		 */
+		IN_MEMORY
 	}
 
+	/**
+	 * Propiedad del sistema con el nombre de la familia de adaptadores que se
+	 * utilizará por defecto. Véase {@link DAOImplementation}.
+	 */
+	public static final String IMPLEMENTATION_PROPERTY = "chord.dao";
+
 	private static DAOFactory instance = null;
 
 	private static final String unimplemented = "Unimplemented family factory " + "on getInstance method.";
+	private static final String unknownImplementation = "Unknown family factory on " + IMPLEMENTATION_PROPERTY
+			+ " property.";
 
 	/**
 	 * Obtiene la instancia única de la factoria de adaptadores. Si es la primera
 	 * vez que se invoca se inicializará la instancia única utilizando la familia
-	 * {@link DAOImplementation#TDS_FAMILY}.
+	 * indicada en {@link DAOFactory#IMPLEMENTATION_PROPERTY} o, si no se indica
+	 * ninguna, la familia {@link DAOImplementation#TDS_FAMILY}.
 	 *
 	 * @return Instancia única de la fabrica de adaptadores.
 	 */
@@ -38,7 +66,16 @@ public abstract class DAOFactory {
 		if (instance != null) {
 			return instance;
 		}
-		return getInstance(DAOImplementation.TDS_FAMILY);
+
+		String configured = System.getProperty(IMPLEMENTATION_PROPERTY);
+		if (configured == null || configured.isBlank()) {
+			return getInstance(DAOImplementation.TDS_FAMILY);
+		}
+		try {
+			return getInstance(DAOImplementation.valueOf(configured.strip()));
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(unknownImplementation, e);
+		}
 	}
 
 	/**
@@ -64,6 +101,12 @@ public abstract class DAOFactory {
 		case TDS_FAMILY:
 			instance = new TDSDAOFactory();
 			break;
+		case LOG_FAMILY:
+			instance = new LogDAOFactory();
+			break;
+		case IN_MEMORY:
+			instance = new MemoryDAOFactory();
+			break;
 		default:
 			throw new RuntimeException(unimplemented);
 		}
@@ -71,6 +114,67 @@ public abstract class DAOFactory {
 		return instance;
 	}
 
+	/**
+	 * Establece la factoría de adaptadores que se utilizará como instancia única.
+	 * Permite sustituir el servicio de persistencia por otra implementación, por
+	 * ejemplo en las pruebas de rendimiento. Debe invocarse antes de obtener la
+	 * instancia por primera vez.
+	 *
+	 * @param factory Factoría de adaptadores que se desea utilizar.
+	 *
+	 * @return {@code true} si se ha establecido la factoría. {@code false} si es
+	 *         {@code null} o la instancia única ya estaba inicializada.
+	 */
+	public static boolean setInstance(DAOFactory factory) {
+		if (instance != null || factory == null) {
+			return false;
+		}
+		instance = factory;
+		return true;
+	}
+
+	/**
+	 * Obtiene la familia de adaptadores que produce la factoría. Permite separar
+	 * los datos locales que dependen de las ids asignadas por cada familia.
+	 *
+	 * @return Familia de la factoría. Un opcional vacío si la factoría no
+	 *         pertenece a ninguna de las familias de {@link DAOImplementation}.
+	 *
+	 * @implNote La implementación por defecto no pertenece a ninguna familia.
+	 */
+	public Optional<DAOImplementation> getImplementation() {
+		return Optional.empty();
+	}
+
+	/**
+	 * Obtiene la marca de generación del servicio de persistencia. Las copias
+	 * locales de los datos persistentes sólo son válidas mientras la marca con la
+	 * que se escribieron siga siendo la actual.
+	 *
+	 * @return Marca de generación actual, 0 si aún no se ha establecido. Un
+	 *         opcional vacío si la familia de adaptadores no admite marcas de
+	 *         generación.
+	 *
+	 * @implNote La implementación por defecto no admite marcas de generación.
+	 */
+	public Optional<Long> getGeneration() {
+		return Optional.empty();
+	}
+
+	/**
+	 * Establece la marca de generación del servicio de persistencia. Véase
+	 * {@link DAOFactory#getGeneration()}.
+	 *
+	 * @param generation Nueva marca de generación.
+	 *
+	 * @return {@code true} si se ha establecido la marca.
+	 *
+	 * @implNote La implementación por defecto no admite marcas de generación.
+	 */
+	public boolean setGeneration(long generation) {
+		return false;
+	}
+
 	/**
 	 * Obtiene el adaptador DAO para playlists.
 	 *
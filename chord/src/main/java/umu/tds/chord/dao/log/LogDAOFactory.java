@@ -0,0 +1,55 @@
+package umu.tds.chord.dao.log;
+
+import java.util.Optional;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+
+/**
+ * Factoria para la familia de adaptadores DAO que utilizan registros locales de
+ * solo adición. No necesita ningún servidor de persistencia. Véase
+ * {@link LogStore}.
+ */
+public class LogDAOFactory extends DAOFactory {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<DAOImplementation> getImplementation() {
+		return Optional.of(DAOImplementation.LOG_FAMILY);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia de registros. {@link LogPlaylistDAO}.
+	 */
+	@Override
+	public DAO<Playlist.Internal> getPlaylistDAO() {
+		return LogPlaylistDAO.INSTANCE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia de registros. {@link LogSongDAO}.
+	 */
+	@Override
+	public DAO<Song.Internal> getSongDAO() {
+		return LogSongDAO.INSTANCE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia de registros. {@link LogUserDAO}.
+	 */
+	@Override
+	public DAO<User.Internal> getUserDAO() {
+		return LogUserDAO.INSTANCE;
+	}
+}
@@ -0,0 +1,205 @@
+package umu.tds.chord.dao.log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Mutable;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+
+/**
+ * Adaptador {@link DAO} para {@link Playlist.Internal} utilizando un registro
+ * local de solo adición. Véase {@link LogStore}.
+ */
+public enum LogPlaylistDAO implements DAO<Playlist.Internal> {
+
+	/**
+	 * Patrón Singleton. Instancia única de este adaptador.
+	 */
+	INSTANCE;
+
+	/**
+	 * Enumerado de todas las propiedades que tiene un registro playlist.
+	 */
+	private enum Properties {
+		DESCRIPTION, NAME, SONGS
+	}
+
+	// Instancias ya recuperadas. Cada id se corresponde con un único objeto.
+	private final Map<Integer, Playlist.Internal> pool = new ConcurrentHashMap<>();
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la eliminación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o no existe en el
+	 *         registro de playlists.
+	 */
+	@Override
+	public boolean delete(Playlist.Internal p) {
+		// Checks obligatorios
+		if (p == null || !p.isRegistered()) {
+			return false;
+		}
+
+		// Eliminación de la playlist.
+		RecordLog log = LogStore.getInstance().getPlaylists();
+		if (!log.delete(p.getId())) {
+			return false;
+		}
+		pool.remove(p.getId());
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la modificación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o no existe en el
+	 *         registro de playlists.
+	 */
+	@Override
+	public boolean modify(Playlist.Internal p) {
+		// Checks obligatorios
+		if (p == null || !p.isRegistered()) {
+			return false;
+		}
+
+		// Sin cambios desde la última escritura no hay nada que modificar.
+		Set<Playlist.Internal.Field> changes = p.takeChanges();
+		if (changes.isEmpty()) {
+			return true;
+		}
+
+		RecordLog log = LogStore.getInstance().getPlaylists();
+		try {
+			Optional<Map<String, String>> record = log.read(p.getId());
+			if (record.isEmpty()) {
+				p.restoreChanges(changes);
+				return false;
+			}
+
+			// Modificación de las propiedades cambiadas del registro.
+			Map<String, String> properties = record.get();
+			if (changes.contains(Playlist.Internal.Field.NAME)) {
+				properties.put(Properties.NAME.name(), p.getName());
+			}
+			if (changes.contains(Playlist.Internal.Field.DESCRIPTION)) {
+				properties.put(Properties.DESCRIPTION.name(), p.getDescription());
+			}
+			if (changes.contains(Playlist.Internal.Field.SONGS)) {
+				properties.put(Properties.SONGS.name(), DAO.persistentsToString(
+						// Necesito la versión interna de las canciones.
+						p.getSongs().stream().map(Mutable::asMut).toList()));
+			}
+			log.put(p.getId(), properties);
+		} catch (RuntimeException e) {
+			// Los cambios se escribirán en la siguiente modificación.
+			p.restoreChanges(changes);
+			throw e;
+		}
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote El objeto se añade a la pool de la familia.
+	 */
+	@Override
+	public Playlist.Internal intern(Playlist.Internal t) {
+		Playlist.Internal pooled = pool.putIfAbsent(t.getId(), t);
+		return pooled != null ? pooled : t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return Devuelve el objeto identificado por id en el caso de estar
+	 *         registrado en el registro de playlists.
+	 */
+	@Override
+	public Optional<Playlist.Internal> recover(int id) {
+		// Comprobamos si ya se había recuperado.
+		Playlist.Internal cached = pool.get(id);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+
+		// La playlist puede haberse eliminado si la id provenía de una lista de
+		// referencias no actualizada.
+		Optional<Map<String, String>> record = LogStore.getInstance().getPlaylists().read(id);
+		if (record.isEmpty()) {
+			return Optional.empty();
+		}
+
+		// Añadir canciones.
+		Map<String, String> properties = record.get();
+		List<Song> songs = new ArrayList<>(
+				LogSongDAO.INSTANCE.stringToPersistents(properties.get(Properties.SONGS.name())));
+
+		// Creación de la playlist
+		Playlist.Internal p = new Playlist.Builder(properties.get(Properties.NAME.name()))
+				.description(properties.get(Properties.DESCRIPTION.name())).songs(songs).build().get().asMut();
+
+		p.registerId(id);
+		p.takeChanges();
+
+		// Si otro hilo ya ha recuperado la playlist se utiliza su instancia.
+		Playlist.Internal pooled = pool.putIfAbsent(id, p);
+		return Optional.of(pooled != null ? pooled : p);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Playlist.Internal> recoverAll() {
+		return LogStore.getInstance().getPlaylists().ids().stream().map(this::recover).filter(Optional::isPresent) // Ignorar
+				.map(Optional::get) // errores.
+				.toList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean register(Playlist.Internal p) {
+
+		// Checks obligatorios.
+		if (p == null || p.isRegistered()) {
+			return false;
+		}
+
+		// Propiedades.
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put(Properties.NAME.name(), p.getName());
+		properties.put(Properties.DESCRIPTION.name(), p.getDescription());
+		properties.put(Properties.SONGS.name(), DAO.persistentsToString(
+				// Necesito la versión interna de las cancions para
+				// leer las ids en persistencia.
+				p.getSongs().stream().map(Mutable::asMut).toList()));
+
+		// Registro y establecimiento de id.
+		RecordLog log = LogStore.getInstance().getPlaylists();
+		int id = LogStore.getInstance().nextId();
+		log.put(id, properties);
+		p.registerId(id);
+		// Todos los campos se acaban de escribir.
+		p.takeChanges();
+		pool.put(id, p);
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+}
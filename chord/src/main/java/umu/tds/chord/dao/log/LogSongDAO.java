@@ -0,0 +1,219 @@
+package umu.tds.chord.dao.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Song;
+
+/**
+ * Adaptador {@link DAO} para {@link Song.Internal} utilizando un registro local
+ * de solo adición. Véase {@link LogStore}.
+ */
+public enum LogSongDAO implements DAO<Song.Internal> {
+
+	/**
+	 * Patrón Singleton. Instancia única de este adaptador.
+	 */
+	INSTANCE;
+
+	/**
+	 * Enumerado de todas las propiedades que tiene un registro canción.
+	 */
+	private enum Properties {
+		AUTHOR, NAME, PATH, STYLE, REPRODUCCIONES
+	}
+
+	// Instancias ya recuperadas. Cada id se corresponde con un único objeto.
+	private final Map<Integer, Song.Internal> pool = new ConcurrentHashMap<>();
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la eliminación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o no existe en el
+	 *         registro de canciones.
+	 */
+	@Override
+	public boolean delete(Song.Internal s) {
+		// Checks obligatorios
+		if (s == null || !s.isRegistered()) {
+			return false;
+		}
+
+		// Eliminación de la canción.
+		RecordLog log = LogStore.getInstance().getSongs();
+		if (!log.delete(s.getId())) {
+			return false;
+		}
+		pool.remove(s.getId());
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la modificación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o no existe en el
+	 *         registro de canciones.
+	 */
+	@Override
+	public boolean modify(Song.Internal s) {
+		// Checks obligatorios
+		if (s == null || !s.isRegistered()) {
+			return false;
+		}
+
+		// Sin cambios desde la última escritura no hay nada que modificar.
+		Set<Song.Internal.Field> changes = s.takeChanges();
+		if (changes.isEmpty()) {
+			return true;
+		}
+
+		RecordLog log = LogStore.getInstance().getSongs();
+		try {
+			Optional<Map<String, String>> record = log.read(s.getId());
+			if (record.isEmpty()) {
+				s.restoreChanges(changes);
+				return false;
+			}
+
+			// Modificación de las propiedades cambiadas del registro.
+			Map<String, String> properties = record.get();
+			if (changes.contains(Song.Internal.Field.REPRODUCCIONES)) {
+				properties.put(Properties.REPRODUCCIONES.name(), String.valueOf(s.getReproducciones()));
+			}
+			log.put(s.getId(), properties);
+		} catch (RuntimeException e) {
+			// Los cambios se escribirán en la siguiente modificación.
+			s.restoreChanges(changes);
+			throw e;
+		}
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote El objeto se añade a la pool de la familia.
+	 */
+	@Override
+	public Song.Internal intern(Song.Internal t) {
+		Song.Internal pooled = pool.putIfAbsent(t.getId(), t);
+		return pooled != null ? pooled : t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return Devuelve el objeto identificado por id en el caso de estar
+	 *         registrado en el registro de canciones.
+	 */
+	@Override
+	public Optional<Song.Internal> recover(int id) {
+
+		// Comprobamos si ya se había recuperado.
+		Song.Internal cached = pool.get(id);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+
+		// La canción puede haberse eliminado si la id provenía de una lista de
+		// referencias no actualizada.
+		Optional<Map<String, String>> record = LogStore.getInstance().getSongs().read(id);
+		if (record.isEmpty()) {
+			return Optional.empty();
+		}
+
+		// Construcción y registro.
+		Map<String, String> properties = record.get();
+		Song.Internal s = new Song.Builder(properties.get(Properties.NAME.name()))
+				.author(properties.get(Properties.AUTHOR.name())).path(properties.get(Properties.PATH.name()))
+				.style(properties.get(Properties.STYLE.name()))
+				.reproducciones(Integer.valueOf(properties.get(Properties.REPRODUCCIONES.name()))).build().get()
+				.asMut();
+
+		s.registerId(id);
+		s.takeChanges();
+
+		// Si otro hilo ya ha recuperado la canción se utiliza su instancia.
+		Song.Internal pooled = pool.putIfAbsent(id, s);
+		return Optional.of(pooled != null ? pooled : s);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Song.Internal> recoverAll() {
+		return LogStore.getInstance().getSongs().ids().stream().map(this::recover).filter(Optional::isPresent) // Ignorar
+				.map(Optional::get) // errores.
+				.toList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean register(Song.Internal s) {
+
+		// Checks obligatorios.
+		if (s == null || s.isRegistered()) {
+			return false;
+		}
+
+		RecordLog log = LogStore.getInstance().getSongs();
+		append(log, s);
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote Los registros de todas las canciones se añaden antes de llevar el
+	 *           registro a disco una sola vez.
+	 */
+	@Override
+	public List<Song.Internal> registerAll(List<Song.Internal> list) {
+		List<Song.Internal> registered = new ArrayList<>(list.size());
+
+		RecordLog log = LogStore.getInstance().getSongs();
+		list.stream().filter(s -> s != null && !s.isRegistered()).forEach(s -> {
+			append(log, s);
+			registered.add(s);
+		});
+		LogStore.getInstance().written(log);
+
+		return Collections.unmodifiableList(registered);
+	}
+
+	private void append(RecordLog log, Song.Internal s) {
+		// Propiedades.
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put(Properties.NAME.name(), s.getName());
+		properties.put(Properties.AUTHOR.name(), s.getAuthor());
+		properties.put(Properties.PATH.name(), s.getPath());
+		properties.put(Properties.STYLE.name(), s.getStyle());
+		properties.put(Properties.REPRODUCCIONES.name(), String.valueOf(s.getReproducciones()));
+
+		// Registro y establecimiento de id.
+		int id = LogStore.getInstance().nextId();
+		log.put(id, properties);
+		s.registerId(id);
+		// Todos los campos se acaban de escribir.
+		s.takeChanges();
+		pool.put(id, s);
+	}
+}
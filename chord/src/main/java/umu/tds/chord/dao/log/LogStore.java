@@ -0,0 +1,162 @@
+package umu.tds.chord.dao.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Almacén local de la familia de adaptadores de registro. Agrupa los registros
+ * de canciones, playlists y usuarios, asigna las ids persistentes, únicas entre
+ * todos los tipos, y lleva a disco los registros añadidos en bloque.
+ *
+ * Las escrituras no esperan a que los registros lleguen a disco. Un hilo en
+ * segundo plano sincroniza todos los registros cada cierto tiempo y los compacta
+ * cuando la mayor parte de su contenido ha quedado obsoleto.
+ *
+ * Patrón Singleton.
+ */
+final class LogStore {
+
+	/**
+	 * Propiedad del sistema con el directorio de los registros.
+	 */
+	static final String DIRECTORY_PROPERTY = "chord.dao.log.dir";
+
+	/**
+	 * Propiedad del sistema con el intervalo en milisegundos entre
+	 * sincronizaciones con disco. Un valor de 0 sincroniza cada escritura.
+	 */
+	static final String SYNC_PROPERTY = "chord.dao.log.sync";
+
+	private static final String logDirectory = ".chord";
+	private static final String logSubdirectory = "log";
+	private static final String songsName = "songs.log";
+	private static final String playlistsName = "playlists.log";
+	private static final String usersName = "users.log";
+	private static final long defaultSync = 50;
+	private static final long compactionInterval = 60000;
+	private static final String threadName = "chord-log";
+
+	private static LogStore instance = null;
+
+	private final RecordLog songs;
+	private final RecordLog playlists;
+	private final RecordLog users;
+	private final AtomicInteger lastId;
+	private final long syncInterval;
+
+	/**
+	 * Obtiene la instancia única del almacén, abriendo los registros la primera
+	 * vez que se invoca.
+	 *
+	 * @return Instancia única del almacén.
+	 */
+	static synchronized LogStore getInstance() {
+		if (instance == null) {
+			instance = new LogStore();
+		}
+		return instance;
+	}
+
+	private LogStore() {
+		Path directory = Path.of(System.getProperty(DIRECTORY_PROPERTY,
+				Path.of(System.getProperty("user.home"), logDirectory, logSubdirectory).toString()));
+		try {
+			songs = new RecordLog(directory.resolve(songsName));
+			playlists = new RecordLog(directory.resolve(playlistsName));
+			users = new RecordLog(directory.resolve(usersName));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		lastId = new AtomicInteger(
+				List.of(songs, playlists, users).stream().mapToInt(RecordLog::maxId).max().orElse(0));
+		syncInterval = Math.max(0, Long.getLong(SYNC_PROPERTY, defaultSync));
+
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, threadName);
+			t.setDaemon(true);
+			return t;
+		});
+		if (syncInterval > 0) {
+			executor.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+		}
+		executor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval,
+				TimeUnit.MILLISECONDS);
+
+		// No se deben perder escrituras al cerrar la aplicación.
+		Runtime.getRuntime().addShutdownHook(new Thread(this::sync, threadName + "-shutdown"));
+	}
+
+	/**
+	 * Obtiene el registro de canciones.
+	 *
+	 * @return Registro de canciones.
+	 */
+	RecordLog getSongs() {
+		return songs;
+	}
+
+	/**
+	 * Obtiene el registro de playlists.
+	 *
+	 * @return Registro de playlists.
+	 */
+	RecordLog getPlaylists() {
+		return playlists;
+	}
+
+	/**
+	 * Obtiene el registro de usuarios.
+	 *
+	 * @return Registro de usuarios.
+	 */
+	RecordLog getUsers() {
+		return users;
+	}
+
+	/**
+	 * Obtiene una nueva id persistente.
+	 *
+	 * @return Id no utilizada por ninguna entidad de ningún tipo.
+	 */
+	int nextId() {
+		return lastId.incrementAndGet();
+	}
+
+	/**
+	 * Notifica que se ha escrito en el registro dado. Si no se agrupan las
+	 * sincronizaciones se lleva a disco de inmediato.
+	 *
+	 * @param log Registro en el que se ha escrito.
+	 */
+	void written(RecordLog log) {
+		if (syncInterval == 0) {
+			log.sync();
+		}
+	}
+
+	private void sync() {
+		try {
+			songs.sync();
+			playlists.sync();
+			users.sync();
+		} catch (UncheckedIOException e) {
+			// Se reintentará en la siguiente sincronización.
+		}
+	}
+
+	private void compact() {
+		try {
+			songs.compact();
+			playlists.compact();
+			users.compact();
+		} catch (UncheckedIOException e) {
+			// Se reintentará en la siguiente compactación.
+		}
+	}
+}
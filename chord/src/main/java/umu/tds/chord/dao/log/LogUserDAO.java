@@ -0,0 +1,305 @@
+package umu.tds.chord.dao.log;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Mutable;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+import umu.tds.chord.model.discount.Discount;
+import umu.tds.chord.model.discount.DiscountFactory;
+
+/**
+ * Adaptador {@link DAO} para {@link User} utilizando un registro local de solo
+ * adición. Véase {@link LogStore}.
+ */
+public enum LogUserDAO implements DAO<User.Internal> {
+
+	/**
+	 * Patrón Singleton. Instancia única de este adaptador.
+	 */
+	INSTANCE;
+
+	/**
+	 * Enumerado de todas las propiedades que tiene un registro usuario.
+	 */
+	private enum Properties {
+		BIRTHDAY, FAVOURITE_SONGS, PASSWORD_HASH, PLAYLISTS, PREMIUM, RECENT_SONGS, USER_NAME, DISCOUNT_TYPE,
+		DISCOUNT_START, DISCOUNT_END
+	}
+
+	// Instancias ya recuperadas. Cada id se corresponde con un único objeto.
+	private final Map<Integer, User.Internal> pool = new ConcurrentHashMap<>();
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la eliminación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o no existe en el
+	 *         registro de usuarios.
+	 */
+	@Override
+	public boolean delete(User.Internal u) {
+
+		// Checks obligatorios
+		if ((u == null) || !u.isRegistered()) {
+			return false;
+		}
+
+		RecordLog log = LogStore.getInstance().getUsers();
+		if (!log.contains(u.getId())) {
+			return false;
+		}
+
+		// Eliminación en cascada de las playlists asociadas al usuario.
+		u.getPlaylists().forEach(p -> LogPlaylistDAO.INSTANCE.delete(p.asMut()));
+
+		// Eliminación del usuario.
+		boolean deleted = log.delete(u.getId());
+		pool.remove(u.getId());
+		LogStore.getInstance().written(log);
+
+		return deleted;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la modificación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o no existe en el
+	 *         registro de usuarios.
+	 */
+	@Override
+	public boolean modify(User.Internal u) {
+
+		// Checks obligatorios
+		if ((u == null) || !u.isRegistered()) {
+			return false;
+		}
+
+		Set<User.Internal.Field> changes = u.takeChanges();
+
+		RecordLog log = LogStore.getInstance().getUsers();
+		try {
+			// Las playlists registran sus propios cambios. Si la lista de
+			// playlists ha cambiado se escriben al actualizar su propiedad.
+			if (u.isResolved() && !changes.contains(User.Internal.Field.PLAYLISTS)) {
+				u.getPlaylists().forEach(p -> LogPlaylistDAO.INSTANCE.modify(p.asMut()));
+			}
+
+			// Sin cambios desde la última escritura no hay nada que modificar.
+			if (changes.isEmpty()) {
+				return true;
+			}
+
+			Optional<Map<String, String>> record = log.read(u.getId());
+			if (record.isEmpty()) {
+				u.restoreChanges(changes);
+				return false;
+			}
+
+			// Modificación de las propiedades cambiadas del registro.
+			Map<String, String> properties = record.get();
+			if (changes.contains(User.Internal.Field.PREMIUM)) {
+				properties.put(Properties.PREMIUM.name(), String.valueOf(u.isPremium()));
+			}
+			if (changes.contains(User.Internal.Field.PLAYLISTS)) {
+				List<Playlist.Internal> newPlaylists = u.getPlaylists().stream().map(Mutable::asMut).toList();
+				writePlaylists(DAO.stringToIds(properties.get(Properties.PLAYLISTS.name())), newPlaylists);
+				properties.put(Properties.PLAYLISTS.name(), DAO.persistentsToString(newPlaylists));
+			}
+			if (changes.contains(User.Internal.Field.RECENT_SONGS)) {
+				properties.put(Properties.RECENT_SONGS.name(),
+						DAO.persistentsToString(u.getRecentSongs().stream().map(Mutable::asMut).toList()));
+			}
+			if (changes.contains(User.Internal.Field.FAVOURITE_SONGS)) {
+				properties.put(Properties.FAVOURITE_SONGS.name(),
+						DAO.persistentsToString(u.getFavouriteSongs().stream().map(Mutable::asMut).toList()));
+			}
+			if (changes.contains(User.Internal.Field.DISCOUNT)) {
+				properties.putAll(discountProperties(u.getDiscount()));
+			}
+			log.put(u.getId(), properties);
+		} catch (RuntimeException e) {
+			// Los cambios se escribirán en la siguiente modificación.
+			u.restoreChanges(changes);
+			throw e;
+		}
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+
+	private void writePlaylists(Set<Integer> oldIds, List<Playlist.Internal> newPlaylists) {
+		// Sólo se escriben las playlists nuevas y las que han cambiado. El
+		// adaptador ignora las modificaciones de playlists sin cambios.
+		Set<Integer> newIds = new HashSet<>();
+		newPlaylists.forEach(playlist -> {
+			if (!playlist.isRegistered()) {
+				LogPlaylistDAO.INSTANCE.register(playlist);
+			} else {
+				LogPlaylistDAO.INSTANCE.modify(playlist);
+			}
+			newIds.add(playlist.getId());
+		});
+
+		// Eliminar las playlists guardadas que ya no están presentes.
+		oldIds.stream().filter(id -> !newIds.contains(id))
+				.forEach(id -> LogPlaylistDAO.INSTANCE.recover(id).ifPresent(LogPlaylistDAO.INSTANCE::delete));
+	}
+
+	private Map<String, String> discountProperties(Discount discount) {
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put(Properties.DISCOUNT_TYPE.name(), discount.getType().name());
+		properties.put(Properties.DISCOUNT_START.name(), discount.getStart().toInstant().toString());
+		properties.put(Properties.DISCOUNT_END.name(), discount.getEnd().toInstant().toString());
+		return properties;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote El objeto se añade a la pool de la familia.
+	 */
+	@Override
+	public User.Internal intern(User.Internal t) {
+		User.Internal pooled = pool.putIfAbsent(t.getId(), t);
+		return pooled != null ? pooled : t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return Devuelve el objeto identificado por id en el caso de estar
+	 *         registrado en el registro de usuarios.
+	 *
+	 * @implNote Al ser locales las lecturas, las referencias del usuario se
+	 *           resuelven al recuperarlo.
+	 */
+	@Override
+	public Optional<User.Internal> recover(int id) {
+
+		// Comprobamos si ya se había recuperado.
+		User.Internal cached = pool.get(id);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+
+		Optional<Map<String, String>> record = LogStore.getInstance().getUsers().read(id);
+		if (record.isEmpty()) {
+			return Optional.empty();
+		}
+		Map<String, String> properties = record.get();
+
+		// Recuperación de primitivas.
+		Date birthday = null;
+		Date discountStart = null;
+		Date discountEnd = null;
+		try {
+			birthday = Date.from(Instant.parse(properties.get(Properties.BIRTHDAY.name())));
+			discountStart = Date.from(Instant.parse(properties.get(Properties.DISCOUNT_START.name())));
+			discountEnd = Date.from(Instant.parse(properties.get(Properties.DISCOUNT_END.name())));
+		} catch (DateTimeParseException e) {
+			return Optional.empty();
+		}
+
+		boolean premium = Boolean.valueOf(properties.get(Properties.PREMIUM.name()));
+		DiscountFactory.Type discountType = DiscountFactory.Type
+				.valueOf(properties.get(Properties.DISCOUNT_TYPE.name()));
+		Discount discount = DiscountFactory.createDiscount(discountStart, discountEnd, discountType);
+
+		// Creación de la representación interna del usuario.
+		User.Internal user = new User.Builder(properties.get(Properties.USER_NAME.name()))
+				.hashedPassword(properties.get(Properties.PASSWORD_HASH.name())).premium(premium).birthday(birthday)
+				.discount(discount).build().get().asMut();
+
+		// Añadir canciones recientes. Se guardan de la más reciente a la más
+		// antigua, por lo que se añaden en orden inverso.
+		List<Song.Internal> recentSongs = LogSongDAO.INSTANCE
+				.stringToPersistents(properties.get(Properties.RECENT_SONGS.name()));
+		for (int i = recentSongs.size() - 1; i >= 0; i--) {
+			user.addRecentSong(recentSongs.get(i));
+		}
+
+		// Añadir playlists.
+		LogPlaylistDAO.INSTANCE.stringToPersistents(properties.get(Properties.PLAYLISTS.name()))
+				.forEach(user::addPlaylist);
+
+		// Añadir canciones favoritas.
+		LogSongDAO.INSTANCE.stringToPersistents(properties.get(Properties.FAVOURITE_SONGS.name()))
+				.forEach(user::addFavouriteSong);
+
+		// Establecimiento de id.
+		user.registerId(id);
+
+		// El estado recuperado coincide con el persistente.
+		user.takeChanges();
+
+		// Si otro hilo ya ha recuperado el usuario se utiliza su instancia.
+		User.Internal pooled = pool.putIfAbsent(id, user);
+		return Optional.of(pooled != null ? pooled : user);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<User.Internal> recoverAll() {
+		return LogStore.getInstance().getUsers().ids().stream().map(this::recover).filter(Optional::isPresent) // Ignorar
+				.map(Optional::get) // errores.
+				.toList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean register(User.Internal user) {
+
+		// Checks iniciales obligatorios.
+		if ((user == null) || user.isRegistered()) {
+			return false;
+		}
+
+		// Registro de playlists asociadas al usuario.
+		user.getPlaylists().forEach(p -> LogPlaylistDAO.INSTANCE
+				// Debo registrar la versión interna de la playlist.
+				.register(p.asMut()));
+
+		// Propiedades.
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put(Properties.USER_NAME.name(), user.getUserName());
+		properties.put(Properties.PASSWORD_HASH.name(), user.getHashedPassword());
+		properties.put(Properties.BIRTHDAY.name(), user.getBirthday().toInstant().toString());
+		properties.put(Properties.PLAYLISTS.name(),
+				DAO.persistentsToString(user.getPlaylists().stream().map(Mutable::asMut).toList()));
+		properties.put(Properties.RECENT_SONGS.name(),
+				DAO.persistentsToString(user.getRecentSongs().stream().map(Mutable::asMut).toList()));
+		properties.put(Properties.FAVOURITE_SONGS.name(),
+				DAO.persistentsToString(user.getFavouriteSongs().stream().map(Mutable::asMut).toList()));
+		properties.put(Properties.PREMIUM.name(), String.valueOf(user.isPremium()));
+		properties.putAll(discountProperties(user.getDiscount()));
+
+		// Registro y establecimiento de id.
+		RecordLog log = LogStore.getInstance().getUsers();
+		int id = LogStore.getInstance().nextId();
+		log.put(id, properties);
+		user.registerId(id);
+		// Todos los campos se acaban de escribir.
+		user.takeChanges();
+		pool.put(id, user);
+		LogStore.getInstance().written(log);
+
+		return true;
+	}
+}
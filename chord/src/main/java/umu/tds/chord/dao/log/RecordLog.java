@@ -0,0 +1,365 @@
+package umu.tds.chord.dao.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de solo adición de las entidades de un tipo. Cada escritura añade al
+ * final del fichero un registro con todas las propiedades de la entidad, o una
+ * marca de borrado, y un índice en memoria guarda la posición del último
+ * registro de cada id. Las lecturas se realizan sobre una proyección en memoria
+ * del fichero.
+ *
+ * Formato de cada registro: longitud, id, tipo de registro, número de
+ * propiedades, pares nombre-valor y suma de control CRC32 de todo lo anterior
+ * salvo la longitud. Un registro incompleto o dañado al final del fichero, por
+ * una escritura interrumpida, se descarta al abrirlo.
+ */
+final class RecordLog {
+
+	private static final byte putRecord = 1;
+	private static final byte deleteRecord = 0;
+	// Longitud, id, tipo y número de propiedades.
+	private static final int headerSize = Integer.BYTES * 3 + Byte.BYTES;
+	private static final int checksumSize = Integer.BYTES;
+	private static final long minCompaction = 1 << 20;
+
+	private final Path path;
+	// Posición del último registro de cada id, en orden de registro.
+	private final Map<Integer, Long> index;
+	private FileChannel channel;
+	private ByteBuffer mapped;
+	private long end;
+	private long deadBytes;
+	private boolean unsynced;
+	private int maxId;
+
+	/**
+	 * Abre el registro del fichero dado, creándolo si no existe, y construye su
+	 * índice recorriéndolo de forma secuencial.
+	 *
+	 * @param path Ruta del fichero del registro.
+	 *
+	 * @throws IOException Si no puede abrirse el fichero.
+	 */
+	RecordLog(Path path) throws IOException {
+		this.path = path;
+		this.index = new LinkedHashMap<>();
+		this.deadBytes = 0;
+		this.unsynced = false;
+		this.maxId = 0;
+
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		end = channel.size();
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+		end = scan();
+
+		// Descartar un posible registro incompleto.
+		if (end < channel.size()) {
+			channel.truncate(end);
+			channel.force(false);
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+		}
+	}
+
+	private long scan() {
+		long position = 0;
+		long size = mapped.limit();
+		while (position + headerSize + checksumSize <= size) {
+			int length = mapped.getInt((int) position);
+			long recordSize = Integer.BYTES + length + checksumSize;
+			if (length < headerSize - Integer.BYTES || position + recordSize > size) {
+				break;
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(mapped.slice((int) position + Integer.BYTES, length));
+			if ((int) crc.getValue() != mapped.getInt((int) (position + Integer.BYTES + length))) {
+				break;
+			}
+
+			int id = mapped.getInt((int) position + Integer.BYTES);
+			byte type = mapped.get((int) position + Integer.BYTES * 2);
+			maxId = Math.max(maxId, id);
+			if (type == putRecord) {
+				replace(id, position);
+			} else {
+				remove(id);
+				deadBytes += recordSize;
+			}
+			position += recordSize;
+		}
+		return position;
+	}
+
+	/**
+	 * Obtiene las propiedades del último registro de la id dada.
+	 *
+	 * @param id Id de la entidad.
+	 *
+	 * @return Propiedades de la entidad o un opcional vacío si no existe.
+	 */
+	synchronized Optional<Map<String, String>> read(int id) {
+		Long position = index.get(id);
+		if (position == null) {
+			return Optional.empty();
+		}
+
+		ByteBuffer record = record(position);
+		int count = record.getInt(Integer.BYTES * 2 + Byte.BYTES);
+		record.position(headerSize);
+		Map<String, String> properties = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			properties.put(getString(record), getString(record));
+		}
+		return Optional.of(properties);
+	}
+
+	/**
+	 * Comprueba si existe la entidad con la id dada.
+	 *
+	 * @param id Id de la entidad.
+	 *
+	 * @return {@code true} si la entidad existe.
+	 */
+	synchronized boolean contains(int id) {
+		return index.containsKey(id);
+	}
+
+	/**
+	 * Obtiene las ids de todas las entidades del registro.
+	 *
+	 * @return Lista de ids en orden de registro.
+	 */
+	synchronized List<Integer> ids() {
+		return new ArrayList<>(index.keySet());
+	}
+
+	/**
+	 * Obtiene la mayor id que ha aparecido en el registro, incluidas las de
+	 * entidades borradas.
+	 *
+	 * @return Mayor id del registro o 0 si está vacío.
+	 */
+	synchronized int maxId() {
+		return maxId;
+	}
+
+	/**
+	 * Añade un registro con las propiedades de la entidad dada, que sustituye a
+	 * los anteriores de la misma id.
+	 *
+	 * @param id         Id de la entidad.
+	 * @param properties Propiedades de la entidad.
+	 */
+	synchronized void put(int id, Map<String, String> properties) {
+		List<byte[]> encoded = new ArrayList<>(properties.size() * 2);
+		int length = headerSize - Integer.BYTES;
+		for (Map.Entry<String, String> p : properties.entrySet()) {
+			byte[] name = p.getKey().getBytes(StandardCharsets.UTF_8);
+			byte[] value = p.getValue().getBytes(StandardCharsets.UTF_8);
+			encoded.add(name);
+			encoded.add(value);
+			length += Integer.BYTES * 2 + name.length + value.length;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length + checksumSize);
+		record.putInt(length).putInt(id).put(putRecord).putInt(properties.size());
+		encoded.forEach(bytes -> record.putInt(bytes.length).put(bytes));
+		seal(record);
+
+		long position = append(record);
+		replace(id, position);
+		maxId = Math.max(maxId, id);
+	}
+
+	/**
+	 * Añade una marca de borrado de la entidad dada.
+	 *
+	 * @param id Id de la entidad.
+	 *
+	 * @return {@code true} si la entidad existía.
+	 */
+	synchronized boolean delete(int id) {
+		if (!index.containsKey(id)) {
+			return false;
+		}
+
+		ByteBuffer record = tombstone(id);
+		append(record);
+		remove(id);
+		deadBytes += record.capacity();
+		return true;
+	}
+
+	/**
+	 * Lleva a disco los registros añadidos desde la última sincronización.
+	 */
+	synchronized void sync() {
+		if (!unsynced) {
+			return;
+		}
+		try {
+			channel.force(false);
+			unsynced = false;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reescribe el registro con sólo el último registro de cada entidad si la
+	 * mayor parte del fichero está ocupada por registros sustituidos o borrados.
+	 *
+	 * @return {@code true} si se ha compactado el registro.
+	 */
+	synchronized boolean compact() {
+		if (deadBytes < minCompaction || deadBytes < end - deadBytes) {
+			return false;
+		}
+
+		Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			Map<Integer, Long> positions = new LinkedHashMap<>();
+			long position = 0;
+			long tombstoneSize = 0;
+			try (FileChannel c = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (Map.Entry<Integer, Long> e : index.entrySet()) {
+					ByteBuffer record = record(e.getValue());
+					positions.put(e.getKey(), position);
+					position += record.remaining();
+					while (record.hasRemaining()) {
+						c.write(record);
+					}
+				}
+
+				// Se conserva la mayor id aunque su entidad esté borrada para no
+				// reutilizarla al volver a abrir el registro.
+				if (maxId > 0 && !index.containsKey(maxId)) {
+					ByteBuffer record = tombstone(maxId);
+					tombstoneSize = record.capacity();
+					position += tombstoneSize;
+					while (record.hasRemaining()) {
+						c.write(record);
+					}
+				}
+				c.force(false);
+			}
+
+			// Sustitución atómica del fichero y reapertura.
+			Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel.close();
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+			index.putAll(positions);
+			end = position;
+			deadBytes = tombstoneSize;
+			unsynced = false;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Sincroniza y cierra el fichero del registro.
+	 */
+	synchronized void close() {
+		try {
+			sync();
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private ByteBuffer tombstone(int id) {
+		int length = headerSize - Integer.BYTES;
+		ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length + checksumSize);
+		record.putInt(length).putInt(id).put(deleteRecord).putInt(0);
+		seal(record);
+		return record;
+	}
+
+	private void seal(ByteBuffer record) {
+		// La suma de control cubre todo el registro salvo la longitud.
+		int length = record.capacity() - Integer.BYTES - checksumSize;
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), Integer.BYTES, length);
+		record.putInt(Integer.BYTES + length, (int) crc.getValue());
+		record.rewind();
+	}
+
+	private long append(ByteBuffer record) {
+		try {
+			long position = end;
+			while (record.hasRemaining()) {
+				channel.write(record, position + record.position());
+			}
+			end += record.capacity();
+			unsynced = true;
+			return position;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private ByteBuffer record(long position) {
+		int size = recordSize(position);
+		ensureMapped(position + size);
+		return mapped.slice((int) position, size);
+	}
+
+	private int recordSize(long position) {
+		ensureMapped(position + Integer.BYTES);
+		return Integer.BYTES + mapped.getInt((int) position) + checksumSize;
+	}
+
+	private void ensureMapped(long limit) {
+		// Se amplía la proyección para incluir los registros añadidos.
+		if (limit <= mapped.limit()) {
+			return;
+		}
+		try {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void replace(int id, long position) {
+		Long previous = index.put(id, position);
+		if (previous != null) {
+			deadBytes += recordSize(previous);
+		}
+	}
+
+	private void remove(int id) {
+		Long previous = index.remove(id);
+		if (previous != null) {
+			deadBytes += recordSize(previous);
+		}
+	}
+
+	private String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,69 @@
+package umu.tds.chord.dao.memory;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+
+/**
+ * Factoria para la familia de adaptadores DAO en memoria. Los datos no
+ * sobreviven a la ejecución, por lo que está pensada para pruebas, pruebas de
+ * rendimiento y sesiones efímeras.
+ */
+public class MemoryDAOFactory extends DAOFactory {
+
+	// Las ids son únicas entre todos los tipos, como en el servicio de
+	// persistencia de TDS.
+	private static final AtomicInteger lastId = new AtomicInteger();
+
+	/**
+	 * Obtiene una nueva id persistente.
+	 *
+	 * @return Id no utilizada por ningún objeto de ningún tipo.
+	 */
+	static int nextId() {
+		return lastId.incrementAndGet();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<DAOImplementation> getImplementation() {
+		return Optional.of(DAOImplementation.IN_MEMORY);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia en memoria. {@link MemoryPlaylistDAO}.
+	 */
+	@Override
+	public DAO<Playlist.Internal> getPlaylistDAO() {
+		return MemoryPlaylistDAO.INSTANCE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia en memoria. {@link MemorySongDAO}.
+	 */
+	@Override
+	public DAO<Song.Internal> getSongDAO() {
+		return MemorySongDAO.INSTANCE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia en memoria. {@link MemoryUserDAO}.
+	 */
+	@Override
+	public DAO<User.Internal> getUserDAO() {
+		return MemoryUserDAO.INSTANCE;
+	}
+}
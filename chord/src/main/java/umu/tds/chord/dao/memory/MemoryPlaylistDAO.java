@@ -0,0 +1,108 @@
+package umu.tds.chord.dao.memory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Playlist;
+
+/**
+ * Adaptador {@link DAO} para {@link Playlist.Internal} en memoria. Las playlists
+ * registradas se guardan tal cual, por lo que una modificación sólo descarta
+ * sus cambios pendientes.
+ */
+public enum MemoryPlaylistDAO implements DAO<Playlist.Internal> {
+
+	/**
+	 * Patrón Singleton. Instancia única de este adaptador.
+	 */
+	INSTANCE;
+
+	// Playlists registradas por id, en orden de registro.
+	private final Map<Integer, Playlist.Internal> playlists = new ConcurrentSkipListMap<>();
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la eliminación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o ya se ha eliminado.
+	 */
+	@Override
+	public boolean delete(Playlist.Internal p) {
+		// Checks obligatorios
+		if (p == null || !p.isRegistered()) {
+			return false;
+		}
+
+		return playlists.remove(p.getId(), p);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la modificación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o ya se ha eliminado.
+	 */
+	@Override
+	public boolean modify(Playlist.Internal p) {
+		// Checks obligatorios
+		if (p == null || !p.isRegistered()) {
+			return false;
+		}
+
+		// Los cambios ya están en la instancia guardada.
+		if (playlists.get(p.getId()) != p) {
+			return false;
+		}
+		p.takeChanges();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote Los objetos en memoria son los propios objetos persistidos, por
+	 *           lo que no se añade un objeto que no estuviera ya registrado.
+	 */
+	@Override
+	public Playlist.Internal intern(Playlist.Internal t) {
+		return playlists.getOrDefault(t.getId(), t);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<Playlist.Internal> recover(int id) {
+		return Optional.ofNullable(playlists.get(id));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Playlist.Internal> recoverAll() {
+		return List.copyOf(playlists.values());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean register(Playlist.Internal p) {
+
+		// Checks obligatorios.
+		if (p == null || p.isRegistered()) {
+			return false;
+		}
+
+		p.registerId(MemoryDAOFactory.nextId());
+		// Todos los campos se acaban de escribir.
+		p.takeChanges();
+		playlists.put(p.getId(), p);
+
+		return true;
+	}
+}
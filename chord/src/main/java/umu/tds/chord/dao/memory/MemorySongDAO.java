@@ -0,0 +1,108 @@
+package umu.tds.chord.dao.memory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Song;
+
+/**
+ * Adaptador {@link DAO} para {@link Song.Internal} en memoria. Las canciones
+ * registradas se guardan tal cual, por lo que una modificación sólo descarta
+ * sus cambios pendientes.
+ */
+public enum MemorySongDAO implements DAO<Song.Internal> {
+
+	/**
+	 * Patrón Singleton. Instancia única de este adaptador.
+	 */
+	INSTANCE;
+
+	// Canciones registradas por id, en orden de registro.
+	private final Map<Integer, Song.Internal> songs = new ConcurrentSkipListMap<>();
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la eliminación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o ya se ha eliminado.
+	 */
+	@Override
+	public boolean delete(Song.Internal s) {
+		// Checks obligatorios
+		if (s == null || !s.isRegistered()) {
+			return false;
+		}
+
+		return songs.remove(s.getId(), s);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la modificación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o ya se ha eliminado.
+	 */
+	@Override
+	public boolean modify(Song.Internal s) {
+		// Checks obligatorios
+		if (s == null || !s.isRegistered()) {
+			return false;
+		}
+
+		// Los cambios ya están en la instancia guardada.
+		if (songs.get(s.getId()) != s) {
+			return false;
+		}
+		s.takeChanges();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote Los objetos en memoria son los propios objetos persistidos, por
+	 *           lo que no se añade un objeto que no estuviera ya registrado.
+	 */
+	@Override
+	public Song.Internal intern(Song.Internal t) {
+		return songs.getOrDefault(t.getId(), t);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<Song.Internal> recover(int id) {
+		return Optional.ofNullable(songs.get(id));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Song.Internal> recoverAll() {
+		return List.copyOf(songs.values());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean register(Song.Internal s) {
+
+		// Checks obligatorios.
+		if (s == null || s.isRegistered()) {
+			return false;
+		}
+
+		s.registerId(MemoryDAOFactory.nextId());
+		// Todos los campos se acaban de escribir.
+		s.takeChanges();
+		songs.put(s.getId(), s);
+
+		return true;
+	}
+}
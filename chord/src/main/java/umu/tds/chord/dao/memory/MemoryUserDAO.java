@@ -0,0 +1,147 @@
+package umu.tds.chord.dao.memory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.User;
+
+/**
+ * Adaptador {@link DAO} para {@link User} en memoria. Los usuarios registrados
+ * se guardan tal cual. Como en el resto de familias, sus playlists se registran
+ * y eliminan en cascada con ellos.
+ */
+public enum MemoryUserDAO implements DAO<User.Internal> {
+
+	/**
+	 * Patrón Singleton. Instancia única de este adaptador.
+	 */
+	INSTANCE;
+
+	// Usuarios registrados por id, en orden de registro.
+	private final Map<Integer, User.Internal> users = new ConcurrentSkipListMap<>();
+	// Ids de las playlists de cada usuario en su última escritura.
+	private final Map<Integer, Set<Integer>> playlistIds = new ConcurrentHashMap<>();
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la eliminación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o ya se ha eliminado.
+	 */
+	@Override
+	public boolean delete(User.Internal u) {
+
+		// Checks obligatorios
+		if ((u == null) || !u.isRegistered() || users.get(u.getId()) != u) {
+			return false;
+		}
+
+		// Eliminación en cascada de las playlists asociadas al usuario.
+		u.getPlaylists().forEach(p -> MemoryPlaylistDAO.INSTANCE.delete(p.asMut()));
+
+		// Eliminación del usuario.
+		playlistIds.remove(u.getId());
+		return users.remove(u.getId(), u);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @return {@code true} si la modificación fue exitosa. {@code false} si el
+	 *         objeto es {@code null}, no está registrado o ya se ha eliminado.
+	 */
+	@Override
+	public boolean modify(User.Internal u) {
+
+		// Checks obligatorios
+		if ((u == null) || !u.isRegistered() || users.get(u.getId()) != u) {
+			return false;
+		}
+
+		Set<User.Internal.Field> changes = u.takeChanges();
+		List<Playlist.Internal> playlists = u.getPlaylists().stream().map(Playlist::asMut).toList();
+
+		// Las playlists registran sus propios cambios.
+		if (!changes.contains(User.Internal.Field.PLAYLISTS)) {
+			playlists.forEach(MemoryPlaylistDAO.INSTANCE::modify);
+			return true;
+		}
+
+		// Registrar las playlists nuevas y eliminar las que ya no están presentes.
+		playlists.forEach(p -> {
+			if (!p.isRegistered()) {
+				MemoryPlaylistDAO.INSTANCE.register(p);
+			} else {
+				MemoryPlaylistDAO.INSTANCE.modify(p);
+			}
+		});
+		Set<Integer> newIds = ids(playlists);
+		playlistIds.getOrDefault(u.getId(), Set.of()).stream().filter(id -> !newIds.contains(id))
+				.forEach(id -> MemoryPlaylistDAO.INSTANCE.recover(id).ifPresent(MemoryPlaylistDAO.INSTANCE::delete));
+		playlistIds.put(u.getId(), newIds);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote Los objetos en memoria son los propios objetos persistidos, por
+	 *           lo que no se añade un objeto que no estuviera ya registrado.
+	 */
+	@Override
+	public User.Internal intern(User.Internal t) {
+		return users.getOrDefault(t.getId(), t);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<User.Internal> recover(int id) {
+		return Optional.ofNullable(users.get(id));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<User.Internal> recoverAll() {
+		return List.copyOf(users.values());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean register(User.Internal user) {
+
+		// Checks iniciales obligatorios.
+		if ((user == null) || user.isRegistered()) {
+			return false;
+		}
+
+		// Registro de playlists asociadas al usuario.
+		List<Playlist.Internal> playlists = user.getPlaylists().stream().map(Playlist::asMut).toList();
+		playlists.forEach(MemoryPlaylistDAO.INSTANCE::register);
+
+		user.registerId(MemoryDAOFactory.nextId());
+		// Todos los campos se acaban de escribir.
+		user.takeChanges();
+		playlistIds.put(user.getId(), ids(playlists));
+		users.put(user.getId(), user);
+
+		return true;
+	}
+
+	private Set<Integer> ids(List<Playlist.Internal> playlists) {
+		return playlists.stream().map(Playlist.Internal::getId).collect(Collectors.toSet());
+	}
+}
@@ -1,5 +1,13 @@
 package umu.tds.chord.dao.tds;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import beans.Entidad;
+import beans.Propiedad;
+import tds.driver.FactoriaServicioPersistencia;
+import tds.driver.ServicioPersistencia;
 import umu.tds.chord.dao.DAO;
 import umu.tds.chord.dao.DAOFactory;
 import umu.tds.chord.model.Playlist;
@@ -12,6 +20,75 @@ import umu.tds.chord.model.User;
  */
 public class TDSDAOFactory extends DAOFactory {
 
+	/**
+	 * Enumerado de todas las propiedades que tiene la entidad de la marca de
+	 * generación.
+	 */
+	private enum Properties {
+		GENERATION, GENERATION_ENTITY_TYPE
+	}
+
+	private static final long noGeneration = 0;
+
+	private final ServicioPersistencia persistence = FactoriaServicioPersistencia.getInstance()
+			.getServicioPersistencia();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<DAOImplementation> getImplementation() {
+		return Optional.of(DAOImplementation.TDS_FAMILY);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia TDS. La marca se guarda en una entidad
+	 * propia del servicio de persistencia.
+	 */
+	@Override
+	public Optional<Long> getGeneration() {
+		List<Entidad> markers = persistence.recuperarEntidades(Properties.GENERATION_ENTITY_TYPE.name());
+		if (markers.isEmpty()) {
+			return Optional.of(noGeneration);
+		}
+
+		try {
+			return Optional.of(Long
+					.valueOf(persistence.recuperarPropiedadEntidad(markers.get(0), Properties.GENERATION.name())));
+		} catch (NumberFormatException e) {
+			return Optional.of(noGeneration);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Implementación para la familia TDS. La entidad de la marca se crea la
+	 * primera vez que se establece.
+	 */
+	@Override
+	public boolean setGeneration(long generation) {
+		List<Entidad> markers = persistence.recuperarEntidades(Properties.GENERATION_ENTITY_TYPE.name());
+		if (markers.isEmpty()) {
+			Entidad eMarker = new Entidad();
+			eMarker.setNombre(Properties.GENERATION_ENTITY_TYPE.name());
+			eMarker.setPropiedades(
+					Arrays.asList(new Propiedad(Properties.GENERATION.name(), String.valueOf(generation))));
+			persistence.registrarEntidad(eMarker);
+			return true;
+		}
+
+		// Modificación de la propiedad de la marca.
+		markers.get(0).getPropiedades().stream().filter(p -> p.getNombre().equals(Properties.GENERATION.name()))
+				.forEach(p -> {
+					p.setValor(String.valueOf(generation));
+					persistence.modificarPropiedad(p);
+				});
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -0,0 +1,57 @@
+package umu.tds.chord.dao.tds;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import beans.Entidad;
+import beans.Propiedad;
+
+/**
+ * Cargador de entidades para la familia de adaptadores TDS. Construye los
+ * objetos de las entidades de un tipo a partir de las entidades obtenidas del
+ * servidor de persistencia en una sola consulta, leyendo sus propiedades en
+ * memoria en lugar de consultarlas una a una. Los objetos recuperados se
+ * mantienen en el orden de las entidades.
+ */
+final class TDSLoader {
+
+	private TDSLoader() {
+	}
+
+	/**
+	 * Recupera los objetos de las entidades dadas.
+	 *
+	 * @param <T>      Tipo de los objetos recuperados.
+	 * @param entities Entidades ya obtenidas del servicio de persistencia, con sus
+	 *                 propiedades.
+	 * @param build    Función de construcción de un objeto a partir de su
+	 *                 entidad.
+	 *
+	 * @return Lista de solo lectura de los objetos recuperados. Se ignoran los
+	 *         fallos de recuperación.
+	 */
+	static <T> List<T> recoverAll(List<Entidad> entities, Function<Entidad, Optional<T>> build) {
+		return entities.stream().map(build).filter(Optional::isPresent) // Ignorar
+				.map(Optional::get) // errores.
+				.toList();
+	}
+
+	/**
+	 * Obtiene el valor de una propiedad de una entidad ya obtenida, sin consultar
+	 * el servicio de persistencia.
+	 *
+	 * @param entity Entidad obtenida del servicio de persistencia.
+	 * @param name   Nombre de la propiedad.
+	 *
+	 * @return Valor de la propiedad o {@code null} si la entidad no la tiene.
+	 */
+	static String property(Entidad entity, String name) {
+		for (Propiedad p : entity.getPropiedades()) {
+			if (p.getNombre().equals(name)) {
+				return p.getValor();
+			}
+		}
+		return null;
+	}
+}
@@ -2,8 +2,10 @@ package umu.tds.chord.dao.tds;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import beans.Entidad;
 import beans.Propiedad;
@@ -52,9 +54,9 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 			return false;
 		}
 
-		// Si la entidad no es de canción hay inconsistencias.
+		// Si la entidad ya no existe o no es de canción hay inconsistencias.
 		Entidad ePlaylist = persistence.recuperarEntidad(p.getId());
-		if (!ePlaylist.getNombre().equals(Properties.PLAYLIST_ENTITY_TYPE.name())) {
+		if (ePlaylist == null || !ePlaylist.getNombre().equals(Properties.PLAYLIST_ENTITY_TYPE.name())) {
 			return false;
 		}
 
@@ -79,37 +81,73 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 			return false;
 		}
 
-		// Si la entidad recuperada no es de canción hay inconsistencias.
+		// Sin cambios desde la última escritura no hay nada que modificar.
+		Set<Playlist.Internal.Field> changes = p.takeChanges();
+		if (changes.isEmpty()) {
+			return true;
+		}
+
+		// Si la entidad ya no existe o no es de canción hay inconsistencias.
 		Entidad ePlaylist = persistence.recuperarEntidad(p.getId());
-		if (!ePlaylist.getNombre().equals(Properties.PLAYLIST_ENTITY_TYPE.name())) {
+		if (ePlaylist == null || !ePlaylist.getNombre().equals(Properties.PLAYLIST_ENTITY_TYPE.name())) {
+			p.restoreChanges(changes);
 			return false;
 		}
 
-		// Modificación de propiedades de la entidad.
-		ePlaylist.getPropiedades().forEach(prop -> {
-
-			switch (Properties.valueOf(prop.getNombre())) {
-			case NAME:
-				prop.setValor(p.getName());
-				break;
-			case DESCRIPTION:
-				prop.setValor(p.getDescription());
-				break;
-			case SONGS:
-				prop.setValor(DAO.persistentsToString(
-						// Necesito la versión interna de las canciones.
-						p.getSongs().stream().map(Mutable::asMut).toList()));
-				break;
-			default:
-				break;
-			}
-			persistence.modificarPropiedad(prop);
-		});
-		persistence.modificarEntidad(ePlaylist);
+		// Modificación de las propiedades cambiadas de la entidad.
+		try {
+			ePlaylist.getPropiedades().stream().filter(prop -> isChanged(Properties.valueOf(prop.getNombre()), changes))
+					.forEach(prop -> {
+
+						switch (Properties.valueOf(prop.getNombre())) {
+						case NAME:
+							prop.setValor(p.getName());
+							break;
+						case DESCRIPTION:
+							prop.setValor(p.getDescription());
+							break;
+						case SONGS:
+							prop.setValor(DAO.persistentsToString(
+									// Necesito la versión interna de las canciones.
+									p.getSongs().stream().map(Mutable::asMut).toList()));
+							break;
+						default:
+							break;
+						}
+						persistence.modificarPropiedad(prop);
+					});
+		} catch (RuntimeException e) {
+			// Los cambios se escribirán en la siguiente modificación.
+			p.restoreChanges(changes);
+			throw e;
+		}
 
 		return true;
 	}
 
+	private boolean isChanged(Properties property, Set<Playlist.Internal.Field> changes) {
+		return switch (property) {
+		case NAME -> changes.contains(Playlist.Internal.Field.NAME);
+		case DESCRIPTION -> changes.contains(Playlist.Internal.Field.DESCRIPTION);
+		case SONGS -> changes.contains(Playlist.Internal.Field.SONGS);
+		default -> false;
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote El objeto se añade a la pool de la familia.
+	 */
+	@Override
+	public Playlist.Internal intern(Playlist.Internal t) {
+		Persistent pooled = TDSPoolDAO.intern(t);
+		if (pooled.getClass() != Playlist.Internal.class) {
+			return t;
+		}
+		return (Playlist.Internal) pooled;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -118,10 +156,10 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 	 */
 	@Override
 	public Optional<Playlist.Internal> recover(int id) {
-		// Comprobamos si la pool ya tenía el objeto y es del tipo canción.
+		// Comprobamos si la pool ya tenía el objeto y es del tipo playlist.
 		if (TDSPoolDAO.contains(id)) {
 			Persistent cached = TDSPoolDAO.getPersistent(id).get();
-			if (cached.getClass() == Song.Internal.class) {
+			if (cached.getClass() == Playlist.Internal.class) {
 				return Optional.of((Playlist.Internal) cached);
 			} else {
 				return Optional.empty();
@@ -129,9 +167,29 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 		}
 
 		// Recuperación de la entidad.
-		Entidad ePlaylist = persistence.recuperarEntidad(id);
-		// Asegurar que el tipo es de Playlist.
-		if (!ePlaylist.getNombre().equals(Properties.PLAYLIST_ENTITY_TYPE.name())) {
+		// La entidad puede haberse eliminado si la id provenía de una lista de
+		// referencias no actualizada.
+		Entidad ePlaylist = null;
+		try {
+			ePlaylist = persistence.recuperarEntidad(id);
+		} catch (NullPointerException e) {
+		}
+		return fromEntity(ePlaylist);
+	}
+
+	/**
+	 * Construye la playlist a partir de las propiedades ya obtenidas de su
+	 * entidad. Sus canciones se recuperan mediante el adaptador de canciones,
+	 * que sí puede consultar el servicio de persistencia.
+	 *
+	 * @param ePlaylist Entidad obtenida del servicio de persistencia.
+	 *
+	 * @return Objeto de la pool asociado a la id de la entidad o un opcional
+	 *         vacío si la entidad no es del tipo esperado.
+	 */
+	Optional<Playlist.Internal> fromEntity(Entidad ePlaylist) {
+		// Asegurar que el tipo es de playlist.
+		if (ePlaylist == null || !ePlaylist.getNombre().equals(Properties.PLAYLIST_ENTITY_TYPE.name())) {
 			return Optional.empty();
 		}
 
@@ -139,11 +197,11 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 		String name = null;
 		String description = null;
 
-		name = persistence.recuperarPropiedadEntidad(ePlaylist, Properties.NAME.name());
-		description = persistence.recuperarPropiedadEntidad(ePlaylist, Properties.DESCRIPTION.name());
+		name = TDSLoader.property(ePlaylist, Properties.NAME.name());
+		description = TDSLoader.property(ePlaylist, Properties.DESCRIPTION.name());
 
 		// Recuperación de la lista de canciones.
-		String recentSongsStr = persistence.recuperarPropiedadEntidad(ePlaylist, Properties.SONGS.name());
+		String recentSongsStr = TDSLoader.property(ePlaylist, Properties.SONGS.name());
 
 		// Añadir canciones.
 		List<Song> songs = new ArrayList<>(DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getSongDAO()
@@ -152,10 +210,20 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 		// Creación de la playlist
 		Playlist.Internal p = new Playlist.Builder(name).description(description).songs(songs).build().get().asMut();
 
-		p.registerId(id);
-		TDSPoolDAO.addPersistent(p);
+		p.registerId(ePlaylist.getId());
 
-		return Optional.of(p);
+		// Las canciones eliminadas desde que se guardó la playlist se quitarán
+		// de persistencia en su siguiente escritura.
+		if (songs.size() != DAO.stringToIdList(recentSongsStr).size()) {
+			p.restoreChanges(EnumSet.of(Playlist.Internal.Field.SONGS));
+		}
+
+		// Si otro hilo ya ha recuperado la playlist se utiliza su instancia.
+		Persistent pooled = TDSPoolDAO.intern(p);
+		if (pooled.getClass() != Playlist.Internal.class) {
+			return Optional.empty();
+		}
+		return Optional.of((Playlist.Internal) pooled);
 	}
 
 	/**
@@ -163,10 +231,8 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 	 */
 	@Override
 	public List<Playlist.Internal> recoverAll() {
-		return persistence.recuperarEntidades(Properties.PLAYLIST_ENTITY_TYPE.name()).stream()
-				.map(entity -> this.recover(entity.getId())).filter(Optional::isPresent).map(Optional::get) // Ignorar
-																											// errores.
-				.toList();
+		return TDSLoader.recoverAll(persistence.recuperarEntidades(Properties.PLAYLIST_ENTITY_TYPE.name()),
+				this::fromEntity);
 	}
 
 	/**
@@ -206,6 +272,8 @@ public enum TDSPlaylistDAO implements DAO<Playlist.Internal> {
 		// Registro.
 		ePlaylist = persistence.registrarEntidad(ePlaylist);
 		p.registerId(ePlaylist.getId());
+		// Todos los campos se acaban de escribir.
+		p.takeChanges();
 		TDSPoolDAO.addPersistent(p);
 
 		return true;
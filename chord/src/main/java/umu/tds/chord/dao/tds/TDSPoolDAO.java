@@ -1,7 +1,8 @@
 package umu.tds.chord.dao.tds;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import umu.tds.chord.model.Persistent;
 
@@ -17,7 +18,9 @@ import umu.tds.chord.model.Persistent;
  */
 public final class TDSPoolDAO {
 
-	private static HashMap<Integer, Persistent> pool = new HashMap<>();
+	// La pool se consulta desde varios hilos, como el de escritura de
+	// usuarios.
+	private static Map<Integer, Persistent> pool = new ConcurrentHashMap<>();
 
 	/**
 	 * Registra el objeto en la pool asociandolo a la id dada.
@@ -28,13 +31,26 @@ public final class TDSPoolDAO {
 	 *         objeto es {@code null} o si ya existía un mapeo para la id dada.
 	 */
 	protected static boolean addPersistent(Persistent o) {
-		if ((o == null) || contains(o.getId())) {
+		if (o == null) {
 			return false;
 		}
 
-		pool.put(o.getId(), o);
+		return pool.putIfAbsent(o.getId(), o) == null;
+	}
 
-		return true;
+	/**
+	 * Registra el objeto en la pool si no existía ya un objeto con su id. Permite
+	 * que varios hilos recuperen a la vez el mismo objeto y obtengan todos la
+	 * misma instancia.
+	 *
+	 * @param o Objeto {@link Persistent} que se desea almacenar en la pool.
+	 *
+	 * @return Objeto de la pool asociado a la id del objeto dado. Será el propio
+	 *         objeto si no existía otro.
+	 */
+	protected static Persistent intern(Persistent o) {
+		Persistent pooled = pool.putIfAbsent(o.getId(), o);
+		return pooled == null ? o : pooled;
 	}
 
 	/**
@@ -66,12 +82,10 @@ public final class TDSPoolDAO {
 	 * @return {@code true} si se ha eliminado el objeto.
 	 */
 	protected static boolean removePersistent(Persistent o) {
-		if ((o == null) || !contains(o.getId())) {
+		if (o == null) {
 			return false;
 		}
 
-		pool.remove(o.getId());
-
-		return true;
+		return pool.remove(o.getId()) != null;
 	}
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 package umu.tds.chord.dao.tds;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import beans.Entidad;
 import beans.Propiedad;
@@ -47,9 +50,9 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 			return false;
 		}
 
-		// Si la entidad no es de canción hay inconsistencias.
+		// Si la entidad ya no existe o no es de canción hay inconsistencias.
 		Entidad eSong = persistence.recuperarEntidad(s.getId());
-		if (!eSong.getNombre().equals(Properties.SONG_ENTITY_TYPE.name())) {
+		if (eSong == null || !eSong.getNombre().equals(Properties.SONG_ENTITY_TYPE.name())) {
 			return false;
 		}
 
@@ -74,32 +77,58 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 			return false;
 		}
 
-		// Si la entidad recuperada no es de canción hay inconsistencias.
+		// Sin cambios desde la última escritura no hay nada que modificar.
+		Set<Song.Internal.Field> changes = s.takeChanges();
+		if (changes.isEmpty()) {
+			return true;
+		}
+
+		// Si la entidad ya no existe o no es de canción hay inconsistencias.
 		Entidad eSong = persistence.recuperarEntidad(s.getId());
-		if (!eSong.getNombre().equals(Properties.SONG_ENTITY_TYPE.name())) {
+		if (eSong == null || !eSong.getNombre().equals(Properties.SONG_ENTITY_TYPE.name())) {
+			s.restoreChanges(changes);
 			return false;
 		}
 
-		// Modificación de propiedades de la entidad.
-		eSong.getPropiedades().forEach(p -> {
-
-			switch (Properties.valueOf(p.getNombre())) {
-			// No se puden mutar las canciones.
-			case NAME, AUTHOR, PATH, STYLE:
-				break;
-			case REPRODUCCIONES:
-				p.setValor(String.valueOf(s.getReproducciones()));
-				break;
-			default:
-				break;
-			}
-			persistence.modificarPropiedad(p);
-		});
-		persistence.modificarEntidad(eSong);
+		// Modificación de las propiedades cambiadas de la entidad.
+		eSong.getPropiedades().stream().filter(p -> isChanged(Properties.valueOf(p.getNombre()), changes))
+				.forEach(p -> {
+
+					switch (Properties.valueOf(p.getNombre())) {
+					case REPRODUCCIONES:
+						p.setValor(String.valueOf(s.getReproducciones()));
+						break;
+					default:
+						break;
+					}
+					persistence.modificarPropiedad(p);
+				});
 
 		return true;
 	}
 
+	private boolean isChanged(Properties property, Set<Song.Internal.Field> changes) {
+		return switch (property) {
+		case REPRODUCCIONES -> changes.contains(Song.Internal.Field.REPRODUCCIONES);
+		// No se puden mutar las canciones.
+		default -> false;
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote El objeto se añade a la pool de la familia.
+	 */
+	@Override
+	public Song.Internal intern(Song.Internal t) {
+		Persistent pooled = TDSPoolDAO.intern(t);
+		if (pooled.getClass() != Song.Internal.class) {
+			return t;
+		}
+		return (Song.Internal) pooled;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -120,9 +149,29 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 		}
 
 		// Recuperación de la entidad.
-		Entidad eSong = persistence.recuperarEntidad(id);
-		// Asegurar que el tipo es de usuario.
-		if (!eSong.getNombre().equals(Properties.SONG_ENTITY_TYPE.name())) {
+		// La entidad puede haberse eliminado si la id provenía de una lista de
+		// referencias no actualizada.
+		Entidad eSong = null;
+		try {
+			eSong = persistence.recuperarEntidad(id);
+		} catch (NullPointerException e) {
+		}
+		return fromEntity(eSong);
+	}
+
+	/**
+	 * Construye la canción a partir de las propiedades ya obtenidas de su
+	 * entidad, sin consultar el servicio de persistencia. Véase
+	 * {@link TDSLoader}.
+	 *
+	 * @param eSong Entidad obtenida del servicio de persistencia.
+	 *
+	 * @return Objeto de la pool asociado a la id de la entidad o un opcional
+	 *         vacío si la entidad no es del tipo esperado.
+	 */
+	Optional<Song.Internal> fromEntity(Entidad eSong) {
+		// Asegurar que el tipo es de canción.
+		if (eSong == null || !eSong.getNombre().equals(Properties.SONG_ENTITY_TYPE.name())) {
 			return Optional.empty();
 		}
 
@@ -133,21 +182,24 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 		String style = null;
 		int reproducciones = 0;
 
-		name = persistence.recuperarPropiedadEntidad(eSong, Properties.NAME.name());
-		author = persistence.recuperarPropiedadEntidad(eSong, Properties.AUTHOR.name());
-		path = persistence.recuperarPropiedadEntidad(eSong, Properties.PATH.name());
-		style = persistence.recuperarPropiedadEntidad(eSong, Properties.STYLE.name());
-		reproducciones = Integer
-				.valueOf(persistence.recuperarPropiedadEntidad(eSong, Properties.REPRODUCCIONES.name()));
+		name = TDSLoader.property(eSong, Properties.NAME.name());
+		author = TDSLoader.property(eSong, Properties.AUTHOR.name());
+		path = TDSLoader.property(eSong, Properties.PATH.name());
+		style = TDSLoader.property(eSong, Properties.STYLE.name());
+		reproducciones = Integer.valueOf(TDSLoader.property(eSong, Properties.REPRODUCCIONES.name()));
 
 		// Construcción y registro.
 		Song.Internal s = new Song.Builder(name).author(author).path(path).style(style).reproducciones(reproducciones)
 				.build().get().asMut();
 
-		s.registerId(id);
-		TDSPoolDAO.addPersistent(s);
+		s.registerId(eSong.getId());
 
-		return Optional.of(s);
+		// Si otro hilo ya ha recuperado la canción se utiliza su instancia.
+		Persistent pooled = TDSPoolDAO.intern(s);
+		if (pooled.getClass() != Song.Internal.class) {
+			return Optional.empty();
+		}
+		return Optional.of((Song.Internal) pooled);
 	}
 
 	/**
@@ -155,10 +207,8 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 	 */
 	@Override
 	public List<Song.Internal> recoverAll() {
-		return persistence.recuperarEntidades(Properties.SONG_ENTITY_TYPE.name()).stream()
-				.map(entity -> this.recover(entity.getId())).filter(Optional::isPresent).map(Optional::get) // Ignorar
-																											// errores.
-				.toList();
+		return TDSLoader.recoverAll(persistence.recuperarEntidades(Properties.SONG_ENTITY_TYPE.name()),
+				this::fromEntity);
 	}
 
 	/**
@@ -182,8 +232,41 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 			return false;
 		}
 
+		// Registro.
+		eSong = persistence.registrarEntidad(toEntity(s));
+		s.registerId(eSong.getId());
+		// Todos los campos se acaban de escribir.
+		s.takeChanges();
+		TDSPoolDAO.addPersistent(s);
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote Las canciones sin registrar no tienen id persistente, por lo que
+	 *           no se consulta su existencia en el servicio de persistencia. Se
+	 *           realiza una única llamada de registro por canción.
+	 */
+	@Override
+	public List<Song.Internal> registerAll(List<Song.Internal> list) {
+		List<Song.Internal> registered = new ArrayList<>(list.size());
+
+		list.stream().filter(s -> s != null && !s.isRegistered()).forEach(s -> {
+			Entidad eSong = persistence.registrarEntidad(toEntity(s));
+			s.registerId(eSong.getId());
+			s.takeChanges();
+			TDSPoolDAO.addPersistent(s);
+			registered.add(s);
+		});
+
+		return Collections.unmodifiableList(registered);
+	}
+
+	private Entidad toEntity(Song.Internal s) {
 		// Creación de la entidad.
-		eSong = new Entidad();
+		Entidad eSong = new Entidad();
 		eSong.setNombre(Properties.SONG_ENTITY_TYPE.name());
 
 		// Propiedades.
@@ -193,11 +276,6 @@ public enum TDSSongDAO implements DAO<Song.Internal> {
 				new Propiedad(Properties.STYLE.name(), s.getStyle()),
 				new Propiedad(Properties.REPRODUCCIONES.name(), String.valueOf(s.getReproducciones()))));
 
-		// Registro.
-		eSong = persistence.registrarEntidad(eSong);
-		s.registerId(eSong.getId());
-		TDSPoolDAO.addPersistent(s);
-
-		return true;
+		return eSong;
 	}
 }
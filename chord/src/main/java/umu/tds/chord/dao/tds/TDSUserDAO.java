@@ -2,11 +2,12 @@ package umu.tds.chord.dao.tds;
 
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import beans.Entidad;
 import beans.Propiedad;
@@ -60,9 +61,9 @@ public enum TDSUserDAO implements DAO<User.Internal> {
 			return false;
 		}
 
-		// Si la entidad no es de usuario hay inconsistencias.
+		// Si la entidad ya no existe o no es de usuario hay inconsistencias.
 		Entidad eUser = persistence.recuperarEntidad(u.getId());
-		if (!eUser.getNombre().equals(Properties.USER_ENTITY_TYPE.name())) {
+		if (eUser == null || !eUser.getNombre().equals(Properties.USER_ENTITY_TYPE.name())) {
 			return false;
 		}
 
@@ -92,87 +93,154 @@ public enum TDSUserDAO implements DAO<User.Internal> {
 			return false;
 		}
 
-		// Si la entidad recuperada no es de usuario hay inconsistencias.
-		Entidad eUser = persistence.recuperarEntidad(u.getId());
-		if (!eUser.getNombre().equals(Properties.USER_ENTITY_TYPE.name())) {
-			return false;
-		}
+		Set<User.Internal.Field> changes = u.takeChanges();
 
-		eUser.getPropiedades().forEach(p -> {
-
-			switch (Properties.valueOf(p.getNombre())) {
-			case USER_NAME:
-				p.setValor(u.getUserName());
-				break;
-			case PASSWORD_HASH:
-				p.setValor(u.getHashedPassword());
-				break;
-			case PREMIUM:
-				p.setValor(String.valueOf(u.isPremium()));
-				break;
-			case BIRTHDAY:
-				p.setValor(u.getBirthday().toInstant().toString());
-				break;
-			case PLAYLISTS:
-
-				// Recuperar playlists guardadas.
-				String playlistsStr = p.getValor();
-				List<Playlist.Internal> oldPlaylists = new ArrayList<>(DAOFactory
-						.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO().stringToPersistents(playlistsStr));
-
-				// Crear lista con ids actuales de las playlists.
-				List<Playlist.Internal> newPlaylists = new ArrayList<>(
-						u.getPlaylists().stream().map(Mutable::asMut).toList());
-
-				newPlaylists.forEach(playlist -> {
-					// Las ya registradas son ignoradas por el dao.
-					DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO().register(playlist);
-					DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO().modify(playlist);
-				});
-
-				// Eliminar playlists que ya no están presentes.
-				List<Playlist.Internal> removedPlaylists = new ArrayList<>(oldPlaylists);
-				removedPlaylists.removeAll(newPlaylists);
-				removedPlaylists.forEach(playlist -> DAOFactory.getInstance(DAOImplementation.TDS_FAMILY)
-						.getPlaylistDAO().delete(playlist));
-
-				p.setValor(DAO.persistentsToString(
-						// Necesito la versión interna de las playlist para
-						// poder obtener sus ids en persistencia.
-						u.getPlaylists().stream().map(Mutable::asMut).toList()));
-				break;
-			case RECENT_SONGS:
-				p.setValor(DAO.persistentsToString(
-						// Necesito la versión interna de las canciones para
-						// poder obtener sus ids en persistencia.
-						u.getRecentSongs().stream().map(Mutable::asMut).toList()));
-				break;
-			case FAVOURITE_SONGS:
-				p.setValor(DAO.persistentsToString(
-						// Necesito la versión interna de las canciones para
-						// poder obtener sus ids en persistencia.
-						u.getFavouriteSongs().stream().map(Mutable::asMut).toList()));
-				break;
-			case DISCOUNT_TYPE:
-				p.setValor(u.getDiscount().getType().name());
-				break;
-			case DISCOUNT_START:
-				p.setValor(u.getDiscount().getStart().toInstant().toString());
-				break;
-			case DISCOUNT_END:
-				p.setValor(u.getDiscount().getEnd().toInstant().toString());
-				break;
-			default:
-				break;
+		try {
+			// Las playlists registran sus propios cambios. Si la lista de
+			// playlists ha cambiado se escriben al actualizar su propiedad. Las
+			// de un usuario sin resolver no han podido cambiar.
+			if (u.isResolved() && !changes.contains(User.Internal.Field.PLAYLISTS)) {
+				u.getPlaylists().forEach(
+						p -> DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO().modify(p.asMut()));
 			}
 
-			persistence.modificarPropiedad(p);
+			// Sin cambios desde la última escritura no hay nada que modificar.
+			if (changes.isEmpty()) {
+				return true;
+			}
 
-		});
+			// Si la entidad ya no existe o no es de usuario hay inconsistencias.
+			Entidad eUser = persistence.recuperarEntidad(u.getId());
+			if (eUser == null || !eUser.getNombre().equals(Properties.USER_ENTITY_TYPE.name())) {
+				u.restoreChanges(changes);
+				return false;
+			}
+
+			// Modificación de las propiedades cambiadas de la entidad.
+			eUser.getPropiedades().stream().filter(p -> isChanged(Properties.valueOf(p.getNombre()), changes))
+					.forEach(p -> {
+
+						switch (Properties.valueOf(p.getNombre())) {
+						case PREMIUM:
+							p.setValor(String.valueOf(u.isPremium()));
+							break;
+						case PLAYLISTS:
+							List<Playlist.Internal> newPlaylists = u.getPlaylists().stream().map(Mutable::asMut)
+									.toList();
+							writePlaylists(DAO.stringToIds(p.getValor()), newPlaylists);
+
+							p.setValor(DAO.persistentsToString(
+									// Necesito la versión interna de las playlist para
+									// poder obtener sus ids en persistencia.
+									newPlaylists));
+							break;
+						case RECENT_SONGS:
+							p.setValor(DAO.persistentsToString(
+									// Necesito la versión interna de las canciones para
+									// poder obtener sus ids en persistencia.
+									u.getRecentSongs().stream().map(Mutable::asMut).toList()));
+							break;
+						case FAVOURITE_SONGS:
+							p.setValor(DAO.persistentsToString(
+									// Necesito la versión interna de las canciones para
+									// poder obtener sus ids en persistencia.
+									u.getFavouriteSongs().stream().map(Mutable::asMut).toList()));
+							break;
+						case DISCOUNT_TYPE:
+							p.setValor(u.getDiscount().getType().name());
+							break;
+						case DISCOUNT_START:
+							p.setValor(u.getDiscount().getStart().toInstant().toString());
+							break;
+						case DISCOUNT_END:
+							p.setValor(u.getDiscount().getEnd().toInstant().toString());
+							break;
+						default:
+							break;
+						}
+
+						persistence.modificarPropiedad(p);
+
+					});
+		} catch (RuntimeException e) {
+			// Los cambios se escribirán en la siguiente modificación.
+			u.restoreChanges(changes);
+			throw e;
+		}
 
 		return true;
 	}
 
+	private void resolveReferences(User.References references, User.Internal user) {
+		DAO<Song.Internal> songDAO = DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getSongDAO();
+		DAO<Playlist.Internal> playlistDAO = DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO();
+
+		// Las referencias eliminadas desde que se guardaron se ignoran. El
+		// usuario las marca como cambios al resolverse.
+
+		// Añadir canciones recientes. Se guardan de la más reciente a la más
+		// antigua, por lo que se añaden en orden inverso.
+		List<Song.Internal> recentSongs = references.getRecentSongIds().stream().map(songDAO::recover)
+				.flatMap(Optional::stream).toList();
+		for (int i = recentSongs.size() - 1; i >= 0; i--) {
+			user.addRecentSong(recentSongs.get(i));
+		}
+
+		// Añadir playlists.
+		references.getPlaylistIds().stream().map(playlistDAO::recover).flatMap(Optional::stream)
+				.forEach(user::addPlaylist);
+
+		// Añadir canciones favoritas.
+		references.getFavouriteSongIds().stream().map(songDAO::recover).flatMap(Optional::stream)
+				.forEach(user::addFavouriteSong);
+	}
+
+	private void writePlaylists(Set<Integer> oldIds, List<Playlist.Internal> newPlaylists) {
+		DAO<Playlist.Internal> playlistDAO = DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO();
+
+		// Sólo se escriben las playlists nuevas y las que han cambiado. El
+		// adaptador ignora las modificaciones de playlists sin cambios.
+		Set<Integer> newIds = new HashSet<>();
+		newPlaylists.forEach(playlist -> {
+			if (!playlist.isRegistered()) {
+				playlistDAO.register(playlist);
+			} else {
+				playlistDAO.modify(playlist);
+			}
+			newIds.add(playlist.getId());
+		});
+
+		// Eliminar las playlists guardadas que ya no están presentes.
+		oldIds.stream().filter(id -> !newIds.contains(id))
+				.forEach(id -> playlistDAO.recover(id).ifPresent(playlistDAO::delete));
+	}
+
+	private boolean isChanged(Properties property, Set<User.Internal.Field> changes) {
+		return switch (property) {
+		case PREMIUM -> changes.contains(User.Internal.Field.PREMIUM);
+		case PLAYLISTS -> changes.contains(User.Internal.Field.PLAYLISTS);
+		case RECENT_SONGS -> changes.contains(User.Internal.Field.RECENT_SONGS);
+		case FAVOURITE_SONGS -> changes.contains(User.Internal.Field.FAVOURITE_SONGS);
+		case DISCOUNT_TYPE, DISCOUNT_START, DISCOUNT_END -> changes.contains(User.Internal.Field.DISCOUNT);
+		// El nombre, la contraseña y el cumpleaños no cambian tras el registro.
+		default -> false;
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @implNote El objeto se añade a la pool de la familia.
+	 */
+	@Override
+	public User.Internal intern(User.Internal t) {
+		Persistent pooled = TDSPoolDAO.intern(t);
+		if (pooled.getClass() != User.Internal.class) {
+			return t;
+		}
+		return (User.Internal) pooled;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -194,9 +262,22 @@ public enum TDSUserDAO implements DAO<User.Internal> {
 
 		// Si la entidad recuperada no está en el pool.
 		Entidad eUser = persistence.recuperarEntidad(id);
+		return fromEntity(eUser);
+	}
 
+	/**
+	 * Construye el usuario a partir de las propiedades ya obtenidas de su
+	 * entidad, sin consultar el servicio de persistencia. Véase
+	 * {@link TDSLoader}.
+	 *
+	 * @param eUser Entidad obtenida del servicio de persistencia.
+	 *
+	 * @return Objeto de la pool asociado a la id de la entidad o un opcional
+	 *         vacío si la entidad no es del tipo esperado.
+	 */
+	Optional<User.Internal> fromEntity(Entidad eUser) {
 		// Asegurar que el tipo es de usuario.
-		if (!eUser.getNombre().equals(Properties.USER_ENTITY_TYPE.name())) {
+		if (eUser == null || !eUser.getNombre().equals(Properties.USER_ENTITY_TYPE.name())) {
 			return Optional.empty();
 		}
 
@@ -210,53 +291,46 @@ public enum TDSUserDAO implements DAO<User.Internal> {
 		DiscountFactory.Type discountType = null;
 
 		// Recuperación de primitivas.
-		userName = persistence.recuperarPropiedadEntidad(eUser, Properties.USER_NAME.name());
-		passwordHash = persistence.recuperarPropiedadEntidad(eUser, Properties.PASSWORD_HASH.name());
+		userName = TDSLoader.property(eUser, Properties.USER_NAME.name());
+		passwordHash = TDSLoader.property(eUser, Properties.PASSWORD_HASH.name());
 
 		try {
-			birthday = Date
-					.from(Instant.parse(persistence.recuperarPropiedadEntidad(eUser, Properties.BIRTHDAY.name())));
-			discountStart = Date.from(
-					Instant.parse(persistence.recuperarPropiedadEntidad(eUser, Properties.DISCOUNT_START.name())));
-			discountEnd = Date
-					.from(Instant.parse(persistence.recuperarPropiedadEntidad(eUser, Properties.DISCOUNT_END.name())));
+			birthday = Date.from(Instant.parse(TDSLoader.property(eUser, Properties.BIRTHDAY.name())));
+			discountStart = Date.from(Instant.parse(TDSLoader.property(eUser, Properties.DISCOUNT_START.name())));
+			discountEnd = Date.from(Instant.parse(TDSLoader.property(eUser, Properties.DISCOUNT_END.name())));
 		} catch (DateTimeParseException e) {
 			return Optional.empty();
 		}
 
-		premium = Boolean.valueOf(persistence.recuperarPropiedadEntidad(eUser, Properties.PREMIUM.name()));
-		discountType = DiscountFactory.Type
-				.valueOf(persistence.recuperarPropiedadEntidad(eUser, Properties.DISCOUNT_TYPE.name()));
+		premium = Boolean.valueOf(TDSLoader.property(eUser, Properties.PREMIUM.name()));
+		discountType = DiscountFactory.Type.valueOf(TDSLoader.property(eUser, Properties.DISCOUNT_TYPE.name()));
 
 		Discount discount = DiscountFactory.createDiscount(discountStart, discountEnd, discountType);
 
-		// Obtención de las cadenas con los objetos referenciados.
-		String playlistsStr = persistence.recuperarPropiedadEntidad(eUser, Properties.PLAYLISTS.name());
-		String recentSongsStr = persistence.recuperarPropiedadEntidad(eUser, Properties.RECENT_SONGS.name());
-		String favouriteSongsStr = persistence.recuperarPropiedadEntidad(eUser, Properties.FAVOURITE_SONGS.name());
-
-		// Añadir cancioens recientes.
-		List<Song> recentSongs = DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getSongDAO()
-				.stringToPersistents(recentSongsStr).stream().map(s -> (Song) s).toList();
-
 		// Creación de la representación interna del usuario.
 		User.Internal user = new User.Builder(userName).hashedPassword(passwordHash).premium(premium).birthday(birthday)
-				.discount(discount).recentSongs(recentSongs).build().get().asMut();
+				.discount(discount).build().get().asMut();
 
-		// Establecimiento de id y carga en la pool.
-		user.registerId(id);
-		TDSPoolDAO.addPersistent(user.asMut());
+		// Establecimiento de id.
+		user.registerId(eUser.getId());
 
-		// Añadir playlists.
-		DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getPlaylistDAO().stringToPersistents(playlistsStr)
-				.forEach(user::addPlaylist);
+		// Los objetos referenciados se recuperan en el primer acceso a ellos.
+		User.References references = new User.References(
+				DAO.stringToIdList(TDSLoader.property(eUser, Properties.PLAYLISTS.name())),
+				DAO.stringToIdList(TDSLoader.property(eUser, Properties.RECENT_SONGS.name())),
+				DAO.stringToIdList(TDSLoader.property(eUser, Properties.FAVOURITE_SONGS.name())));
+		user.setReferenceLoader(references, u -> resolveReferences(references, u));
 
-		// Añadir canciones favoritas.
-		DAOFactory.getInstance(DAOImplementation.TDS_FAMILY).getSongDAO().stringToPersistents(favouriteSongsStr)
-				.forEach(user::addFavouriteSong);
+		// El estado recuperado coincide con el persistente.
+		user.takeChanges();
 
-		// Retorno del objeto.
-		return Optional.of(user);
+		// Carga en la pool. Si otro hilo ya ha recuperado el usuario se utiliza
+		// su instancia.
+		Persistent pooled = TDSPoolDAO.intern(user);
+		if (pooled.getClass() != User.Internal.class) {
+			return Optional.empty();
+		}
+		return Optional.of((User.Internal) pooled);
 	}
 
 	/**
@@ -264,8 +338,8 @@ public enum TDSUserDAO implements DAO<User.Internal> {
 	 */
 	@Override
 	public List<User.Internal> recoverAll() {
-		return persistence.recuperarEntidades(Properties.USER_ENTITY_TYPE.name()).stream()
-				.map(entity -> this.recover(entity.getId())).filter(Optional::isPresent).map(Optional::get).toList();
+		return TDSLoader.recoverAll(persistence.recuperarEntidades(Properties.USER_ENTITY_TYPE.name()),
+				this::fromEntity);
 	}
 
 	/**
@@ -322,6 +396,8 @@ public enum TDSUserDAO implements DAO<User.Internal> {
 		// Registro de la entidad y establecimiento del id.
 		eUser = persistence.registrarEntidad(eUser);
 		user.registerId(eUser.getId());
+		// Todos los campos se acaban de escribir.
+		user.takeChanges();
 		TDSPoolDAO.addPersistent(user);
 
 		return true;
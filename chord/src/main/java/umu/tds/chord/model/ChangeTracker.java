@@ -0,0 +1,58 @@
+package umu.tds.chord.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Registro de los campos lógicos de un objeto persistente que han cambiado
+ * desde su última escritura en persistencia. Permite a los adaptadores DAO
+ * escribir únicamente las propiedades afectadas.
+ *
+ * Los cambios pueden marcarse desde el hilo de la interfaz mientras se escriben
+ * desde otro hilo, por lo que los métodos están sincronizados.
+ *
+ * @param <E> Enumerado de los campos lógicos del objeto.
+ */
+final class ChangeTracker<E extends Enum<E>> {
+
+	private final EnumSet<E> changes;
+
+	/**
+	 * Crea un registro sin cambios.
+	 *
+	 * @param type Clase del enumerado de campos.
+	 */
+	ChangeTracker(Class<E> type) {
+		changes = EnumSet.noneOf(type);
+	}
+
+	/**
+	 * Marca un campo como cambiado.
+	 *
+	 * @param field Campo que ha cambiado.
+	 */
+	synchronized void mark(E field) {
+		changes.add(field);
+	}
+
+	/**
+	 * Marca de nuevo como cambiados los campos dados. Utilizado cuando falla la
+	 * escritura de cambios ya obtenidos.
+	 *
+	 * @param fields Campos que se desean marcar.
+	 */
+	synchronized void markAll(Set<E> fields) {
+		changes.addAll(fields);
+	}
+
+	/**
+	 * Obtiene los campos cambiados y vacía el registro.
+	 *
+	 * @return Conjunto con los campos que habían cambiado.
+	 */
+	synchronized Set<E> take() {
+		Set<E> taken = EnumSet.copyOf(changes);
+		changes.clear();
+		return taken;
+	}
+}
@@ -0,0 +1,256 @@
+package umu.tds.chord.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Árbol radix de claves de texto ponderadas para el autocompletado. Cada clave
+ * guarda el texto que se muestra al usuario, un peso y la cantidad de canciones
+ * que la comparten. Cada nodo mantiene el peso máximo de su subárbol, lo que
+ * permite obtener las mejores compleciones de un prefijo recorriendo sólo los
+ * nodos necesarios, sin visitar el subárbol completo.
+ *
+ * Sus métodos están sincronizados sobre el propio árbol, de forma que puede
+ * consultarse sin esperar a las búsquedas en curso del repositorio.
+ */
+final class CompletionTrie {
+
+	private static final class Node {
+
+		// Fragmento de la clave desde el nodo padre.
+		private String label;
+		private Map<Character, Node> children;
+		// Datos de la clave que termina en este nodo. Sólo son válidos si
+		// count es mayor que 0.
+		private String display;
+		private long weight;
+		private int count;
+		// Peso máximo de las claves del subárbol.
+		private long best;
+
+		private Node(String label) {
+			this.label = label;
+			this.children = new HashMap<>();
+			this.display = null;
+			this.weight = 0;
+			this.count = 0;
+			this.best = Long.MIN_VALUE;
+		}
+
+		private boolean isTerminal() {
+			return count > 0;
+		}
+
+		private void updateBest() {
+			best = isTerminal() ? weight : Long.MIN_VALUE;
+			for (Node child : children.values()) {
+				best = Math.max(best, child.best);
+			}
+		}
+	}
+
+	// Elemento de la cola de la búsqueda por mejor peso. Un nodo se expande y
+	// una clave terminal se devuelve.
+	private static final class Candidate {
+
+		private final Node node;
+		private final boolean terminal;
+		private final long priority;
+
+		private Candidate(Node node, boolean terminal) {
+			this.node = node;
+			this.terminal = terminal;
+			this.priority = terminal ? node.weight : node.best;
+		}
+	}
+
+	private final Node root;
+
+	/**
+	 * Crea un árbol vacío.
+	 */
+	CompletionTrie() {
+		root = new Node("");
+	}
+
+	/**
+	 * Añade una aparición de la clave dada, sumando su peso al de la clave.
+	 *
+	 * @param key     Clave normalizada.
+	 * @param display Texto que se muestra al completar la clave. Se conserva el
+	 *                de la primera aparición.
+	 * @param weight  Peso de la aparición.
+	 */
+	synchronized void add(String key, String display, long weight) {
+		add(root, key, display, weight);
+	}
+
+	/**
+	 * Quita una aparición de la clave dada, restando su peso al de la clave. La
+	 * clave desaparece al quitar su última aparición.
+	 *
+	 * @param key    Clave normalizada.
+	 * @param weight Peso con el que se añadió la aparición.
+	 */
+	synchronized void remove(String key, long weight) {
+		update(root, key, -weight, true);
+	}
+
+	/**
+	 * Modifica el peso de una clave existente.
+	 *
+	 * @param key   Clave normalizada.
+	 * @param delta Cantidad que se suma al peso.
+	 */
+	synchronized void addWeight(String key, long delta) {
+		update(root, key, delta, false);
+	}
+
+	/**
+	 * Vacía el árbol.
+	 */
+	synchronized void clear() {
+		root.children.clear();
+		root.count = 0;
+		root.updateBest();
+	}
+
+	/**
+	 * Obtiene las claves de mayor peso que comienzan por el prefijo dado.
+	 *
+	 * @param prefix Prefijo normalizado.
+	 * @param limit  Cantidad máxima de compleciones.
+	 *
+	 * @return Textos de las claves encontradas, de mayor a menor peso.
+	 */
+	synchronized List<String> complete(String prefix, int limit) {
+		List<String> result = new ArrayList<>(Math.max(0, limit));
+		Node start = find(prefix);
+		if (start == null || limit <= 0) {
+			return result;
+		}
+
+		PriorityQueue<Candidate> queue = new PriorityQueue<>(
+				Comparator.comparingLong((Candidate c) -> c.priority).reversed());
+		queue.add(new Candidate(start, false));
+		while (!queue.isEmpty() && result.size() < limit) {
+			Candidate c = queue.poll();
+			if (c.terminal) {
+				result.add(c.node.display);
+				continue;
+			}
+			if (c.node.isTerminal()) {
+				queue.add(new Candidate(c.node, true));
+			}
+			c.node.children.values().forEach(child -> queue.add(new Candidate(child, false)));
+		}
+		return result;
+	}
+
+	private void add(Node node, String key, String display, long weight) {
+		if (key.isEmpty()) {
+			if (!node.isTerminal()) {
+				node.display = display;
+				node.weight = 0;
+			}
+			node.count++;
+			node.weight += weight;
+			node.updateBest();
+			return;
+		}
+
+		Node child = node.children.get(key.charAt(0));
+		if (child == null) {
+			child = new Node(key);
+			node.children.put(key.charAt(0), child);
+			add(child, "", display, weight);
+		} else {
+			int common = commonPrefix(child.label, key);
+			if (common < child.label.length()) {
+				// Dividir la arista en el punto en que difieren.
+				Node split = new Node(child.label.substring(0, common));
+				child.label = child.label.substring(common);
+				split.children.put(child.label.charAt(0), child);
+				split.updateBest();
+				node.children.put(split.label.charAt(0), split);
+				child = split;
+			}
+			add(child, key.substring(common), display, weight);
+		}
+		node.updateBest();
+	}
+
+	private boolean update(Node node, String key, long delta, boolean remove) {
+		// Devuelve si la clave existía.
+		if (key.isEmpty()) {
+			if (!node.isTerminal()) {
+				return false;
+			}
+			node.weight += delta;
+			if (remove) {
+				node.count--;
+			}
+			node.updateBest();
+			return true;
+		}
+
+		Node child = node.children.get(key.charAt(0));
+		if (child == null || !key.startsWith(child.label)) {
+			return false;
+		}
+		boolean found = update(child, key.substring(child.label.length()), delta, remove);
+		if (found && remove) {
+			compact(node, child);
+		}
+		node.updateBest();
+		return found;
+	}
+
+	private void compact(Node parent, Node child) {
+		// Se eliminan los nodos vacíos y se fusionan los que sólo tienen un
+		// hijo para mantener el árbol compacto.
+		if (child.isTerminal()) {
+			return;
+		}
+		if (child.children.isEmpty()) {
+			parent.children.remove(child.label.charAt(0));
+		} else if (child.children.size() == 1) {
+			Node only = child.children.values().iterator().next();
+			only.label = child.label + only.label;
+			parent.children.put(only.label.charAt(0), only);
+		}
+	}
+
+	private Node find(String prefix) {
+		Node node = root;
+		String rest = prefix;
+		while (!rest.isEmpty()) {
+			Node child = node.children.get(rest.charAt(0));
+			if (child == null) {
+				return null;
+			}
+			if (rest.startsWith(child.label)) {
+				rest = rest.substring(child.label.length());
+				node = child;
+			} else if (child.label.startsWith(rest)) {
+				// El prefijo termina a mitad de la arista.
+				return child;
+			} else {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	private int commonPrefix(String a, String b) {
+		int i = 0;
+		while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,168 @@
+package umu.tds.chord.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Índice invertido de n-gramas sobre un campo de texto de las canciones. Cada
+ * n-grama del texto indexado apunta al conjunto de canciones que lo contienen,
+ * lo que permite reducir una búsqueda por subcadena a la intersección de las
+ * listas de los n-gramas de la consulta.
+ *
+ * El índice sólo proporciona candidatos. Quien lo utilice debe realizar una
+ * verificación final de la subcadena sobre los candidatos obtenidos.
+ *
+ * Los textos se indexan rodeados de un espacio en cada extremo, de modo que
+ * también se registran los n-gramas de inicio y fin de palabra. Éstos permiten
+ * medir la similitud de consultas cortas o con errores tipográficos. Véase
+ * {@link NGramIndex#overlap(String)}.
+ */
+final class NGramIndex {
+
+	private static final String pad = " ";
+
+	private final int n;
+	private final Map<String, Set<Song>> postings;
+
+	/**
+	 * Crea un índice vacío.
+	 *
+	 * @param n Longitud de los n-gramas indexados. Debe ser mayor que 0.
+	 */
+	NGramIndex(int n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Invalid n-gram size: " + n);
+		}
+
+		this.n = n;
+		this.postings = new HashMap<>();
+	}
+
+	/**
+	 * Indexa la canción bajo todos los n-gramas del texto dado.
+	 *
+	 * @param song Canción que se desea indexar.
+	 * @param text Texto ya normalizado asociado a la canción.
+	 */
+	void add(Song song, String text) {
+		grams(padded(text)).forEach(g -> postings.computeIfAbsent(g, k -> new HashSet<>()).add(song));
+	}
+
+	/**
+	 * Elimina la canción de todos los n-gramas del texto dado.
+	 *
+	 * @param song Canción que se desea quitar del índice.
+	 * @param text Texto normalizado con el que se indexó la canción.
+	 */
+	void remove(Song song, String text) {
+		grams(padded(text)).forEach(g -> {
+			Set<Song> posting = postings.get(g);
+			if (posting == null) {
+				return;
+			}
+			posting.remove(song);
+			// No se mantienen listas vacías.
+			if (posting.isEmpty()) {
+				postings.remove(g);
+			}
+		});
+	}
+
+	/**
+	 * Vacía el índice.
+	 */
+	void clear() {
+		postings.clear();
+	}
+
+	/**
+	 * Obtiene las canciones candidatas a contener la consulta dada.
+	 *
+	 * @param query Consulta ya normalizada.
+	 *
+	 * @return Un opcional vacío si la consulta es más corta que los n-gramas del
+	 *         índice y, por tanto, el índice no puede acotar la búsqueda. En otro
+	 *         caso un opcional con el conjunto de candidatas, que puede contener
+	 *         falsos positivos pero nunca omite una canción que contenga la
+	 *         consulta.
+	 */
+	Optional<Set<Song>> candidates(String query) {
+		Set<String> grams = grams(query);
+		if (grams.isEmpty()) {
+			return Optional.empty();
+		}
+
+		// Listas de los n-gramas de la consulta. Si alguno no aparece no hay
+		// candidatas.
+		List<Set<Song>> lists = new ArrayList<>(grams.size());
+		for (String g : grams) {
+			Set<Song> posting = postings.get(g);
+			if (posting == null) {
+				return Optional.of(Collections.emptySet());
+			}
+			lists.add(posting);
+		}
+
+		// Intersección empezando por la lista más pequeña.
+		lists.sort(Comparator.comparingInt(Set::size));
+		Set<Song> smallest = lists.get(0);
+		List<Set<Song>> rest = lists.subList(1, lists.size());
+
+		Set<Song> result = new HashSet<>();
+		for (Song s : smallest) {
+			if (rest.stream().allMatch(l -> l.contains(s))) {
+				result.add(s);
+			}
+		}
+		return Optional.of(result);
+	}
+
+	/**
+	 * Cuenta, para cada canción indexada, cuántos n-gramas distintos comparte con
+	 * la consulta. Sólo se recorren las listas de los n-gramas de la consulta, por
+	 * lo que el coste no depende del tamaño total del índice.
+	 *
+	 * @param query Consulta ya normalizada. Se rodea de espacios igual que los
+	 *              textos indexados.
+	 *
+	 * @return Mapa de canciones con al menos un n-grama en común a la cantidad de
+	 *         n-gramas compartidos.
+	 */
+	Map<Song, Integer> overlap(String query) {
+		Map<Song, Integer> shared = new HashMap<>();
+		grams(padded(query)).forEach(g -> postings.getOrDefault(g, Collections.emptySet())
+				.forEach(s -> shared.merge(s, 1, Integer::sum)));
+		return shared;
+	}
+
+	/**
+	 * Obtiene la cantidad de n-gramas distintos que se consultan en
+	 * {@link NGramIndex#overlap(String)} para la consulta dada.
+	 *
+	 * @param query Consulta ya normalizada.
+	 *
+	 * @return Número de n-gramas de la consulta.
+	 */
+	int gramCount(String query) {
+		return grams(padded(query)).size();
+	}
+
+	private String padded(String text) {
+		return pad + text + pad;
+	}
+
+	private Set<String> grams(String text) {
+		Set<String> grams = new HashSet<>();
+		for (int i = 0; i + n <= text.length(); i++) {
+			grams.add(text.substring(i, i + n));
+		}
+		return grams;
+	}
+}
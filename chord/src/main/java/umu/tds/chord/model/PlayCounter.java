@@ -0,0 +1,311 @@
+package umu.tds.chord.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import umu.tds.chord.dao.DAOFactory;
+
+/**
+ * Agregador de reproducciones de canciones. Las reproducciones se cuentan en
+ * memoria en la propia canción y se escriben en persistencia en bloque cada
+ * cierto tiempo, en lugar de modificar la canción en cada reproducción.
+ *
+ * Para no perder reproducciones si la aplicación termina entre dos escrituras,
+ * cada reproducción se anota en un diario local con el total de la canción.
+ * Al guardar totales y no incrementos el diario puede reproducirse varias veces
+ * sin contar reproducciones de más. Tras cada escritura en persistencia el
+ * diario se compacta a las canciones pendientes.
+ *
+ * Las anotaciones se agrupan. Las reproducciones que llegan mientras se
+ * sincroniza el diario con disco se escriben juntas, con una sola
+ * sincronización, en la siguiente.
+ *
+ * La anotación es asíncrona para no detener la reproducción con una escritura
+ * en disco. Si la aplicación se interrumpe de forma abrupta se pierden las
+ * reproducciones contadas desde la última sincronización del diario, es decir,
+ * como mucho las de un lote. Un cierre ordenado no pierde ninguna. Véase
+ * {@link RepositorySnapshot#write()}.
+ */
+final class PlayCounter {
+
+	private static final String threadName = "chord-plays";
+	private static final String separator = " ";
+
+	// Ruta del diario, null si no se lleva diario.
+	private final Path journal;
+	private final Predicate<Song> exists;
+	private final Set<Song.Internal> pending;
+	// Canciones con reproducciones aún no anotadas en el diario.
+	private final Set<Song.Internal> unsynced;
+	private final Object checkpointLock;
+	private final Object writeLock;
+	// Si se necesitan ambos, se bloquea antes que checkpointLock.
+	private final Object journalLock;
+	private final ScheduledExecutorService executor;
+	private boolean syncScheduled;
+	private FileChannel channel;
+
+	/**
+	 * Crea un agregador que anota las reproducciones en el diario dado y las
+	 * escribe en persistencia con el intervalo indicado.
+	 *
+	 * @param journal  Ruta del diario local. Si es {@code null} no se lleva
+	 *                 diario.
+	 * @param interval Intervalo en milisegundos entre escrituras en persistencia.
+	 * @param exists   Comprueba si una canción sigue registrada. No debe
+	 *                 invocarse mientras se anota una reproducción.
+	 */
+	PlayCounter(Path journal, long interval, Predicate<Song> exists) {
+		this.journal = journal;
+		this.exists = exists;
+		this.pending = new LinkedHashSet<>();
+		this.unsynced = new LinkedHashSet<>();
+		this.checkpointLock = new Object();
+		this.writeLock = new Object();
+		this.journalLock = new Object();
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, threadName);
+			t.setDaemon(true);
+			return t;
+		});
+		this.syncScheduled = false;
+		this.channel = null;
+
+		// El último punto de control lo realiza el cierre de los repositorios.
+		// Véase RepositorySnapshot#write().
+		executor.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Aplica a las canciones las reproducciones del diario que no llegaron a
+	 * escribirse en persistencia.
+	 *
+	 * @param songs Función que obtiene la canción con la id dada.
+	 *
+	 * @return Canciones cuyas reproducciones han cambiado.
+	 */
+	List<Song.Internal> replay(IntFunction<Optional<Song.Internal>> songs) {
+		if (journal == null) {
+			return List.of();
+		}
+
+		Map<Integer, Integer> totals = new HashMap<>();
+		try {
+			if (Files.exists(journal)) {
+				Files.readAllLines(journal, StandardCharsets.UTF_8).forEach(line -> {
+					String[] fields = line.split(separator);
+					// Una línea incompleta sólo puede ser la última escrita.
+					if (fields.length != 2) {
+						return;
+					}
+					try {
+						totals.merge(Integer.valueOf(fields[0]), Integer.valueOf(fields[1]), Math::max);
+					} catch (NumberFormatException e) {
+					}
+				});
+			}
+		} catch (IOException e) {
+			return List.of();
+		}
+
+		List<Song.Internal> changed = new ArrayList<>();
+		totals.forEach((id, total) -> songs.apply(id).ifPresent(s -> {
+			int missing = total - s.getReproducciones();
+			if (missing > 0) {
+				s.addReproducciones(missing);
+				changed.add(s);
+			}
+		}));
+		synchronized (checkpointLock) {
+			pending.addAll(changed);
+		}
+		// Se reescribe el diario para descartar una posible línea incompleta
+		// antes de añadir nuevas reproducciones.
+		compact();
+		return changed;
+	}
+
+	/**
+	 * Anota una reproducción de la canción, que ya debe haberse contado en ella.
+	 * No espera a que la anotación llegue a disco.
+	 *
+	 * @param s Canción reproducida.
+	 */
+	void record(Song.Internal s) {
+		synchronized (checkpointLock) {
+			pending.add(s);
+			if (journal == null) {
+				return;
+			}
+			// Si ya hay una sincronización programada la reproducción se anota
+			// con ella.
+			unsynced.add(s);
+			if (!syncScheduled) {
+				syncScheduled = true;
+				executor.execute(this::sync);
+			}
+		}
+	}
+
+	/**
+	 * Descarta las reproducciones pendientes de una canción eliminada.
+	 *
+	 * @param s Canción eliminada.
+	 */
+	void forget(Song.Internal s) {
+		synchronized (checkpointLock) {
+			pending.remove(s);
+		}
+	}
+
+	/**
+	 * Descarta las reproducciones pendientes de todas las canciones.
+	 */
+	void clear() {
+		synchronized (checkpointLock) {
+			pending.clear();
+		}
+		compact();
+	}
+
+	/**
+	 * Escribe en persistencia en un solo bloque las reproducciones de las
+	 * canciones pendientes y compacta el diario.
+	 *
+	 * @return {@code true} si se escribieron todas las canciones pendientes.
+	 */
+	boolean checkpoint() {
+		// Los puntos de control no se solapan. Así, al terminar uno, se han
+		// escrito todas las reproducciones anotadas antes de invocarlo.
+		synchronized (writeLock) {
+			List<Song.Internal> batch;
+			synchronized (checkpointLock) {
+				batch = new ArrayList<>(pending);
+				pending.clear();
+			}
+			if (batch.isEmpty()) {
+				return true;
+			}
+
+			// La escritura se realiza fuera del bloqueo para no detener las
+			// reproducciones.
+			List<Song.Internal> written;
+			try {
+				written = DAOFactory.getInstance().getSongDAO().modifyAll(batch);
+			} catch (RuntimeException e) {
+				written = List.of();
+			}
+
+			// Las fallidas se reintentarán en la siguiente escritura salvo que la
+			// canción ya no exista.
+			batch.removeAll(written);
+			batch.removeIf(s -> !exists.test(s));
+
+			synchronized (checkpointLock) {
+				pending.addAll(batch);
+			}
+			compact();
+			return batch.isEmpty();
+		}
+	}
+
+	private void sync() {
+		List<Song.Internal> batch;
+		synchronized (checkpointLock) {
+			batch = new ArrayList<>(unsynced);
+			unsynced.clear();
+			syncScheduled = false;
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		// Se anota el total actual de cada canción, que incluye todas sus
+		// reproducciones agrupadas en el lote.
+		synchronized (journalLock) {
+			try {
+				if (channel == null) {
+					Files.createDirectories(journal.toAbsolutePath().getParent());
+					channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.APPEND);
+				}
+				for (Song.Internal s : batch) {
+					channel.write(line(s));
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				// El diario es una protección adicional. Sin él las reproducciones
+				// se escribirán igualmente en el siguiente punto de control.
+			}
+		}
+	}
+
+	private void compact() {
+		if (journal == null) {
+			return;
+		}
+
+		// Se sustituye el diario de forma atómica por uno con los totales de
+		// las canciones aún pendientes. El diario se bloquea antes de copiar los
+		// totales, por lo que las anotaciones posteriores a la copia se escriben
+		// en el nuevo diario.
+		synchronized (journalLock) {
+			// Bajo el bloqueo de las reproducciones sólo se copian los totales.
+			// La escritura en disco no detiene las reproducciones.
+			List<ByteBuffer> lines;
+			synchronized (checkpointLock) {
+				// Las canciones pendientes se anotan al compactar.
+				unsynced.clear();
+				lines = pending.stream().map(this::line).toList();
+			}
+
+			try {
+				if (channel != null) {
+					channel.close();
+					channel = null;
+				}
+				if (lines.isEmpty()) {
+					Files.deleteIfExists(journal);
+					return;
+				}
+				Path compacted = journal.resolveSibling(journal.getFileName() + ".tmp");
+				try (FileChannel c = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					for (ByteBuffer line : lines) {
+						c.write(line);
+					}
+					c.force(false);
+				}
+				Files.move(compacted, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// Se conserva el diario anterior. Sus totales nunca superan a los
+				// de las canciones, por lo que reproducirlo sigue sin contar
+				// reproducciones de más, y el siguiente punto de control volverá
+				// a compactarlo.
+			}
+		}
+	}
+
+	private ByteBuffer line(Song.Internal s) {
+		String line = s.getId() + separator + s.getReproducciones() + System.lineSeparator();
+		return ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -4,12 +4,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import com.google.common.base.Objects;
 
 /**
  * Clase abstracta que representa una playlist. Expone sólo métodos de lectura
  * de datos.
+ *
+ * Como los usuarios, las playlists se modifican y se escriben en persistencia
+ * desde hilos distintos, por lo que se sincronizan sobre la propia playlist.
+ * Véase {@link User}.
  */
 public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 
@@ -86,8 +91,17 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 	 */
 	public static final class Internal extends Playlist implements Persistent {
 
+		/**
+		 * Campos lógicos de la playlist que pueden cambiar tras su registro. Véase
+		 * {@link Playlist.Internal#takeChanges()}.
+		 */
+		public enum Field {
+			DESCRIPTION, NAME, SONGS
+		}
+
 		private int id;
 		private boolean isRegistered;
+		private final ChangeTracker<Field> changes;
 
 		/**
 		 * Constructor de playlists.
@@ -100,6 +114,7 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 
 			this.id = 0;
 			this.isRegistered = false;
+			this.changes = new ChangeTracker<>(Field.class);
 		}
 
 		/**
@@ -107,7 +122,8 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 		 *
 		 * @param song Canción que se desea añadir.
 		 */
-		public boolean addSong(Song song) {
+		public synchronized boolean addSong(Song song) {
+			changes.mark(Field.SONGS);
 			return super.songs.add(song);
 		}
 
@@ -172,8 +188,11 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 		 *
 		 * @return Canción eliminada de la lista.
 		 */
-		public boolean removeSong(Song song) {
-			return super.songs.remove(song);
+		public synchronized boolean removeSong(Song song) {
+			boolean removed = super.songs.remove(song);
+			if (removed)
+				changes.mark(Field.SONGS);
+			return removed;
 		}
 
 		/**
@@ -183,8 +202,11 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 		 * 
 		 * @return Resultado de la operación.
 		 */
-		public boolean removeAll(Song song) {
-			return super.songs.removeIf(s -> s.equals(song));
+		public synchronized boolean removeAll(Song song) {
+			boolean removed = super.songs.removeIf(s -> s.equals(song));
+			if (removed)
+				changes.mark(Field.SONGS);
+			return removed;
 		}
 
 		/**
@@ -192,8 +214,9 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 		 * 
 		 * @param name Nuevo nombre de la playlist.
 		 */
-		public void setName(String name) {
+		public synchronized void setName(String name) {
 			super.name = name;
+			changes.mark(Field.NAME);
 		}
 
 		/**
@@ -201,13 +224,36 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 		 * 
 		 * @param desciption Nueva descripción de la playlist.
 		 */
-		public void setDescription(String desciption) {
+		public synchronized void setDescription(String desciption) {
 			super.description = desciption;
+			changes.mark(Field.DESCRIPTION);
+		}
+
+		/**
+		 * Obtiene los campos que han cambiado desde la última llamada a este método
+		 * y vacía el registro de cambios. Utilizado por los adaptadores DAO para
+		 * escribir sólo las propiedades afectadas.
+		 *
+		 * @return Conjunto de los campos cambiados.
+		 */
+		public Set<Field> takeChanges() {
+			return changes.take();
+		}
+
+		/**
+		 * Vuelve a marcar como cambiados los campos dados. Utilizado por los
+		 * adaptadores DAO cuando no se han podido escribir los cambios obtenidos
+		 * mediante {@link Playlist.Internal#takeChanges()}.
+		 *
+		 * @param fields Campos que se desean marcar como cambiados.
+		 */
+		public void restoreChanges(Set<Field> fields) {
+			changes.markAll(fields);
 		}
 	}
 
-	private String description;
-	private String name;
+	private volatile String description;
+	private volatile String name;
 	private final List<Song> songs;
 
 	/**
@@ -258,17 +304,17 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 	 *
 	 * @return Canción de la lista correspondiente al índice dado.
 	 */
-	public Song getSong(int index) {
+	public synchronized Song getSong(int index) {
 		return songs.get(index);
 	}
 
 	/**
 	 * Método para obtener una lista no modificable de canciones de la playlist.
 	 *
-	 * @return Lista no modificable de las canciones de la playlist.
+	 * @return Copia no modificable de la lista de canciones de la playlist.
 	 */
-	public List<Song> getSongs() {
-		return Collections.unmodifiableList(songs);
+	public synchronized List<Song> getSongs() {
+		return Collections.unmodifiableList(new ArrayList<>(songs));
 	}
 
 	/**
@@ -276,7 +322,7 @@ public abstract sealed class Playlist implements Mutable<Playlist.Internal> {
 	 * 
 	 * @return Estado de vacío de la playlist.
 	 */
-	public boolean isEmpty() {
+	public synchronized boolean isEmpty() {
 		return songs.isEmpty();
 	}
 
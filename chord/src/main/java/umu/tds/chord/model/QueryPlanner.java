@@ -0,0 +1,171 @@
+package umu.tds.chord.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import umu.tds.chord.utils.StringNormalizer;
+
+/**
+ * Planificador de consultas de canciones. Véase {@link SongQuery}. Para cada
+ * término estima cuántas canciones devolvería el índice que le corresponde y
+ * obtiene los candidatos del más selectivo. El resto de términos se comprueba
+ * después sobre esos candidatos.
+ *
+ * Trabaja directamente sobre los índices de {@link SongRepository}, por lo que
+ * debe utilizarse con el bloqueo del repositorio adquirido.
+ */
+final class QueryPlanner {
+
+	// Camino de acceso de un término: estimación de su tamaño y obtención de
+	// los candidatos.
+	private static final class Access {
+
+		private final long estimate;
+		private final Supplier<Collection<Song>> fetch;
+
+		private Access(long estimate, Supplier<Collection<Song>> fetch) {
+			this.estimate = estimate;
+			this.fetch = fetch;
+		}
+	}
+
+	private final Set<Song> songs;
+	private final Map<String, Set<Song>> songsByStyle;
+	private final NavigableMap<Integer, Set<Song>> songsByPlays;
+	private final Map<Integer, Song> songsById;
+	private final NGramIndex nameIndex;
+	private final NGramIndex authorIndex;
+
+	/**
+	 * Crea un planificador sobre los índices dados.
+	 *
+	 * @param songs        Catálogo completo.
+	 * @param songsByStyle Canciones por estilo.
+	 * @param songsByPlays Canciones por cantidad de reproducciones.
+	 * @param songsById    Canciones por id de persistencia.
+	 * @param nameIndex    Índice de n-gramas de los nombres.
+	 * @param authorIndex  Índice de n-gramas de los autores.
+	 */
+	QueryPlanner(Set<Song> songs, Map<String, Set<Song>> songsByStyle, NavigableMap<Integer, Set<Song>> songsByPlays,
+			Map<Integer, Song> songsById, NGramIndex nameIndex, NGramIndex authorIndex) {
+		this.songs = songs;
+		this.songsByStyle = songsByStyle;
+		this.songsByPlays = songsByPlays;
+		this.songsById = songsById;
+		this.nameIndex = nameIndex;
+		this.authorIndex = authorIndex;
+	}
+
+	/**
+	 * Obtiene los candidatos de la consulta a partir del índice más selectivo.
+	 *
+	 * @param query      Consulta que se desea resolver.
+	 * @param favourites Ids de las canciones favoritas del usuario.
+	 *
+	 * @return Canciones candidatas. Contiene todas las que cumplen la consulta y
+	 *         posiblemente otras que no. Si ningún término puede acotarse se
+	 *         devuelve el catálogo completo.
+	 */
+	Collection<Song> candidates(SongQuery query, BitSet favourites) {
+		Access best = new Access(songs.size(), () -> songs);
+		for (QueryTerm term : query.getTerms()) {
+			Optional<Access> access = access(term, favourites);
+			if (access.isPresent() && access.get().estimate < best.estimate) {
+				best = access.get();
+			}
+		}
+		return best.fetch.get();
+	}
+
+	/**
+	 * Compila la consulta en un predicado que comprueba todos sus términos.
+	 *
+	 * @param query      Consulta que se desea compilar.
+	 * @param favourites Ids de las canciones favoritas del usuario.
+	 *
+	 * @return Predicado que cumplen exactamente las canciones de la consulta.
+	 */
+	Predicate<Song> predicate(SongQuery query, BitSet favourites) {
+		// Claves de estilo calculadas una única vez. El mapa no se modifica
+		// después, por lo que el predicado puede evaluarse en paralelo.
+		Map<String, String> styleKeys = new HashMap<>();
+		songsByStyle.keySet().forEach(s -> styleKeys.put(s, StringNormalizer.normalize(s)));
+
+		List<QueryTerm> terms = query.getTerms();
+		return song -> {
+			String styleKey = styleKeys.get(song.getStyle());
+			for (QueryTerm term : terms) {
+				if (!term.test(song, styleKey, favourites)) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+	private Optional<Access> access(QueryTerm term, BitSet favourites) {
+		return switch (term.getField()) {
+		case TITLE -> textAccess(term.getValues(), List.of(nameIndex));
+		case AUTHOR -> textAccess(term.getValues(), List.of(authorIndex));
+		case TEXT -> textAccess(term.getValues(), List.of(nameIndex, authorIndex));
+		case STYLE -> {
+			List<Set<Song>> buckets = new ArrayList<>();
+			songsByStyle.forEach((style, bucket) -> {
+				if (term.getValues().contains(StringNormalizer.normalize(style))) {
+					buckets.add(bucket);
+				}
+			});
+			yield Optional.of(union(buckets));
+		}
+		case PLAYS -> {
+			if (term.getMin() > term.getMax()) {
+				yield Optional.of(new Access(0, Set::of));
+			}
+			yield Optional.of(union(songsByPlays.subMap(term.getMin(), true, term.getMax(), true).values()));
+		}
+		case FAVOURITE -> Optional.of(new Access(favourites.cardinality(), () -> {
+			List<Song> result = new ArrayList<>(favourites.cardinality());
+			favourites.stream().mapToObj(songsById::get).filter(s -> s != null).forEach(result::add);
+			return result;
+		}));
+		};
+	}
+
+	private Optional<Access> textAccess(List<String> values, List<NGramIndex> indexes) {
+		// Cada alternativa debe poder acotarse en todos los campos que busca.
+		List<Set<Song>> lists = new ArrayList<>();
+		for (String value : values) {
+			for (NGramIndex index : indexes) {
+				Optional<Set<Song>> candidates = index.candidates(value);
+				if (candidates.isEmpty()) {
+					return Optional.empty();
+				}
+				lists.add(candidates.get());
+			}
+		}
+		return Optional.of(union(lists));
+	}
+
+	private Access union(Collection<Set<Song>> lists) {
+		long estimate = lists.stream().mapToLong(Set::size).sum();
+		if (lists.size() == 1) {
+			Set<Song> only = lists.iterator().next();
+			return new Access(estimate, () -> only);
+		}
+		return new Access(estimate, () -> {
+			Set<Song> result = new HashSet<>();
+			lists.forEach(result::addAll);
+			return result;
+		});
+	}
+}
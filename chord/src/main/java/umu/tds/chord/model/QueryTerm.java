@@ -0,0 +1,112 @@
+package umu.tds.chord.model;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Término de una consulta de canciones. Véase {@link SongQuery}. Un término se
+ * cumple si la canción satisface alguna de sus alternativas.
+ */
+final class QueryTerm {
+
+	/**
+	 * Campo sobre el que actúa el término.
+	 */
+	enum Field {
+		/** Subcadena del nombre. */
+		TITLE,
+		/** Subcadena del autor. */
+		AUTHOR,
+		/** Subcadena del nombre o del autor. */
+		TEXT,
+		/** Estilo exacto. */
+		STYLE,
+		/** Rango de reproducciones. */
+		PLAYS,
+		/** Canción favorita del usuario. */
+		FAVOURITE
+	}
+
+	private final Field field;
+	private final List<String> values;
+	private final int min;
+	private final int max;
+
+	private QueryTerm(Field field, List<String> values, int min, int max) {
+		this.field = field;
+		this.values = values;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Crea un término de texto o de estilo.
+	 *
+	 * @param field  Campo del término. No puede ser {@link Field#PLAYS} ni
+	 *               {@link Field#FAVOURITE}.
+	 * @param values Alternativas ya normalizadas.
+	 *
+	 * @return Término creado.
+	 */
+	static QueryTerm text(Field field, List<String> values) {
+		return new QueryTerm(field, List.copyOf(values), 0, 0);
+	}
+
+	/**
+	 * Crea un término de rango de reproducciones.
+	 *
+	 * @param min Mínimo de reproducciones, incluido.
+	 * @param max Máximo de reproducciones, incluido.
+	 *
+	 * @return Término creado.
+	 */
+	static QueryTerm plays(int min, int max) {
+		return new QueryTerm(Field.PLAYS, List.of(), min, max);
+	}
+
+	/**
+	 * Crea un término que exige que la canción sea favorita.
+	 *
+	 * @return Término creado.
+	 */
+	static QueryTerm favourite() {
+		return new QueryTerm(Field.FAVOURITE, List.of(), 0, 0);
+	}
+
+	Field getField() {
+		return field;
+	}
+
+	List<String> getValues() {
+		return values;
+	}
+
+	int getMin() {
+		return min;
+	}
+
+	int getMax() {
+		return max;
+	}
+
+	/**
+	 * Comprueba si la canción cumple el término.
+	 *
+	 * @param song       Canción que se desea comprobar.
+	 * @param styleKey   Estilo normalizado de la canción.
+	 * @param favourites Ids de las canciones favoritas del usuario.
+	 *
+	 * @return {@code true} si la canción cumple el término.
+	 */
+	boolean test(Song song, String styleKey, BitSet favourites) {
+		Song.Internal s = song.asMut();
+		return switch (field) {
+		case TITLE -> values.stream().anyMatch(v -> s.getNameKey().contains(v));
+		case AUTHOR -> values.stream().anyMatch(v -> s.getAuthorKey().contains(v));
+		case TEXT -> values.stream().anyMatch(v -> s.getNameKey().contains(v) || s.getAuthorKey().contains(v));
+		case STYLE -> values.contains(styleKey);
+		case PLAYS -> s.getReproducciones() >= min && s.getReproducciones() <= max;
+		case FAVOURITE -> s.isRegistered() && favourites.get(s.getId());
+		};
+	}
+}
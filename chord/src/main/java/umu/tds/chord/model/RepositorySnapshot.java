@@ -0,0 +1,500 @@
+package umu.tds.chord.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.model.discount.Discount;
+import umu.tds.chord.model.discount.DiscountFactory;
+
+/**
+ * Instantánea binaria local de los repositorios. Al cerrar la aplicación se
+ * escriben en un único fichero las canciones, las playlists y los usuarios,
+ * con sus ids y reproducciones. En el siguiente arranque el fichero se proyecta
+ * en memoria y se lee de forma secuencial, en lugar de recuperar los objetos de
+ * persistencia uno a uno mediante {@link DAO#recoverAll()}.
+ *
+ * La instantánea sólo es válida si su generación coincide con la marca de
+ * generación de la persistencia. Véase {@link DAOFactory#getGeneration()}. En
+ * cada arranque se establece una marca nueva, por lo que si la aplicación no
+ * termina correctamente, o si otra instancia escribe en persistencia, la
+ * instantánea deja de ser válida y los repositorios se recuperan de
+ * persistencia.
+ *
+ * La instantánea también ordena el cierre de los repositorios. Al terminar la
+ * aplicación se escriben los usuarios pendientes, después las reproducciones
+ * pendientes y, sólo si todo ha llegado a persistencia, la instantánea. Véase
+ * {@link RepositorySnapshot#write()}.
+ */
+final class RepositorySnapshot {
+
+	/**
+	 * Propiedad del sistema con la ruta de la instantánea. Una cadena vacía
+	 * desactiva las instantáneas.
+	 */
+	static final String SNAPSHOT_PROPERTY = "chord.snapshot";
+
+	private static final String snapshotDirectory = ".chord";
+	private static final String snapshotName = "repository.snapshot";
+	private static final String threadName = "chord-snapshot";
+	private static final int magic = 0x43484F52;
+	private static final int formatVersion = 1;
+	private static final long noGeneration = 0;
+
+	private static RepositorySnapshot instance = null;
+
+	private final Path path;
+	private final DAOFactory factory;
+	// Marca de generación establecida en este arranque.
+	private long generation;
+	// Objetos leídos de la instantánea hasta que los obtienen los repositorios.
+	private List<Song.Internal> songs;
+	private List<User.Internal> users;
+	private Supplier<Collection<Song>> songSource;
+	private BooleanSupplier songWriter;
+	private Supplier<Collection<User>> userSource;
+	private BooleanSupplier userWriter;
+
+	/**
+	 * Obtiene la instancia única de la instantánea. La primera vez que se invoca
+	 * se lee la instantánea, si es válida, se establece una nueva marca de
+	 * generación y se programa la secuencia de cierre de los repositorios.
+	 *
+	 * @return Instancia única de la instantánea.
+	 */
+	static synchronized RepositorySnapshot getInstance() {
+		if (instance == null) {
+			String configured = System.getProperty(SNAPSHOT_PROPERTY,
+					Path.of(System.getProperty("user.home"), snapshotDirectory, snapshotName).toString());
+			instance = new RepositorySnapshot(configured.isEmpty() ? null : Path.of(configured),
+					DAOFactory.getInstance());
+			// Un único cierre para que las escrituras sigan siempre el mismo
+			// orden.
+			Runtime.getRuntime().addShutdownHook(new Thread(instance::write, threadName));
+		}
+		return instance;
+	}
+
+	/**
+	 * Crea una instantánea sobre el fichero dado. Se lee la instantánea, si es
+	 * válida, y se establece una nueva marca de generación.
+	 *
+	 * @param path    Ruta de la instantánea. Si es {@code null} no se leen ni se
+	 *                escriben instantáneas.
+	 * @param factory Factoría de la familia DAO que mantiene la marca de
+	 *                generación y a cuyos objetos se incorporan los leídos.
+	 */
+	RepositorySnapshot(Path path, DAOFactory factory) {
+		this.path = path;
+		this.factory = factory;
+		this.generation = noGeneration;
+		this.songs = null;
+		this.users = null;
+
+		Optional<Long> marker = Optional.empty();
+		try {
+			if (path != null) {
+				marker = factory.getGeneration();
+			}
+			if (marker.isEmpty()) {
+				return;
+			}
+
+			read(marker.get());
+
+			// Cualquier escritura a partir de ahora invalida la instantánea leída
+			// hasta que se escriba una nueva al cerrar la aplicación.
+			long next = nextGeneration();
+			if (factory.setGeneration(next)) {
+				generation = next;
+			}
+		} catch (RuntimeException e) {
+		}
+
+		if (generation == noGeneration) {
+			// Sin una marca propia no se puede garantizar la validez de la
+			// instantánea leída.
+			songs = null;
+			users = null;
+		}
+	}
+
+	/**
+	 * Obtiene las canciones de la instantánea. Sólo se devuelven una vez.
+	 *
+	 * @return Canciones de la instantánea o un opcional vacío si no había una
+	 *         instantánea válida.
+	 */
+	synchronized Optional<List<Song.Internal>> takeSongs() {
+		Optional<List<Song.Internal>> taken = Optional.ofNullable(songs);
+		songs = null;
+		return taken;
+	}
+
+	/**
+	 * Obtiene los usuarios de la instantánea. Sus referencias se resuelven en el
+	 * primer acceso mediante los adaptadores de la familia, a la que ya se han
+	 * incorporado las canciones y playlists leídas. Sólo se devuelven una vez.
+	 *
+	 * @return Usuarios de la instantánea o un opcional vacío si no había una
+	 *         instantánea válida.
+	 */
+	synchronized Optional<List<User.Internal>> takeUsers() {
+		Optional<List<User.Internal>> taken = Optional.ofNullable(users);
+		users = null;
+		return taken;
+	}
+
+	/**
+	 * Establece el origen de las canciones que se escribirán en la instantánea.
+	 *
+	 * @param source Función que obtiene una copia de las canciones.
+	 * @param writer Función que escribe en persistencia los cambios pendientes de
+	 *               las canciones. Indica si tuvo éxito.
+	 */
+	synchronized void setSongSource(Supplier<Collection<Song>> source, BooleanSupplier writer) {
+		songSource = source;
+		songWriter = writer;
+	}
+
+	/**
+	 * Establece el origen de los usuarios que se escribirán en la instantánea.
+	 *
+	 * @param source Función que obtiene una copia de los usuarios.
+	 * @param writer Función que escribe en persistencia los cambios pendientes de
+	 *               los usuarios. Indica si tuvo éxito.
+	 */
+	synchronized void setUserSource(Supplier<Collection<User>> source, BooleanSupplier writer) {
+		userSource = source;
+		userWriter = writer;
+	}
+
+	/**
+	 * Escribe en persistencia los usuarios pendientes y después las
+	 * reproducciones pendientes. Si ambas escrituras tienen éxito escribe la
+	 * instantánea de los repositorios y la valida con una nueva marca de
+	 * generación. Se invoca al terminar la aplicación.
+	 *
+	 * @return {@code true} si se ha escrito una instantánea válida.
+	 */
+	boolean write() {
+		Supplier<Collection<Song>> songSource;
+		BooleanSupplier songWriter;
+		Supplier<Collection<User>> userSource;
+		BooleanSupplier userWriter;
+		synchronized (this) {
+			songSource = this.songSource;
+			songWriter = this.songWriter;
+			userSource = this.userSource;
+			userWriter = this.userWriter;
+		}
+
+		try {
+			// Las reproducciones se escriben aunque falle la escritura de los
+			// usuarios. Todos los cambios deben haber llegado a persistencia
+			// antes de validar la instantánea.
+			boolean usersWritten = userWriter == null || userWriter.getAsBoolean();
+			boolean songsWritten = songWriter == null || songWriter.getAsBoolean();
+			if (!usersWritten || !songsWritten || songSource == null || userSource == null
+					|| generation == noGeneration) {
+				return false;
+			}
+
+			// Otra instancia ha escrito en persistencia desde este arranque.
+			if (!factory.getGeneration().equals(Optional.of(generation))) {
+				return false;
+			}
+
+			// La marca se cambia después de sustituir el fichero para que una
+			// escritura interrumpida nunca resulte válida.
+			long next = nextGeneration();
+			encode(next, songSource.get(), userSource.get());
+			if (!factory.setGeneration(next)) {
+				return false;
+			}
+			generation = next;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	private long nextGeneration() {
+		long next;
+		do {
+			next = ThreadLocalRandom.current().nextLong();
+		} while (next == noGeneration);
+		return next;
+	}
+
+	// ---------- Lectura. ----------
+
+	private void read(long marker) {
+		if (marker == noGeneration || !Files.isRegularFile(path)) {
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// Una única lectura secuencial del fichero proyectado.
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			decode(buffer, marker);
+		} catch (IOException | RuntimeException e) {
+			// Instantánea dañada. Se recuperarán los datos de persistencia.
+			songs = null;
+			users = null;
+		}
+	}
+
+	private void decode(ByteBuffer buffer, long marker) {
+		// Comprobación de la suma de control del contenido.
+		int end = buffer.limit() - Long.BYTES;
+		ByteBuffer body = buffer.slice(0, end);
+		CRC32 crc = new CRC32();
+		crc.update(body.duplicate());
+		if (crc.getValue() != buffer.getLong(end)) {
+			return;
+		}
+
+		if (body.getInt() != magic || body.getInt() != formatVersion || body.getLong() != marker) {
+			return;
+		}
+
+		// Canciones.
+		Map<Integer, Song.Internal> songsById = new HashMap<>();
+		List<Song.Internal> readSongs = new ArrayList<>();
+		for (int i = body.getInt(); i > 0; i--) {
+			int id = body.getInt();
+			Song.Internal s = new Song.Builder(getString(body)).author(getString(body)).path(getString(body))
+					.style(getString(body)).reproducciones(body.getInt()).build().orElseThrow().asMut();
+			s.registerId(id);
+			s.takeChanges();
+			// Las recuperaciones posteriores deben obtener la misma canción.
+			s = factory.getSongDAO().intern(s);
+			songsById.put(id, s);
+			readSongs.add(s);
+		}
+
+		// Playlists.
+		// Sólo las de los usuarios con referencias resueltas. Las demás se
+		// recuperarán al resolver sus usuarios.
+		for (int i = body.getInt(); i > 0; i--) {
+			int id = body.getInt();
+			Playlist.Internal p = new Playlist.Builder(getString(body)).description(getString(body))
+					.songs(getReferences(body, songsById)).build().orElseThrow().asMut();
+			p.registerId(id);
+			p.takeChanges();
+			factory.getPlaylistDAO().intern(p);
+		}
+
+		// Usuarios.
+		List<User.Internal> readUsers = new ArrayList<>();
+		for (int i = body.getInt(); i > 0; i--) {
+			int id = body.getInt();
+			String userName = getString(body);
+			String passwordHash = getString(body);
+			Date birthday = new Date(body.getLong());
+			boolean premium = body.get() != 0;
+			DiscountFactory.Type discountType = DiscountFactory.Type.valueOf(getString(body));
+			Discount discount = DiscountFactory.createDiscount(new Date(body.getLong()), new Date(body.getLong()),
+					discountType);
+			User.References references = new User.References(getIds(body), getIds(body), getIds(body));
+
+			// Como al recuperarlos de persistencia, las referencias se resuelven
+			// en el primer acceso.
+			User.Internal u = new User.Builder(userName).hashedPassword(passwordHash).birthday(birthday)
+					.premium(premium).discount(discount).build().orElseThrow().asMut();
+			u.registerId(id);
+			u.setReferenceLoader(references, loaded -> resolveReferences(references, loaded));
+			u.takeChanges();
+			readUsers.add(factory.getUserDAO().intern(u));
+		}
+
+		songs = readSongs;
+		users = readUsers;
+	}
+
+	private void resolveReferences(User.References references, User.Internal user) {
+		DAO<Song.Internal> songDAO = factory.getSongDAO();
+		DAO<Playlist.Internal> playlistDAO = factory.getPlaylistDAO();
+
+		// Las referencias eliminadas desde que se escribió la instantánea se
+		// ignoran. El usuario las marca como cambios al resolverse.
+
+		// Las canciones recientes se guardan de la más reciente a la más
+		// antigua, por lo que se añaden en orden inverso.
+		List<Song.Internal> recentSongs = references.getRecentSongIds().stream().map(songDAO::recover)
+				.flatMap(Optional::stream).toList();
+		for (int i = recentSongs.size() - 1; i >= 0; i--) {
+			user.addRecentSong(recentSongs.get(i));
+		}
+		references.getPlaylistIds().stream().map(playlistDAO::recover).flatMap(Optional::stream)
+				.forEach(user::addPlaylist);
+		references.getFavouriteSongIds().stream().map(songDAO::recover).flatMap(Optional::stream)
+				.forEach(user::addFavouriteSong);
+	}
+
+	private List<Integer> getIds(ByteBuffer buffer) {
+		List<Integer> ids = new ArrayList<>();
+		for (int i = buffer.getInt(); i > 0; i--) {
+			ids.add(buffer.getInt());
+		}
+		return ids;
+	}
+
+	private <T> List<T> getReferences(ByteBuffer buffer, Map<Integer, ? extends T> objects) {
+		List<T> references = new ArrayList<>();
+		for (int i = buffer.getInt(); i > 0; i--) {
+			T t = objects.get(buffer.getInt());
+			// Ignorar referencias a objetos eliminados.
+			if (t != null) {
+				references.add(t);
+			}
+		}
+		return references;
+	}
+
+	private String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// ---------- Escritura. ----------
+
+	private void encode(long next, Collection<Song> songs, Collection<User> users) throws IOException {
+		// Las playlists pertenecen a los usuarios. Los usuarios cuyas referencias
+		// aún no se han resuelto se escriben con sus ids persistentes, sin
+		// resolverlas, y sus playlists no forman parte de la instantánea.
+		Map<Integer, Playlist.Internal> playlists = new LinkedHashMap<>();
+		Map<User, User.References> references = new LinkedHashMap<>();
+		for (User u : users) {
+			Optional<User.References> unresolved = u.asMut().getUnresolvedReferences();
+			if (unresolved.isPresent()) {
+				references.put(u, unresolved.get());
+				continue;
+			}
+			List<Playlist> userPlaylists = u.getPlaylists();
+			for (Playlist p : userPlaylists) {
+				playlists.putIfAbsent(registeredId(p.asMut()), p.asMut());
+			}
+			references.put(u, new User.References(registeredIds(userPlaylists), registeredIds(u.getRecentSongs()),
+					registeredIds(new ArrayList<>(u.getFavouriteSongs()))));
+		}
+
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		Path written = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel)), new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+
+			out.writeInt(magic);
+			out.writeInt(formatVersion);
+			out.writeLong(next);
+
+			out.writeInt(songs.size());
+			for (Song s : songs) {
+				putId(out, s.asMut());
+				putString(out, s.getName());
+				putString(out, s.getAuthor());
+				putString(out, s.getPath());
+				putString(out, s.getStyle());
+				out.writeInt(s.getReproducciones());
+			}
+
+			out.writeInt(playlists.size());
+			for (Playlist.Internal p : playlists.values()) {
+				putId(out, p);
+				putString(out, p.getName());
+				putString(out, p.getDescription());
+				putReferences(out, p.getSongs());
+			}
+
+			out.writeInt(references.size());
+			for (User u : references.keySet()) {
+				putId(out, u.asMut());
+				putString(out, u.getUserName());
+				putString(out, u.asMut().getHashedPassword());
+				out.writeLong(u.getBirthday().getTime());
+				out.writeBoolean(u.isPremium());
+				putString(out, u.getDiscount().getType().name());
+				out.writeLong(u.getDiscount().getStart().getTime());
+				out.writeLong(u.getDiscount().getEnd().getTime());
+				User.References ids = references.get(u);
+				putIds(out, ids.getPlaylistIds());
+				putIds(out, ids.getRecentSongIds());
+				putIds(out, ids.getFavouriteSongIds());
+			}
+
+			// La suma de control no forma parte del contenido comprobado.
+			out.flush();
+			long checksum = checked.getChecksum().getValue();
+			channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, checksum));
+			channel.force(true);
+		}
+		Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private int registeredId(Persistent p) throws IOException {
+		// Un objeto sin registrar no puede recuperarse de persistencia, por lo
+		// que la instantánea no sería equivalente.
+		if (!p.isRegistered()) {
+			throw new IOException("Unregistered object on repository snapshot.");
+		}
+		return p.getId();
+	}
+
+	private List<Integer> registeredIds(List<? extends Mutable<? extends Persistent>> references) throws IOException {
+		List<Integer> ids = new ArrayList<>(references.size());
+		for (Mutable<? extends Persistent> m : references) {
+			ids.add(registeredId(m.asMut()));
+		}
+		return ids;
+	}
+
+	private void putId(DataOutputStream out, Persistent p) throws IOException {
+		out.writeInt(registeredId(p));
+	}
+
+	private void putIds(DataOutputStream out, List<Integer> ids) throws IOException {
+		out.writeInt(ids.size());
+		for (int id : ids) {
+			out.writeInt(id);
+		}
+	}
+
+	private void putReferences(DataOutputStream out, List<? extends Mutable<? extends Persistent>> references)
+			throws IOException {
+		putIds(out, registeredIds(references));
+	}
+
+	private void putString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
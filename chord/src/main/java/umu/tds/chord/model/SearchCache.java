@@ -0,0 +1,127 @@
+package umu.tds.chord.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Caché acotada de resultados de búsqueda con política LRU. Cada resultado se
+ * guarda, con su recuento, junto al predicado de la búsqueda que lo produjo, lo que permite
+ * invalidar únicamente las entradas afectadas por la inserción o eliminación
+ * de una canción.
+ */
+final class SearchCache {
+
+	/**
+	 * Propiedad del sistema con la capacidad máxima de la caché en entradas.
+	 */
+	static final String CAPACITY_PROPERTY = "chord.search.cache";
+
+	private static final int defaultCapacity = 64;
+
+	private static final class Entry {
+
+		private final SearchResult result;
+		private final Predicate<Song> matcher;
+
+		private Entry(SearchResult result, Predicate<Song> matcher) {
+			this.result = result;
+			this.matcher = matcher;
+		}
+	}
+
+	private final Map<List<String>, Entry> entries;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Crea una caché vacía con la capacidad indicada en
+	 * {@link SearchCache#CAPACITY_PROPERTY} o la capacidad por defecto.
+	 */
+	SearchCache() {
+		int capacity = Math.max(0, Integer.getInteger(CAPACITY_PROPERTY, defaultCapacity));
+		// Orden de acceso para descartar la entrada usada menos recientemente.
+		entries = new LinkedHashMap<>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<String>, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * Obtiene el resultado guardado para la búsqueda dada.
+	 *
+	 * @param name   Filtro de nombre normalizado.
+	 * @param author Filtro de autor normalizado.
+	 * @param sty    Filtro de estilo.
+	 *
+	 * @return Un opcional con el resultado si estaba en la caché o vacío en otro
+	 *         caso.
+	 */
+	Optional<SearchResult> get(String name, String author, String sty) {
+		Entry entry = entries.get(List.of(name, author, sty));
+		if (entry == null) {
+			misses++;
+			return Optional.empty();
+		}
+		hits++;
+		return Optional.of(entry.result);
+	}
+
+	/**
+	 * Guarda el resultado de una búsqueda.
+	 *
+	 * @param name    Filtro de nombre normalizado.
+	 * @param author  Filtro de autor normalizado.
+	 * @param sty     Filtro de estilo.
+	 * @param result  Resultado de la búsqueda.
+	 * @param matcher Predicado que cumplen exactamente las canciones del
+	 *                resultado.
+	 */
+	void put(String name, String author, String sty, SearchResult result, Predicate<Song> matcher) {
+		entries.put(List.of(name, author, sty), new Entry(result, matcher));
+	}
+
+	/**
+	 * Descarta los resultados en los que aparece o debería aparecer la canción
+	 * dada. El resto de resultados sigue siendo válido.
+	 *
+	 * @param song Canción añadida o eliminada del catálogo.
+	 */
+	void invalidate(Song song) {
+		entries.values().removeIf(e -> e.matcher.test(song));
+	}
+
+	/**
+	 * Vacía la caché. Los contadores se mantienen.
+	 */
+	void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Obtiene la cantidad de consultas resueltas desde la caché.
+	 *
+	 * @return Número de aciertos.
+	 */
+	long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Obtiene la cantidad de consultas que no estaban en la caché.
+	 *
+	 * @return Número de fallos.
+	 */
+	long getMisses() {
+		return misses;
+	}
+}
@@ -0,0 +1,156 @@
+package umu.tds.chord.model;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recuento de canciones por estilo, por autor y favoritas de un conjunto de
+ * canciones, ya sea el catálogo completo o el resultado de una búsqueda.
+ * Permite mostrar en los filtros de búsqueda cuántas canciones quedarían al
+ * aplicarlos.
+ *
+ * Las favoritas cambian con más frecuencia que el conjunto contado, por lo que
+ * no se cuentan al crear el recuento sino al consultarlo, sobre las ids de las
+ * canciones contadas. Véase {@link SearchFacets#getFavouriteCount(BitSet)}.
+ */
+public final class SearchFacets {
+
+	/**
+	 * Acumulador de un recuento. Permite contar las canciones a medida que se
+	 * encuentran, en la misma pasada que las filtra, y combinar los recuentos
+	 * parciales de un recorrido en paralelo.
+	 */
+	static final class Counter {
+
+		private final Map<String, Integer> styleCounts;
+		private final Map<String, Integer> authorCounts;
+		private final BitSet songIds;
+		private int total;
+
+		/**
+		 * Crea un acumulador vacío.
+		 */
+		Counter() {
+			styleCounts = new HashMap<>();
+			authorCounts = new HashMap<>();
+			songIds = new BitSet();
+			total = 0;
+		}
+
+		/**
+		 * Cuenta una canción.
+		 *
+		 * @param s Canción que se desea contar.
+		 */
+		void add(Song s) {
+			styleCounts.merge(s.getStyle(), 1, Integer::sum);
+			authorCounts.merge(s.getAuthor(), 1, Integer::sum);
+			if (s.asMut().isRegistered()) {
+				songIds.set(s.asMut().getId());
+			}
+			total++;
+		}
+
+		/**
+		 * Añade a este acumulador las canciones contadas por otro.
+		 *
+		 * @param other Acumulador que se desea combinar con este.
+		 *
+		 * @return Este acumulador.
+		 */
+		Counter merge(Counter other) {
+			other.styleCounts.forEach((style, count) -> styleCounts.merge(style, count, Integer::sum));
+			other.authorCounts.forEach((author, count) -> authorCounts.merge(author, count, Integer::sum));
+			songIds.or(other.songIds);
+			total += other.total;
+			return this;
+		}
+
+		/**
+		 * Obtiene el recuento de las canciones contadas.
+		 *
+		 * @return Recuento de las canciones.
+		 */
+		SearchFacets build() {
+			return new SearchFacets(styleCounts, authorCounts, songIds, total);
+		}
+	}
+
+	private final Map<String, Integer> styleCounts;
+	private final Map<String, Integer> authorCounts;
+	private final BitSet songIds;
+	private final int total;
+
+	/**
+	 * Crea un recuento a partir de los datos ya calculados.
+	 *
+	 * @param styleCounts  Canciones por estilo.
+	 * @param authorCounts Canciones por autor.
+	 * @param songIds      Ids de las canciones contadas. No debe modificarse
+	 *                     después.
+	 * @param total        Total de canciones.
+	 */
+	SearchFacets(Map<String, Integer> styleCounts, Map<String, Integer> authorCounts, BitSet songIds, int total) {
+		this.styleCounts = styleCounts;
+		this.authorCounts = authorCounts;
+		this.songIds = songIds;
+		this.total = total;
+	}
+
+	/**
+	 * Obtiene la cantidad de canciones de un estilo.
+	 *
+	 * @param style Estilo que se desea consultar. El comodín
+	 *              {@link SongRepository#ALL_STYLES} devuelve el total.
+	 *
+	 * @return Número de canciones del estilo.
+	 */
+	public int getStyleCount(String style) {
+		if (SongRepository.ALL_STYLES.equals(style)) {
+			return total;
+		}
+		return styleCounts.getOrDefault(style, 0);
+	}
+
+	/**
+	 * Obtiene el recuento de canciones por estilo.
+	 *
+	 * @return Mapa no modificable de estilos a número de canciones.
+	 */
+	public Map<String, Integer> getStyleCounts() {
+		return Collections.unmodifiableMap(styleCounts);
+	}
+
+	/**
+	 * Obtiene el recuento de canciones por autor.
+	 *
+	 * @return Mapa no modificable de autores a número de canciones.
+	 */
+	public Map<String, Integer> getAuthorCounts() {
+		return Collections.unmodifiableMap(authorCounts);
+	}
+
+	/**
+	 * Obtiene la cantidad de canciones contadas que son favoritas del usuario.
+	 * Se calcula con las favoritas dadas, por lo que refleja los cambios de
+	 * favoritas posteriores a la creación del recuento.
+	 *
+	 * @param favourites Ids de las canciones favoritas del usuario.
+	 *
+	 * @return Número de canciones favoritas.
+	 */
+	public int getFavouriteCount(BitSet favourites) {
+		return (int) favourites.stream().filter(songIds::get).count();
+	}
+
+	/**
+	 * Obtiene el total de canciones contadas.
+	 *
+	 * @return Número total de canciones.
+	 */
+	public int getTotal() {
+		return total;
+	}
+}
@@ -0,0 +1,80 @@
+package umu.tds.chord.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Página de resultados de una búsqueda paginada de canciones. Véase
+ * {@link SongRepository#getSearchPage}.
+ */
+public final class SearchPage {
+
+	private final List<Song> songs;
+	private final boolean hasMore;
+	private final Optional<SearchFacets> facets;
+
+	/**
+	 * Crea una página de resultados sin recuento.
+	 *
+	 * @param songs   Canciones de la página en el orden estable de búsqueda.
+	 * @param hasMore Indica si existen más resultados tras esta página.
+	 */
+	SearchPage(List<Song> songs, boolean hasMore) {
+		this(songs, hasMore, Optional.empty());
+	}
+
+	/**
+	 * Crea una página de resultados.
+	 *
+	 * @param songs   Canciones de la página en el orden estable de búsqueda.
+	 * @param hasMore Indica si existen más resultados tras esta página.
+	 * @param facets  Recuento del resultado completo de la búsqueda, si se ha
+	 *                calculado.
+	 */
+	SearchPage(List<Song> songs, boolean hasMore, Optional<SearchFacets> facets) {
+		this.songs = songs;
+		this.hasMore = hasMore;
+		this.facets = facets;
+	}
+
+	/**
+	 * Obtiene las canciones de la página.
+	 *
+	 * @return Lista no modificable de canciones.
+	 */
+	public List<Song> getSongs() {
+		return Collections.unmodifiableList(songs);
+	}
+
+	/**
+	 * Obtiene el cursor de la página. Debe proporcionarse para obtener la página
+	 * siguiente.
+	 *
+	 * @return Última canción de la página o un opcional vacío si la página está
+	 *         vacía.
+	 */
+	public Optional<Song> getCursor() {
+		return songs.isEmpty() ? Optional.empty() : Optional.of(songs.get(songs.size() - 1));
+	}
+
+	/**
+	 * Indica si existen más resultados tras esta página.
+	 *
+	 * @return {@code true} si se puede solicitar una página siguiente.
+	 */
+	public boolean hasMore() {
+		return hasMore;
+	}
+
+	/**
+	 * Obtiene el recuento por estilo, autor y favoritas del resultado completo de
+	 * la búsqueda, sin aplicar el filtro de favoritas. Sólo se calcula para la
+	 * primera página de las búsquedas cuyo resultado se obtiene completo.
+	 *
+	 * @return Un opcional con el recuento o vacío si no se ha calculado.
+	 */
+	public Optional<SearchFacets> getFacets() {
+		return facets;
+	}
+}
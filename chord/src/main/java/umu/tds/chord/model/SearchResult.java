@@ -0,0 +1,44 @@
+package umu.tds.chord.model;
+
+import java.util.List;
+
+/**
+ * Resultado completo de una búsqueda junto a su recuento. Ambos se obtienen en
+ * la misma pasada sobre los candidatos de la búsqueda. Véase
+ * {@link SearchFacets.Counter}.
+ */
+final class SearchResult {
+
+	private final List<Song> songs;
+	private final SearchFacets facets;
+
+	/**
+	 * Crea un resultado de búsqueda.
+	 *
+	 * @param songs  Lista no modificable de canciones en el orden estable de
+	 *               búsqueda.
+	 * @param facets Recuento de las canciones.
+	 */
+	SearchResult(List<Song> songs, SearchFacets facets) {
+		this.songs = songs;
+		this.facets = facets;
+	}
+
+	/**
+	 * Obtiene las canciones del resultado.
+	 *
+	 * @return Lista no modificable de canciones.
+	 */
+	List<Song> getSongs() {
+		return songs;
+	}
+
+	/**
+	 * Obtiene el recuento del resultado.
+	 *
+	 * @return Recuento de las canciones.
+	 */
+	SearchFacets getFacets() {
+		return facets;
+	}
+}
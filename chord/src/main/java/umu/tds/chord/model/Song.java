@@ -1,9 +1,13 @@
 package umu.tds.chord.model;
 
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.google.common.base.Objects;
 
+import umu.tds.chord.utils.StringNormalizer;
+
 /**
  * Clase que representa a las canciones dentro de la aplicación. Mantienen
  * almacenada la ruta al fichero con dicha canción para que pueda ser localizada
@@ -111,8 +115,21 @@ public abstract sealed class Song implements Mutable<Song.Internal> {
 	 */
 	public static final class Internal extends Song implements Persistent {
 
+		/**
+		 * Campos lógicos de la canción que pueden cambiar tras su registro. Véase
+		 * {@link Song.Internal#takeChanges()}.
+		 */
+		public enum Field {
+			REPRODUCCIONES
+		}
+
 		private int id;
 		private boolean isRegistered;
+		private final ChangeTracker<Field> changes;
+
+		// Claves de búsqueda normalizadas. Se calculan bajo demanda.
+		private String nameKey;
+		private String authorKey;
 
 		/**
 		 * Constructor de canciones inmutables.
@@ -124,6 +141,7 @@ public abstract sealed class Song implements Mutable<Song.Internal> {
 
 			this.id = 0;
 			this.isRegistered = false;
+			this.changes = new ChangeTracker<>(Field.class);
 		}
 
 		/**
@@ -155,11 +173,71 @@ public abstract sealed class Song implements Mutable<Song.Internal> {
 			this.isRegistered = true;
 		}
 
+		/**
+		 * Obtiene la clave de búsqueda del nombre de la canción. Véase
+		 * {@link StringNormalizer#normalize(String)}.
+		 *
+		 * @return Nombre normalizado de la canción.
+		 */
+		public String getNameKey() {
+			if (nameKey == null) {
+				nameKey = StringNormalizer.normalize(getName());
+			}
+			return nameKey;
+		}
+
+		/**
+		 * Obtiene la clave de búsqueda del autor de la canción. Véase
+		 * {@link StringNormalizer#normalize(String)}.
+		 *
+		 * @return Autor normalizado de la canción.
+		 */
+		public String getAuthorKey() {
+			if (authorKey == null) {
+				authorKey = StringNormalizer.normalize(getAuthor());
+			}
+			return authorKey;
+		}
+
 		/**
 		 * Incrementa en 1 la cantidad de reproducciones de la canción.
 		 */
 		public void addReproduccion() {
-			super.reproducciones += 1;
+			super.reproducciones.increment();
+			changes.mark(Field.REPRODUCCIONES);
+		}
+
+		/**
+		 * Incrementa la cantidad de reproducciones de la canción en la cantidad
+		 * dada. Utilizado para recuperar reproducciones no persistidas.
+		 *
+		 * @param n Reproducciones que se desean añadir.
+		 */
+		public void addReproducciones(int n) {
+			super.reproducciones.add(n);
+			changes.mark(Field.REPRODUCCIONES);
+		}
+
+		/**
+		 * Obtiene los campos que han cambiado desde la última llamada a este método
+		 * y vacía el registro de cambios. Utilizado por los adaptadores DAO para
+		 * escribir sólo las propiedades afectadas.
+		 *
+		 * @return Conjunto de los campos cambiados.
+		 */
+		public Set<Field> takeChanges() {
+			return changes.take();
+		}
+
+		/**
+		 * Vuelve a marcar como cambiados los campos dados. Utilizado por los
+		 * adaptadores DAO cuando no se han podido escribir los cambios obtenidos
+		 * mediante {@link Song.Internal#takeChanges()}.
+		 *
+		 * @param fields Campos que se desean marcar como cambiados.
+		 */
+		public void restoreChanges(Set<Field> fields) {
+			changes.markAll(fields);
 		}
 
 		@Override
@@ -177,7 +255,8 @@ public abstract sealed class Song implements Mutable<Song.Internal> {
 	private final String name;
 	private final String path;
 	private final String style;
-	private int reproducciones;
+	// Las reproducciones pueden incrementarse desde varios hilos a la vez.
+	private final LongAdder reproducciones;
 
 	/**
 	 * Constructor de canciones inmutables.
@@ -189,7 +268,8 @@ public abstract sealed class Song implements Mutable<Song.Internal> {
 		this.author = builder.author;
 		this.path = builder.path;
 		this.style = builder.style;
-		this.reproducciones = builder.reproducciones;
+		this.reproducciones = new LongAdder();
+		this.reproducciones.add(builder.reproducciones);
 	}
 
 	/**
@@ -270,6 +350,6 @@ public abstract sealed class Song implements Mutable<Song.Internal> {
 	 * @return Reproducciones de la canción.
 	 */
 	public int getReproducciones() {
-		return reproducciones;
+		return reproducciones.intValue();
 	}
 }
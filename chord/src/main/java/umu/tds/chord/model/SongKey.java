@@ -0,0 +1,62 @@
+package umu.tds.chord.model;
+
+import com.google.common.base.Objects;
+
+/**
+ * Clave de identidad de una canción. Está formada por los mismos campos que
+ * determinan la igualdad de {@link Song}, por lo que dos canciones iguales
+ * tienen la misma clave. Permite localizar la instancia registrada de una
+ * canción sin necesidad de construirla.
+ */
+final class SongKey {
+
+	private final String name;
+	private final String author;
+	private final String path;
+	private final String style;
+
+	/**
+	 * Crea la clave de una canción a partir de sus campos.
+	 *
+	 * @param name   Nombre de la canción.
+	 * @param author Autor de la canción.
+	 * @param path   Ruta al fichero de la canción.
+	 * @param style  Estilo de la canción.
+	 */
+	SongKey(String name, String author, String path, String style) {
+		this.name = name;
+		this.author = author;
+		this.path = path;
+		this.style = style;
+	}
+
+	/**
+	 * Obtiene la clave de la canción dada.
+	 *
+	 * @param song Canción de la que se desea la clave.
+	 *
+	 * @return Clave de la canción.
+	 */
+	static SongKey of(Song song) {
+		return new SongKey(song.getName(), song.getAuthor(), song.getPath(), song.getStyle());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SongKey)) {
+			return false;
+		}
+
+		SongKey key = (SongKey) obj;
+		return Objects.equal(name, key.name) && Objects.equal(author, key.author) && Objects.equal(path, key.path)
+				&& Objects.equal(style, key.style);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(name, author, path, style);
+	}
+}
@@ -0,0 +1,221 @@
+package umu.tds.chord.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import umu.tds.chord.utils.StringNormalizer;
+
+/**
+ * Consulta compilada de canciones. Se obtiene a partir de una expresión del
+ * lenguaje de consultas, formada por términos separados por espacios que deben
+ * cumplirse todos:
+ *
+ * <ul>
+ * <li>{@code texto}: el nombre o el autor contienen el texto.</li>
+ * <li>{@code titulo:texto}: el nombre contiene el texto. También
+ * {@code title:}.</li>
+ * <li>{@code autor:texto}: el autor contiene el texto. También
+ * {@code author:} e {@code interprete:}.</li>
+ * <li>{@code estilo:texto}: el estilo es el indicado. También
+ * {@code style:}.</li>
+ * <li>{@code plays>100}: rango de reproducciones. Se admiten los operadores
+ * {@code > >= < <= =}. También {@code reproducciones}.</li>
+ * <li>{@code fav}: la canción es favorita del usuario. También
+ * {@code favoritos}.</li>
+ * </ul>
+ *
+ * Los valores pueden entrecomillarse para incluir espacios y agruparse entre
+ * paréntesis separados por {@code |} para expresar alternativas, por ejemplo
+ * {@code autor:piaf estilo:(Tango|Folk) plays>100 fav}. Las comparaciones de
+ * texto no distinguen mayúsculas, acentos ni espacios repetidos.
+ *
+ * La consulta se resuelve con {@link SongRepository#getQuerySearch}, que
+ * elige el índice más selectivo de entre los términos y comprueba el resto
+ * sobre los candidatos obtenidos.
+ */
+public final class SongQuery {
+
+	private static final List<String> titleKeys = Arrays.asList("titulo", "title");
+	private static final List<String> authorKeys = Arrays.asList("autor", "author", "interprete");
+	private static final List<String> styleKeys = Arrays.asList("estilo", "style");
+	private static final List<String> playsKeys = Arrays.asList("plays", "reproducciones");
+	private static final List<String> favouriteKeys = Arrays.asList("fav", "favoritos");
+	private static final List<String> operators = Arrays.asList(">=", "<=", ">", "<", "=");
+	private static final char separator = ':';
+	private static final char quote = '"';
+	private static final char groupStart = '(';
+	private static final char groupEnd = ')';
+	private static final char alternative = '|';
+
+	private final List<QueryTerm> terms;
+
+	private SongQuery(List<QueryTerm> terms) {
+		this.terms = terms;
+	}
+
+	/**
+	 * Compila una expresión del lenguaje de consultas.
+	 *
+	 * @param expression Expresión que se desea compilar.
+	 *
+	 * @return Un opcional vacío si la expresión no es válida. Un opcional con la
+	 *         consulta compilada en otro caso. Una expresión vacía se corresponde
+	 *         con todas las canciones.
+	 */
+	public static Optional<SongQuery> parse(String expression) {
+		if (expression == null) {
+			return Optional.empty();
+		}
+
+		Optional<List<String>> tokens = tokenize(expression);
+		if (tokens.isEmpty()) {
+			return Optional.empty();
+		}
+
+		List<QueryTerm> terms = new ArrayList<>();
+		for (String token : tokens.get()) {
+			Optional<QueryTerm> term = parseTerm(token);
+			if (term.isEmpty()) {
+				return Optional.empty();
+			}
+			terms.add(term.get());
+		}
+		return Optional.of(new SongQuery(Collections.unmodifiableList(terms)));
+	}
+
+	/**
+	 * Obtiene los términos de la consulta.
+	 *
+	 * @return Lista no modificable de términos.
+	 */
+	List<QueryTerm> getTerms() {
+		return terms;
+	}
+
+	private static Optional<List<String>> tokenize(String expression) {
+		// Los espacios separan términos salvo entre comillas o paréntesis.
+		List<String> tokens = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		boolean quoted = false;
+		int depth = 0;
+		for (char c : expression.toCharArray()) {
+			if (c == quote) {
+				quoted = !quoted;
+			} else if (!quoted && c == groupStart) {
+				depth++;
+			} else if (!quoted && c == groupEnd) {
+				depth--;
+			}
+			if (depth < 0 || depth > 1) {
+				return Optional.empty();
+			}
+
+			if (!quoted && depth == 0 && Character.isWhitespace(c)) {
+				if (current.length() > 0) {
+					tokens.add(current.toString());
+					current.setLength(0);
+				}
+			} else {
+				current.append(c);
+			}
+		}
+		if (quoted || depth != 0) {
+			return Optional.empty();
+		}
+		if (current.length() > 0) {
+			tokens.add(current.toString());
+		}
+		return Optional.of(tokens);
+	}
+
+	private static Optional<QueryTerm> parseTerm(String token) {
+		String lower = token.toLowerCase(Locale.ROOT);
+		if (favouriteKeys.contains(lower)) {
+			return Optional.of(QueryTerm.favourite());
+		}
+
+		for (String key : playsKeys) {
+			String condition = lower.substring(Math.min(key.length(), lower.length()));
+			if (lower.startsWith(key) && operators.stream().anyMatch(condition::startsWith)) {
+				return parsePlays(condition);
+			}
+		}
+
+		int index = token.indexOf(separator);
+		if (index < 0 || token.indexOf(quote) >= 0 && token.indexOf(quote) < index) {
+			return parseValues(token).map(v -> QueryTerm.text(QueryTerm.Field.TEXT, v));
+		}
+
+		String key = lower.substring(0, index);
+		QueryTerm.Field field;
+		if (titleKeys.contains(key)) {
+			field = QueryTerm.Field.TITLE;
+		} else if (authorKeys.contains(key)) {
+			field = QueryTerm.Field.AUTHOR;
+		} else if (styleKeys.contains(key)) {
+			field = QueryTerm.Field.STYLE;
+		} else {
+			return Optional.empty();
+		}
+		return parseValues(token.substring(index + 1)).map(v -> QueryTerm.text(field, v));
+	}
+
+	private static Optional<QueryTerm> parsePlays(String condition) {
+		for (String op : operators) {
+			if (!condition.startsWith(op)) {
+				continue;
+			}
+			int value;
+			try {
+				value = Integer.parseInt(condition.substring(op.length()));
+			} catch (NumberFormatException e) {
+				return Optional.empty();
+			}
+			return switch (op) {
+			case ">=" -> Optional.of(QueryTerm.plays(value, Integer.MAX_VALUE));
+			case "<=" -> Optional.of(QueryTerm.plays(Integer.MIN_VALUE, value));
+			case ">" -> value == Integer.MAX_VALUE ? Optional.empty()
+					: Optional.of(QueryTerm.plays(value + 1, Integer.MAX_VALUE));
+			case "<" -> value == Integer.MIN_VALUE ? Optional.empty()
+					: Optional.of(QueryTerm.plays(Integer.MIN_VALUE, value - 1));
+			default -> Optional.of(QueryTerm.plays(value, value));
+			};
+		}
+		return Optional.empty();
+	}
+
+	private static Optional<List<String>> parseValues(String value) {
+		// Grupo de alternativas entre paréntesis.
+		boolean group = value.length() >= 2 && value.charAt(0) == groupStart
+				&& value.charAt(value.length() - 1) == groupEnd;
+		if (group) {
+			value = value.substring(1, value.length() - 1);
+		}
+
+		List<String> values = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		boolean quoted = false;
+		for (char c : value.toCharArray()) {
+			if (c == quote) {
+				quoted = !quoted;
+			} else if (c == alternative && group && !quoted) {
+				values.add(StringNormalizer.normalize(current.toString()));
+				current.setLength(0);
+			} else if (!quoted && (c == groupStart || c == groupEnd)) {
+				return Optional.empty();
+			} else {
+				current.append(c);
+			}
+		}
+		values.add(StringNormalizer.normalize(current.toString()));
+
+		if (values.stream().anyMatch(String::isEmpty)) {
+			return Optional.empty();
+		}
+		return Optional.of(values);
+	}
+}
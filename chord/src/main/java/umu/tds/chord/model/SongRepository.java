@@ -1,39 +1,165 @@
 package umu.tds.chord.model;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
 
+import umu.tds.chord.dao.DAO;
 import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.dao.DAOFactory.DAOImplementation;
+import umu.tds.chord.utils.StringNormalizer;
 
 /**
  * Repositorio de canciones. Utilizado para el registro y recuperación de
  * canciones. Dado que las canciones son inmutables no se ofrecen métodos de
  * actualización. Véase {@link Song}.
+ *
+ * Las búsquedas pueden realizarse desde hilos distintos al de la interfaz, por
+ * lo que los métodos que acceden a los índices internos están sincronizados. Si
+ * se interrumpe el hilo que realiza una búsqueda, ésta se abandona lanzando
+ * {@link CancellationException} y libera el repositorio.
  */
 public enum SongRepository {
 
 	INSTANCE;
 
 	public static final String ALL_STYLES = "Todos";
+
+	/**
+	 * Propiedad del sistema con la cantidad mínima de canciones a recorrer a
+	 * partir de la cual las búsquedas se reparten entre varios hilos.
+	 */
+	public static final String PARALLEL_THRESHOLD_PROPERTY = "chord.search.parallel";
+
+	/**
+	 * Propiedad del sistema con la ruta del diario local de reproducciones aún
+	 * no escritas en persistencia. Por defecto el diario se guarda en un
+	 * directorio propio de la familia de adaptadores activa, ya que las ids de
+	 * las canciones sólo son válidas en ella. Una cadena vacía desactiva el
+	 * diario.
+	 */
+	public static final String JOURNAL_PROPERTY = "chord.plays.journal";
+
+	/**
+	 * Propiedad del sistema con el intervalo en milisegundos entre escrituras en
+	 * persistencia de las reproducciones pendientes.
+	 */
+	public static final String CHECKPOINT_PROPERTY = "chord.plays.checkpoint";
+
 	private static final String emptyFilter = "";
+	private static final int ngramSize = 3;
+	private static final double fuzzyThreshold = 0.5;
+	private static final int defaultParallelThreshold = 50000;
+	private static final long defaultCheckpoint = 30000;
+	private static final String journalDirectory = ".chord";
+	private static final String journalName = "plays.journal";
+	private static final String noJournal = "";
+
+	// Orden estable de los resultados paginados. Es total y consistente con
+	// Song#equals, por lo que una canción sirve como cursor.
+	private final Comparator<Song> searchOrder = Comparator.comparing((Song s) -> s.asMut().getNameKey())
+			.thenComparing(s -> s.asMut().getAuthorKey()).thenComparing(Song::getName).thenComparing(Song::getAuthor)
+			.thenComparing(Song::getPath).thenComparing(Song::getStyle);
 
 	private final Set<Song> songs;
+	// Índice de identidad. Obtiene la instancia registrada de cada canción.
+	private final Map<SongKey, Song.Internal> songsByKey;
 	private final Set<String> styles;
+	private final Map<String, Set<Song>> songsByStyle;
+	private final NavigableSet<Song> orderedSongs;
+	private final NavigableMap<Integer, Set<Song>> songsByPlays;
+	private final Map<Song, Integer> indexedPlays;
+	private final Map<Integer, Song> songsById;
+	// Ids del catálogo. Permite contar las favoritas del catálogo sin
+	// recorrerlo.
+	private final BitSet catalogIds;
+	private final Map<String, Integer> authorCounts;
+	private final CompletionTrie titleCompletions;
+	private final CompletionTrie authorCompletions;
+	private final NGramIndex nameIndex;
+	private final NGramIndex authorIndex;
+	private final SearchCache searchCache;
+	private final QueryPlanner queryPlanner;
+	private int parallelThreshold;
+	private final PlayCounter playCounter;
+
+	// Copia en orden de búsqueda del catálogo para los recorridos en paralelo.
+	// Se reconstruye bajo demanda tras cualquier cambio.
+	private Song[] orderedSnapshot;
+
+	// Última búsqueda realizada. Permite refinar búsquedas sucesivas sin
+	// recorrer de nuevo el catálogo.
+	private String lastName;
+	private String lastAuthor;
+	private String lastStyle;
+	private List<Song> lastResult;
 
 	private SongRepository() {
 		songs = new HashSet<>();
+		songsByKey = new HashMap<>();
 		styles = new HashSet<>();
+		songsByStyle = new HashMap<>();
+		orderedSongs = new TreeSet<>(searchOrder);
+		songsByPlays = new TreeMap<>();
+		indexedPlays = new HashMap<>();
+		songsById = new HashMap<>();
+		catalogIds = new BitSet();
+		authorCounts = new HashMap<>();
+		titleCompletions = new CompletionTrie();
+		authorCompletions = new CompletionTrie();
+		nameIndex = new NGramIndex(ngramSize);
+		authorIndex = new NGramIndex(ngramSize);
+		searchCache = new SearchCache();
+		queryPlanner = new QueryPlanner(songs, songsByStyle, songsByPlays, songsById, nameIndex, authorIndex);
+		parallelThreshold = Math.max(1, Integer.getInteger(PARALLEL_THRESHOLD_PROPERTY, defaultParallelThreshold));
+		orderedSnapshot = null;
+		lastResult = null;
 		// ALL_STYLES = "Todos";
 
 		styles.add(ALL_STYLES);
 
-		DAOFactory.getInstance().getSongDAO().recoverAll().forEach(s -> {
+		String journal = System.getProperty(JOURNAL_PROPERTY, defaultJournal());
+		playCounter = new PlayCounter(journal.equals(noJournal) ? null : Path.of(journal),
+				Math.max(1, Long.getLong(CHECKPOINT_PROPERTY, defaultCheckpoint)), this::isRegistered);
+
+		// Si hay una instantánea válida se evita recuperar las canciones de
+		// persistencia.
+		RepositorySnapshot snapshot = RepositorySnapshot.getInstance();
+		List<Song.Internal> recovered = snapshot.takeSongs()
+				.orElseGet(() -> DAOFactory.getInstance().getSongDAO().recoverAll());
+
+		// Recuperar las reproducciones que no llegaron a persistirse antes de
+		// indexar las canciones.
+		Map<Integer, Song.Internal> recoveredById = new HashMap<>();
+		recovered.forEach(s -> recoveredById.put(s.getId(), s));
+		playCounter.replay(id -> Optional.ofNullable(recoveredById.get(id)));
+
+		recovered.forEach(s -> {
 			songs.add(s);
-			styles.add(s.getStyle());
+			indexSong(s);
 		});
+
+		snapshot.setSongSource(this::copySongs, this::checkpointPlays);
 	}
 
 	/**
@@ -48,9 +174,8 @@ public enum SongRepository {
 	 *         fallo con el servidio de persistencia. {@code true} en cualquier otro
 	 *         caso.
 	 */
-	public Optional<Song> addSong(String name, String author, String path, String sty) {
-		if (name.isBlank() || name.isEmpty() || author.isBlank() || author.isEmpty() || path.isBlank() || path.isEmpty()
-				|| sty.isBlank() || sty.isEmpty()) {
+	public synchronized Optional<Song> addSong(String name, String author, String path, String sty) {
+		if (!isComplete(name, author, path, sty)) {
 			return Optional.empty();
 		}
 
@@ -58,7 +183,7 @@ public enum SongRepository {
 		Song song = new Song.Builder(name).author(author).path(path).style(sty).build().get();
 
 		// Comprobación de duplicidad de la canción.
-		if (songs.contains(song)) {
+		if (songsByKey.containsKey(SongKey.of(song))) {
 			return Optional.empty();
 		}
 
@@ -70,13 +195,68 @@ public enum SongRepository {
 			return Optional.empty();
 		}
 
-		styles.add(sty);
 		songs.add(song);
+		indexSong(song);
 		return Optional.of(song);
 	}
 
 	/**
-	 * Función utilizada para la búsqueda de canciones mediante filtros.
+	 * Método para registrar en bloque las canciones de una importación. La
+	 * validación y el descarte de duplicados, tanto respecto al repositorio como
+	 * dentro del propio lote, se realizan en una sola pasada y el registro en
+	 * persistencia en una sola llamada. Véase {@link DAO#registerAll(List)}.
+	 *
+	 * @param batch Canciones sin registrar que se desean añadir.
+	 *
+	 * @return Lista no modificable con las canciones añadidas, en el orden del
+	 *         lote. Se omiten las incompletas, las duplicadas y las que no se han
+	 *         podido registrar en persistencia.
+	 */
+	public synchronized List<Song> addSongs(List<? extends Song> batch) {
+		// Se conserva la primera aparición de cada canción del lote.
+		Map<SongKey, Song.Internal> pending = new LinkedHashMap<>();
+		batch.stream().filter(s -> s != null && !s.asMut().isRegistered())
+				.filter(s -> isComplete(s.getName(), s.getAuthor(), s.getPath(), s.getStyle()))
+				.forEach(s -> {
+					SongKey key = SongKey.of(s);
+					if (!songsByKey.containsKey(key)) {
+						pending.putIfAbsent(key, s.asMut());
+					}
+				});
+
+		if (pending.isEmpty()) {
+			return List.of();
+		}
+
+		// Persistencia.
+		List<Song.Internal> registered = DAOFactory.getInstance().getSongDAO()
+				.registerAll(new ArrayList<>(pending.values()));
+
+		registered.forEach(s -> {
+			songs.add(s);
+			indexSong(s);
+		});
+		return Collections.unmodifiableList(new ArrayList<>(registered));
+	}
+
+	private String defaultJournal() {
+		// La familia en memoria no conserva canciones entre ejecuciones y de una
+		// factoría desconocida no se sabe qué ids asigna, por lo que en ambos
+		// casos no se lleva diario.
+		return DAOFactory.getInstance().getImplementation().filter(f -> f != DAOImplementation.IN_MEMORY)
+				.map(f -> Path.of(System.getProperty("user.home"), journalDirectory, f.name().toLowerCase(), journalName)
+						.toString())
+				.orElse(noJournal);
+	}
+
+	private boolean isComplete(String name, String author, String path, String sty) {
+		return !(name.isBlank() || author.isBlank() || path.isBlank() || sty.isBlank());
+	}
+
+	/**
+	 * Función utilizada para la búsqueda de canciones mediante filtros. La
+	 * comparación de nombre y autor no distingue mayúsculas, acentos ni espacios
+	 * repetidos. Véase {@link StringNormalizer#normalize(String)}.
 	 *
 	 * @param name   Nombre de la canción. Una cadena vacía "" se corresponde con
 	 *               cualquier nombre de canción.
@@ -84,25 +264,361 @@ public enum SongRepository {
 	 *               autores.
 	 * @param sty    Estilo de la canción. El comodín no filtrará ninguna.
 	 *
-	 * @return Lista mutable de canciones encontrada que respeta los filtros
-	 *         especificados.
+	 * @return Lista no modificable de canciones encontrada que respeta los
+	 *         filtros especificados, en el orden estable de búsqueda.
 	 *
 	 * @implNote Cualquier parámetro nulo provocará la devolución de una lista
 	 *           vacía.
 	 */
-	public List<Song> getSearch(Optional<String> n, Optional<String> a, Optional<String> s) {
+	public synchronized List<Song> getSearch(Optional<String> n, Optional<String> a, Optional<String> s) {
 
-		String name = n.isPresent() ? n.get() : emptyFilter;
-		String author = a.isPresent() ? a.get() : emptyFilter;
+		// Las consultas se comparan con las claves normalizadas de las canciones.
+		String name = StringNormalizer.normalize(n.isPresent() ? n.get() : emptyFilter);
+		String author = StringNormalizer.normalize(a.isPresent() ? a.get() : emptyFilter);
 		String sty = s.isPresent() ? s.get() : ALL_STYLES;
 
-		return songs.stream().filter(song -> song.getName().toLowerCase().contains(name.toLowerCase()))
-				.filter(song -> song.getAuthor().toLowerCase().contains(author.toLowerCase())).filter(song -> {
-					if (!sty.equals(ALL_STYLES)) {
-						return song.getStyle().equals(sty);
-					}
-					return true;
-				}).toList();
+		Optional<SearchResult> cached = searchCache.get(name, author, sty);
+		if (cached.isPresent()) {
+			rememberSearch(name, author, sty, cached.get().getSongs());
+			return cached.get().getSongs();
+		}
+
+		// Si la búsqueda refina la anterior basta con filtrar su resultado. En
+		// otro caso se acotan los candidatos mediante los índices.
+		Collection<Song> candidates = isRefinement(name, author, sty) ? lastResult : indexCandidates(name, author, sty);
+
+		Predicate<Song> matches = matcher(name, author, sty);
+		SearchResult result = sortedMatches(candidates, matches);
+
+		searchCache.put(name, author, sty, result, matches);
+		rememberSearch(name, author, sty, result.getSongs());
+		return result.getSongs();
+	}
+
+	/**
+	 * Función para la búsqueda paginada de canciones mediante filtros. Los
+	 * resultados siguen un orden estable por nombre y autor, de modo que las
+	 * páginas sucesivas se obtienen proporcionando el cursor de la anterior.
+	 *
+	 * @param n              Nombre de la canción. Véase
+	 *                       {@link SongRepository#getSearch(Optional, Optional, Optional)}.
+	 * @param a              Autor de la canción.
+	 * @param s              Estilo de la canción.
+	 * @param favourites     Ids de las canciones favoritas del usuario.
+	 * @param onlyFavourites Limita la página a las canciones favoritas.
+	 * @param after          Cursor de la página anterior. Un opcional vacío
+	 *                       obtiene la primera página.
+	 * @param size           Tamaño máximo de la página.
+	 *
+	 * @return Página de resultados posteriores al cursor. La primera página de
+	 *         las búsquedas cuyo resultado se obtiene completo incluye su
+	 *         recuento, así como la de una búsqueda sin filtros, cuyo recuento es
+	 *         el del catálogo. Véase {@link SearchPage#getFacets()}.
+	 *
+	 * @implNote Con muchos candidatos y algún filtro la página se obtiene
+	 *           recorriendo el catálogo ordenado sólo hasta llenarla, por lo que
+	 *           el resultado completo no llega a conocerse y la página no incluye
+	 *           recuento. Contarlo obligaría a recorrer todos los candidatos, que
+	 *           es justo lo que ese camino evita. En ese caso la interfaz muestra
+	 *           el recuento del catálogo. Véase {@link SongRepository#getFacets()}.
+	 */
+	public synchronized SearchPage getSearchPage(Optional<String> n, Optional<String> a, Optional<String> s,
+			BitSet favourites, boolean onlyFavourites, Optional<Song> after, int size) {
+
+		String name = StringNormalizer.normalize(n.isPresent() ? n.get() : emptyFilter);
+		String author = StringNormalizer.normalize(a.isPresent() ? a.get() : emptyFilter);
+		String sty = s.isPresent() ? s.get() : ALL_STYLES;
+		Predicate<Song> matches = matcher(name, author, sty);
+		Predicate<Song> filter = song -> !onlyFavourites || favourites.get(song.asMut().getId());
+
+		Iterator<Song> source;
+		Optional<SearchFacets> facets = Optional.empty();
+		SearchResult result = searchCache.get(name, author, sty).orElse(null);
+		if (result == null) {
+			boolean refinement = isRefinement(name, author, sty);
+			Collection<Song> candidates = refinement ? lastResult : indexCandidates(name, author, sty);
+
+			// Con pocos candidatos conviene ordenarlos todos. Con muchos,
+			// recorrer el catálogo ordenado desde el cursor sólo cuesta lo
+			// necesario para llenar la página. Se compara k*log(k) frente a
+			// size*N/k aproximadamente.
+			long k = candidates.size();
+			if (refinement || k * k <= (long) size * orderedSongs.size()) {
+				result = sortedMatches(candidates, matches);
+				searchCache.put(name, author, sty, result, matches);
+			}
+		}
+
+		if (result != null) {
+			List<Song> sorted = result.getSongs();
+			if (after.isEmpty()) {
+				facets = Optional.of(result.getFacets());
+			}
+			rememberSearch(name, author, sty, sorted);
+			source = sorted.subList(after.isPresent() ? firstAfter(sorted, after.get()) : 0, sorted.size()).iterator();
+		} else {
+			// Sin filtros el resultado es el catálogo, cuyo recuento se mantiene
+			// sin recorrerlo.
+			if (after.isEmpty() && name.isEmpty() && author.isEmpty() && sty.equals(ALL_STYLES)) {
+				facets = Optional.of(getFacets());
+			}
+			NavigableSet<Song> tail = after.isPresent() ? orderedSongs.tailSet(after.get(), false) : orderedSongs;
+			source = tail.stream().filter(interruptible(matches)).iterator();
+		}
+
+		// Se busca un resultado adicional para saber si hay más páginas.
+		List<Song> page = new ArrayList<>(size);
+		boolean hasMore = false;
+		while (source.hasNext()) {
+			checkInterrupted(Thread.currentThread());
+			Song song = source.next();
+			if (!filter.test(song)) {
+				continue;
+			}
+			if (page.size() == size) {
+				hasMore = true;
+				break;
+			}
+			page.add(song);
+		}
+		return new SearchPage(page, hasMore, facets);
+	}
+
+	/**
+	 * Función para la búsqueda de canciones mediante una consulta compilada. Los
+	 * candidatos se obtienen del índice más selectivo de entre los términos de la
+	 * consulta y el resto de términos se comprueba sobre ellos. Véase
+	 * {@link SongQuery}.
+	 *
+	 * @param query      Consulta que se desea resolver.
+	 * @param favourites Ids de las canciones favoritas del usuario. Utilizadas por
+	 *                   el término {@code fav}.
+	 *
+	 * @return Lista no modificable de canciones que cumplen la consulta, en el
+	 *         orden estable de búsqueda.
+	 */
+	public synchronized List<Song> getQuerySearch(SongQuery query, BitSet favourites) {
+		return querySearch(query, favourites).getSongs();
+	}
+
+	/**
+	 * Función para la búsqueda paginada de canciones mediante una consulta
+	 * compilada. Véase {@link SongRepository#getQuerySearch(SongQuery, BitSet)}.
+	 *
+	 * @param query      Consulta que se desea resolver.
+	 * @param favourites Ids de las canciones favoritas del usuario.
+	 * @param after      Cursor de la página anterior. Un opcional vacío obtiene la
+	 *                   primera página.
+	 * @param size       Tamaño máximo de la página.
+	 *
+	 * @return Página de resultados posteriores al cursor. La primera página
+	 *         incluye el recuento del resultado.
+	 */
+	public synchronized SearchPage getQueryPage(SongQuery query, BitSet favourites, Optional<Song> after, int size) {
+		SearchResult matched = querySearch(query, favourites);
+		List<Song> result = matched.getSongs();
+		int from = after.isPresent() ? firstAfter(result, after.get()) : 0;
+		int to = (int) Math.min((long) from + size, result.size());
+		Optional<SearchFacets> facets = after.isEmpty() ? Optional.of(matched.getFacets()) : Optional.empty();
+		return new SearchPage(new ArrayList<>(result.subList(from, to)), to < result.size(), facets);
+	}
+
+	/**
+	 * Función para la búsqueda aproximada de canciones, tolerante a errores
+	 * tipográficos. Cada canción se puntúa según la proporción de trigramas de
+	 * cada filtro de texto que aparecen en su nombre o autor normalizados,
+	 * promediando los filtros proporcionados. Sólo se consideran las canciones que
+	 * comparten algún trigrama con la consulta, obtenidas de los índices.
+	 *
+	 * @param n      Nombre aproximado de la canción. Un opcional vacío o una
+	 *               cadena vacía no puntúa el nombre.
+	 * @param a      Autor aproximado de la canción. Igual que el nombre.
+	 * @param s      Estilo de la canción. Se aplica de forma exacta.
+	 * @param filter Filtro adicional que deben cumplir las canciones.
+	 * @param limit  Cantidad máxima de canciones devueltas.
+	 *
+	 * @return Lista de las canciones más parecidas a la consulta, ordenadas de
+	 *         mayor a menor puntuación. Vacía si no se proporciona nombre ni
+	 *         autor.
+	 */
+	public synchronized List<Song> getFuzzySearch(Optional<String> n, Optional<String> a, Optional<String> s,
+			Predicate<Song> filter, int limit) {
+
+		String name = StringNormalizer.normalize(n.isPresent() ? n.get() : emptyFilter);
+		String author = StringNormalizer.normalize(a.isPresent() ? a.get() : emptyFilter);
+		String sty = s.isPresent() ? s.get() : ALL_STYLES;
+
+		// Trigramas compartidos con cada filtro de texto proporcionado.
+		List<Map<Song, Integer>> overlaps = new ArrayList<>(2);
+		List<Integer> sizes = new ArrayList<>(2);
+		if (!name.isEmpty()) {
+			overlaps.add(nameIndex.overlap(name));
+			sizes.add(nameIndex.gramCount(name));
+		}
+		if (!author.isEmpty()) {
+			overlaps.add(authorIndex.overlap(author));
+			sizes.add(authorIndex.gramCount(author));
+		}
+		if (overlaps.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+
+		Set<Song> candidates = new HashSet<>();
+		overlaps.forEach(o -> candidates.addAll(o.keySet()));
+
+		Map<Song, Double> scores = new HashMap<>();
+		for (Song song : candidates) {
+			checkInterrupted(Thread.currentThread());
+			if (!sty.equals(ALL_STYLES) && !song.getStyle().equals(sty)) {
+				continue;
+			}
+			double score = 0;
+			for (int i = 0; i < overlaps.size(); i++) {
+				score += overlaps.get(i).getOrDefault(song, 0) / (double) sizes.get(i);
+			}
+			score /= overlaps.size();
+			if (score >= fuzzyThreshold && filter.test(song)) {
+				scores.put(song, score);
+			}
+		}
+
+		// A igual puntuación se prefieren los textos más cortos, más parecidos
+		// en longitud a la consulta, y después el orden estable de búsqueda.
+		Comparator<Song> ranking = Comparator.comparingDouble((Song song) -> scores.get(song)).reversed()
+				.thenComparingInt(song -> song.asMut().getNameKey().length() + song.asMut().getAuthorKey().length())
+				.thenComparing(searchOrder);
+
+		// Montículo con las mejores canciones. La cabeza es la peor de ellas.
+		PriorityQueue<Song> best = new PriorityQueue<>(limit + 1, ranking.reversed());
+		for (Song song : scores.keySet()) {
+			best.add(song);
+			if (best.size() > limit) {
+				best.poll();
+			}
+		}
+
+		List<Song> result = new ArrayList<>(best);
+		result.sort(ranking);
+		return result;
+	}
+
+	private SearchResult querySearch(SongQuery query, BitSet favourites) {
+		return sortedMatches(queryPlanner.candidates(query, favourites), queryPlanner.predicate(query, favourites));
+	}
+
+	private SearchResult sortedMatches(Collection<Song> candidates, Predicate<Song> predicate) {
+		// El recuento se realiza en la misma pasada que el filtrado.
+		Predicate<Song> matches = interruptible(predicate);
+		if (candidates.size() < parallelThreshold) {
+			Matched matched = new Matched();
+			for (Song song : candidates) {
+				if (matches.test(song)) {
+					matched.add(song);
+				}
+			}
+			return matched.sortedResult(searchOrder);
+		}
+
+		// Sin un índice que acote la búsqueda se recorre en paralelo la copia
+		// ordenada del catálogo. El flujo conserva el orden de la copia, por lo
+		// que el resultado ya está ordenado y es determinista.
+		Collector<Song, Matched, Matched> collector = Collector.of(Matched::new, Matched::add, Matched::merge);
+		if (candidates == songs) {
+			if (orderedSnapshot == null) {
+				orderedSnapshot = orderedSongs.toArray(new Song[0]);
+			}
+			return Arrays.stream(orderedSnapshot).parallel().filter(matches).collect(collector).result();
+		}
+		return candidates.parallelStream().filter(matches).collect(collector).sortedResult(searchOrder);
+	}
+
+	// Acumulador de las canciones encontradas y su recuento. Los acumuladores
+	// parciales de un recorrido en paralelo se combinan en el orden del flujo.
+	private static final class Matched {
+
+		private final List<Song> songs = new ArrayList<>();
+		private final SearchFacets.Counter counter = new SearchFacets.Counter();
+
+		private void add(Song song) {
+			songs.add(song);
+			counter.add(song);
+		}
+
+		private Matched merge(Matched other) {
+			songs.addAll(other.songs);
+			counter.merge(other.counter);
+			return this;
+		}
+
+		private SearchResult result() {
+			return new SearchResult(Collections.unmodifiableList(songs), counter.build());
+		}
+
+		private SearchResult sortedResult(Comparator<Song> order) {
+			songs.sort(order);
+			return result();
+		}
+	}
+
+	private Predicate<Song> interruptible(Predicate<Song> matches) {
+		// Se comprueba el hilo que inició la búsqueda, ya que los recorridos en
+		// paralelo evalúan el predicado en otros hilos.
+		Thread searcher = Thread.currentThread();
+		return song -> {
+			checkInterrupted(searcher);
+			return matches.test(song);
+		};
+	}
+
+	private void checkInterrupted(Thread searcher) {
+		if (searcher.isInterrupted()) {
+			throw new CancellationException("Search interrupted.");
+		}
+	}
+
+	private int firstAfter(List<Song> sorted, Song cursor) {
+		int index = Collections.binarySearch(sorted, cursor, searchOrder);
+		// Si el cursor no está se obtiene el punto de inserción.
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	private Predicate<Song> matcher(String name, String author, String sty) {
+		return song -> song.asMut().getNameKey().contains(name) && song.asMut().getAuthorKey().contains(author)
+				&& (sty.equals(ALL_STYLES) || song.getStyle().equals(sty));
+	}
+
+	private void rememberSearch(String name, String author, String sty, List<Song> result) {
+		lastName = name;
+		lastAuthor = author;
+		lastStyle = sty;
+		lastResult = result;
+	}
+
+	private boolean isRefinement(String name, String author, String sty) {
+		// Una búsqueda refina la anterior si sus filtros de texto contienen a
+		// los anteriores y el estilo se mantiene o se restringe desde el
+		// comodín. Su resultado es entonces un subconjunto del anterior.
+		return lastResult != null && name.contains(lastName) && author.contains(lastAuthor)
+				&& (lastStyle.equals(sty) || lastStyle.equals(ALL_STYLES));
+	}
+
+	private Collection<Song> indexCandidates(String name, String author, String sty) {
+		// Acotar los candidatos mediante la partición por estilos y los índices
+		// de n-gramas. Se recorre el conjunto más pequeño, la verificación
+		// final descarta falsos positivos.
+		Collection<Song> candidates = songs;
+		if (!sty.equals(ALL_STYLES)) {
+			candidates = songsByStyle.getOrDefault(sty, Collections.emptySet());
+		}
+		Optional<Set<Song>> byName = nameIndex.candidates(name);
+		if (byName.isPresent() && byName.get().size() < candidates.size()) {
+			candidates = byName.get();
+		}
+		Optional<Set<Song>> byAuthor = authorIndex.candidates(author);
+		if (byAuthor.isPresent() && byAuthor.get().size() < candidates.size()) {
+			candidates = byAuthor.get();
+		}
+		return candidates;
 	}
 
 	/**
@@ -115,6 +631,10 @@ public enum SongRepository {
 		return Collections.unmodifiableSet(this.songs);
 	}
 
+	private synchronized Collection<Song> copySongs() {
+		return new ArrayList<>(songs);
+	}
+
 	/**
 	 * Comprueba la existencia en el repositorio de una canción determinada.
 	 * 
@@ -125,9 +645,24 @@ public enum SongRepository {
 	 * 
 	 * @return {@code true} si existe la canción especificada.
 	 */
-	public boolean existSong(String name, String author, String path, String style) {
-		Song song = new Song.Builder(name).author(author).path(path).style(style).build().get();
-		return songs.stream().anyMatch(s -> s.equals(song));
+	public synchronized boolean existSong(String name, String author, String path, String style) {
+		return songsByKey.containsKey(new SongKey(name, author, path, style));
+	}
+
+	/**
+	 * Comprueba en bloque la existencia en el repositorio de las canciones dadas.
+	 * Pensado para los cargadores de canciones, que pueden descartar así los
+	 * duplicados de una importación con una sola llamada.
+	 * 
+	 * @param songs Canciones que se desean consultar.
+	 * 
+	 * @return Conjunto con las canciones de la colección que ya existen en el
+	 *         repositorio.
+	 */
+	public synchronized Set<Song> existSongs(Collection<? extends Song> songs) {
+		Set<Song> existing = new HashSet<>();
+		songs.stream().filter(s -> songsByKey.containsKey(SongKey.of(s))).forEach(existing::add);
+		return existing;
 	}
 
 	/**
@@ -146,10 +681,124 @@ public enum SongRepository {
 	 * 
 	 * @return {@code true} si existe el estilo especificado.
 	 */
-	public boolean existStyle(String style) {
+	public synchronized boolean existStyle(String style) {
 		return styles.contains(style);
 	}
 
+	/**
+	 * Obtiene la cantidad de canciones del repositorio con el estilo dado.
+	 * 
+	 * @param style Estilo que se desea consultar. El comodín devuelve el total de
+	 *              canciones.
+	 * 
+	 * @return Número de canciones del estilo especificado.
+	 */
+	public synchronized int getStyleCount(String style) {
+		if (ALL_STYLES.equals(style)) {
+			return songs.size();
+		}
+		Set<Song> bucket = songsByStyle.get(style);
+		return bucket == null ? 0 : bucket.size();
+	}
+
+	/**
+	 * Obtiene la cantidad de canciones del repositorio de un autor.
+	 * 
+	 * @param author Autor que se desea consultar.
+	 * 
+	 * @return Número de canciones del autor especificado.
+	 */
+	public synchronized int getAuthorCount(String author) {
+		return authorCounts.getOrDefault(author, 0);
+	}
+
+	/**
+	 * Obtiene el recuento del catálogo completo por estilo, autor y favoritas. Los
+	 * recuentos se mantienen al añadir y eliminar canciones, por lo que no se
+	 * recorre el catálogo.
+	 * 
+	 * @return Recuento del catálogo. Véase
+	 *         {@link SearchFacets#getFavouriteCount(BitSet)}.
+	 */
+	public synchronized SearchFacets getFacets() {
+		Map<String, Integer> styleCounts = new HashMap<>();
+		songsByStyle.forEach((style, bucket) -> styleCounts.put(style, bucket.size()));
+		return new SearchFacets(styleCounts, new HashMap<>(authorCounts), (BitSet) catalogIds.clone(), songs.size());
+	}
+
+	/**
+	 * Obtiene los nombres de canción que comienzan por el prefijo dado, de más a
+	 * menos reproducidos. La comparación no distingue mayúsculas, acentos ni
+	 * espacios repetidos.
+	 * 
+	 * No espera a las búsquedas en curso, por lo que puede utilizarse desde el
+	 * hilo de la interfaz.
+	 * 
+	 * @param prefix Prefijo del nombre.
+	 * @param limit  Cantidad máxima de sugerencias.
+	 * 
+	 * @return Lista de nombres sugeridos.
+	 */
+	public List<String> getTitleCompletions(String prefix, int limit) {
+		return titleCompletions.complete(StringNormalizer.normalize(prefix), limit);
+	}
+
+	/**
+	 * Obtiene los autores que comienzan por el prefijo dado, de más a menos
+	 * reproducidos. Véase {@link SongRepository#getTitleCompletions(String, int)}.
+	 * 
+	 * @param prefix Prefijo del autor.
+	 * @param limit  Cantidad máxima de sugerencias.
+	 * 
+	 * @return Lista de autores sugeridos.
+	 */
+	public List<String> getAuthorCompletions(String prefix, int limit) {
+		return authorCompletions.complete(StringNormalizer.normalize(prefix), limit);
+	}
+
+	/**
+	 * Obtiene la cantidad de búsquedas resueltas desde la caché de resultados.
+	 * Junto a {@link SongRepository#getSearchCacheMisses()} permite dimensionar
+	 * la caché mediante la propiedad del sistema {@code chord.search.cache}.
+	 * 
+	 * @return Número de aciertos de la caché.
+	 */
+	public synchronized long getSearchCacheHits() {
+		return searchCache.getHits();
+	}
+
+	/**
+	 * Obtiene la cantidad de búsquedas que no se encontraban en la caché de
+	 * resultados.
+	 * 
+	 * @return Número de fallos de la caché.
+	 */
+	public synchronized long getSearchCacheMisses() {
+		return searchCache.getMisses();
+	}
+
+	/**
+	 * Obtiene la cantidad mínima de canciones a recorrer a partir de la cual las
+	 * búsquedas se reparten entre varios hilos.
+	 * 
+	 * @return Cantidad mínima de canciones.
+	 */
+	public synchronized int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Establece la cantidad mínima de canciones a recorrer a partir de la cual
+	 * las búsquedas se reparten entre varios hilos. Sustituye al valor de
+	 * {@link SongRepository#PARALLEL_THRESHOLD_PROPERTY}.
+	 * 
+	 * @param threshold Cantidad mínima de canciones. Los valores menores que 1 se
+	 *                  tratan como 1.
+	 */
+	public synchronized void setParallelThreshold(int threshold) {
+		parallelThreshold = Math.max(1, threshold);
+	}
+
 	/**
 	 * Función para obtener el estilo comodín utilizado en las búsquedas
 	 *
@@ -169,9 +818,9 @@ public enum SongRepository {
 	 * @return {@code true} si la canción estaba en el repositorio y se ha podido
 	 *         eliminar.
 	 */
-	public boolean removeSong(Song song) {
+	public synchronized boolean removeSong(Song song) {
 		// Comprobar que la canción está en el repositorio.
-		if (song == null || !songs.contains(song)) {
+		if (song == null || !songsByKey.containsKey(SongKey.of(song))) {
 			return false;
 		}
 
@@ -181,29 +830,117 @@ public enum SongRepository {
 		// equals sería posible pasar como parámetro una canción igual pero no
 		// registrada en persistencia. Habilitamos la posibilidad de
 		// realizar la construcción de canciones nuevas fuera del repositorio.
-		song = songs.stream().filter(song::equals).findFirst().get();
+		song = songsByKey.get(SongKey.of(song));
 		boolean persistence = DAOFactory.getInstance().getSongDAO().delete(song.asMut());
 
 		// Eliminación de memoria.
 		if (persistence) {
+			playCounter.forget(song.asMut());
 			songs.remove(song);
+			// Elimina también el estilo si no quedan canciones del mismo.
+			unindexSong(song);
 
 			// Eliminar referencias a la canción de todos los usuarios.
 			removeSongFromUsers(song);
+		}
+
+		return persistence;
+	}
+
+	private void invalidateSearches(Song s) {
+		orderedSnapshot = null;
+		// Sólo dejan de ser válidas las búsquedas cuyo resultado contiene o
+		// debería contener la canción.
+		searchCache.invalidate(s);
+		if (lastResult != null && matcher(lastName, lastAuthor, lastStyle).test(s)) {
+			lastResult = null;
+		}
+	}
 
-			// Eliminar el estilo de la lista si no quedan canciones del mismo.
-			String style = song.getStyle();
-			if (songs.stream().noneMatch(s -> s.getStyle().equals(style))) {
-				styles.remove(style);
+	private void indexSong(Song s) {
+		invalidateSearches(s);
+		songsByKey.put(SongKey.of(s), s.asMut());
+		authorCounts.merge(s.getAuthor(), 1, Integer::sum);
+		titleCompletions.add(s.asMut().getNameKey(), s.getName(), s.getReproducciones());
+		authorCompletions.add(s.asMut().getAuthorKey(), s.getAuthor(), s.getReproducciones());
+		songsByStyle.computeIfAbsent(s.getStyle(), k -> new HashSet<>()).add(s);
+		orderedSongs.add(s);
+		styles.add(s.getStyle());
+		nameIndex.add(s, s.asMut().getNameKey());
+		authorIndex.add(s, s.asMut().getAuthorKey());
+		indexPlays(s);
+		if (s.asMut().isRegistered()) {
+			songsById.put(s.asMut().getId(), s);
+			catalogIds.set(s.asMut().getId());
+		}
+	}
+
+	private void unindexSong(Song s) {
+		invalidateSearches(s);
+		songsByKey.remove(SongKey.of(s));
+		// No se mantienen autores sin canciones.
+		authorCounts.computeIfPresent(s.getAuthor(), (k, c) -> c == 1 ? null : c - 1);
+		// Se retira el peso con el que se indexó la canción.
+		long plays = indexedPlays.getOrDefault(s, s.getReproducciones());
+		titleCompletions.remove(s.asMut().getNameKey(), plays);
+		authorCompletions.remove(s.asMut().getAuthorKey(), plays);
+		orderedSongs.remove(s);
+		Set<Song> bucket = songsByStyle.get(s.getStyle());
+		if (bucket != null) {
+			bucket.remove(s);
+			if (bucket.isEmpty()) {
+				songsByStyle.remove(s.getStyle());
+				if (!ALL_STYLES.equals(s.getStyle())) {
+					styles.remove(s.getStyle());
+				}
 			}
 		}
+		nameIndex.remove(s, s.asMut().getNameKey());
+		authorIndex.remove(s, s.asMut().getAuthorKey());
+		unindexPlays(s);
+		if (songsById.remove(s.asMut().getId(), s)) {
+			catalogIds.clear(s.asMut().getId());
+		}
+	}
 
-		return persistence;
+	private void indexPlays(Song s) {
+		int plays = s.getReproducciones();
+		indexedPlays.put(s, plays);
+		songsByPlays.computeIfAbsent(plays, k -> new HashSet<>()).add(s);
+	}
+
+	private void unindexPlays(Song s) {
+		// Se utiliza la cantidad con la que se indexó, la actual ha podido
+		// cambiar.
+		Integer plays = indexedPlays.remove(s);
+		if (plays == null) {
+			return;
+		}
+		Set<Song> bucket = songsByPlays.get(plays);
+		bucket.remove(s);
+		if (bucket.isEmpty()) {
+			songsByPlays.remove(plays);
+		}
+	}
+
+	private void reindexPlays(Song s) {
+		long delta = s.getReproducciones() - (long) indexedPlays.get(s);
+		unindexPlays(s);
+		indexPlays(s);
+		titleCompletions.addWeight(s.asMut().getNameKey(), delta);
+		authorCompletions.addWeight(s.asMut().getAuthorKey(), delta);
+	}
+
+	private synchronized boolean isRegistered(Song s) {
+		return songsByKey.get(SongKey.of(s)) == s;
 	}
 
 	private void removeSongFromUsers(Song s) {
-		// Método de sincronización de las canciones de los usuarios.
-		UserRepository.INSTANCE.getUsers().stream().map(Mutable::asMut).forEach(u -> {
+		// Método de sincronización de las canciones de los usuarios. Los
+		// usuarios sin resolver no se cargan. Al resolverlos se ignoran las
+		// canciones que ya no existen y se marcan para escribir los campos que
+		// las contenían. Véase User.Internal#setReferenceLoader.
+		UserRepository.INSTANCE.getUsers().stream().map(Mutable::asMut).filter(User.Internal::isResolved).forEach(u -> {
 			// Para cada usuario eliminamos la canción de favoritos y
 			// recientes.
 			u.removeFavouriteSong(s);
@@ -223,9 +960,11 @@ public enum SongRepository {
 	 * 
 	 * @return Resultado de la operación.
 	 */
-	public boolean updateSong(Song s) {
-		if (s == null || !songs.contains(s))
+	public synchronized boolean updateSong(Song s) {
+		if (s == null || !songsByKey.containsKey(SongKey.of(s)))
 			return false;
+		// Las reproducciones han podido cambiar.
+		reindexPlays(songsByKey.get(SongKey.of(s)));
 		boolean persistence = DAOFactory.getInstance().getSongDAO().modify(s.asMut());
 		if (!persistence) {
 			removeSongFromUsers(s);
@@ -234,6 +973,39 @@ public enum SongRepository {
 		return persistence;
 	}
 
+	/**
+	 * Registra una reproducción de la canción. La reproducción se cuenta de
+	 * inmediato en la canción y en los índices del repositorio, pero se escribe
+	 * en persistencia junto a las demás reproducciones pendientes cada
+	 * {@link SongRepository#CHECKPOINT_PROPERTY} milisegundos. Hasta entonces se
+	 * conserva en el diario local {@link SongRepository#JOURNAL_PROPERTY}.
+	 * 
+	 * @param s Canción reproducida.
+	 * 
+	 * @return {@code true} si la canción está registrada en el repositorio.
+	 */
+	public synchronized boolean addPlay(Song s) {
+		if (s == null || !songsByKey.containsKey(SongKey.of(s))) {
+			return false;
+		}
+
+		Song.Internal registered = songsByKey.get(SongKey.of(s));
+		registered.addReproduccion();
+		reindexPlays(registered);
+		playCounter.record(registered);
+		return true;
+	}
+
+	/**
+	 * Escribe en persistencia las reproducciones pendientes sin esperar al
+	 * siguiente punto de control.
+	 * 
+	 * @return {@code true} si se escribieron todas las reproducciones pendientes.
+	 */
+	public boolean checkpointPlays() {
+		return playCounter.checkpoint();
+	}
+
 	// ---------- Depuración. ----------
 
 	/**
@@ -242,13 +1014,29 @@ public enum SongRepository {
 	 *          Fuerza un reseteo del estado del repositorio de canciones. Se
 	 *          eliminarán todas las canciones de persistencia.
 	 */
-	public void clearSonRepositoryState() {
+	public synchronized void clearSonRepositoryState() {
 		// Quitar todas las canciones.
+		playCounter.clear();
 		songs.forEach(s -> {
 			removeSongFromUsers(s);
 			DAOFactory.getInstance().getSongDAO().delete(s.asMut());
 		});
 		songs.clear();
+		songsByKey.clear();
+		songsByStyle.clear();
+		orderedSongs.clear();
+		songsByPlays.clear();
+		indexedPlays.clear();
+		songsById.clear();
+		catalogIds.clear();
+		authorCounts.clear();
+		titleCompletions.clear();
+		authorCompletions.clear();
+		searchCache.clear();
+		orderedSnapshot = null;
+		lastResult = null;
+		nameIndex.clear();
+		authorIndex.clear();
 		styles.clear();
 		styles.add(ALL_STYLES);
 	}
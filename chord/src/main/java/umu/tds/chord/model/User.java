@@ -4,13 +4,17 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import umu.tds.chord.model.discount.Discount;
 import umu.tds.chord.model.discount.DiscountFactory;
@@ -20,6 +24,11 @@ import umu.tds.chord.utils.StringHasher;
 /**
  * Clase abstracta que representa un usuario. Expone sólo los métodos de lectura
  * de datos.
+ *
+ * Los usuarios se modifican desde la interfaz y se escriben en persistencia
+ * desde otro hilo. Véase {@link UserRepository}. Por ello las modificaciones y
+ * las lecturas de sus colecciones se sincronizan sobre el propio usuario, y las
+ * lecturas devuelven copias que no cambian con modificaciones posteriores.
  */
 public abstract sealed class User implements Mutable<User.Internal> {
 
@@ -179,6 +188,59 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		}
 	}
 
+	/**
+	 * Ids persistentes de las playlists, canciones recientes y canciones
+	 * favoritas de un usuario cuyas referencias aún no se han resuelto. Véase
+	 * {@link User.Internal#setReferenceLoader(References, Consumer)}.
+	 */
+	public static final class References {
+
+		private final List<Integer> playlistIds;
+		private final List<Integer> recentSongIds;
+		private final List<Integer> favouriteSongIds;
+
+		/**
+		 * Crea las referencias de un usuario a partir de sus ids persistentes.
+		 *
+		 * @param playlistIds      Ids de las playlists, en orden.
+		 * @param recentSongIds    Ids de las canciones recientes, de la más
+		 *                         reciente a la más antigua.
+		 * @param favouriteSongIds Ids de las canciones favoritas.
+		 */
+		public References(List<Integer> playlistIds, List<Integer> recentSongIds, List<Integer> favouriteSongIds) {
+			this.playlistIds = List.copyOf(playlistIds);
+			this.recentSongIds = List.copyOf(recentSongIds);
+			this.favouriteSongIds = List.copyOf(favouriteSongIds);
+		}
+
+		/**
+		 * Obtiene las ids de las playlists del usuario.
+		 *
+		 * @return Lista no modificable de ids en orden.
+		 */
+		public List<Integer> getPlaylistIds() {
+			return playlistIds;
+		}
+
+		/**
+		 * Obtiene las ids de las canciones recientes del usuario.
+		 *
+		 * @return Lista no modificable de ids de la más reciente a la más antigua.
+		 */
+		public List<Integer> getRecentSongIds() {
+			return recentSongIds;
+		}
+
+		/**
+		 * Obtiene las ids de las canciones favoritas del usuario.
+		 *
+		 * @return Lista no modificable de ids.
+		 */
+		public List<Integer> getFavouriteSongIds() {
+			return favouriteSongIds;
+		}
+	}
+
 	/**
 	 * Clase de representación interna de un usuario. Expone métodos que permiten
 	 * mutar los datos del usuario. Se exponen también los métodos necesarios para
@@ -186,8 +248,17 @@ public abstract sealed class User implements Mutable<User.Internal> {
 	 */
 	public static final class Internal extends User implements Persistent {
 
+		/**
+		 * Campos lógicos del usuario que pueden cambiar tras su registro. Véase
+		 * {@link User.Internal#takeChanges()}.
+		 */
+		public enum Field {
+			DISCOUNT, FAVOURITE_SONGS, PLAYLISTS, PREMIUM, RECENT_SONGS
+		}
+
 		private int id;
 		private boolean isRegistered;
+		private final ChangeTracker<Field> changes;
 
 		/**
 		 * Constructor de usuarios.
@@ -200,6 +271,7 @@ public abstract sealed class User implements Mutable<User.Internal> {
 
 			this.id = 0;
 			this.isRegistered = false;
+			this.changes = new ChangeTracker<>(Field.class);
 		}
 
 		/**
@@ -207,8 +279,12 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 *
 		 * @param favSong Canción que se desea añadir a la lista.
 		 */
-		public void addFavouriteSong(Song favSong) {
-			super.favouriteSongs.add(favSong);
+		public synchronized void addFavouriteSong(Song favSong) {
+			super.resolve();
+			if (super.favouriteSongs.add(favSong))
+				changes.mark(Field.FAVOURITE_SONGS);
+			if (favSong.asMut().isRegistered())
+				super.favouriteIds.set(favSong.asMut().getId());
 		}
 
 		/**
@@ -218,8 +294,10 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 * @param index    Índice de la lista en el que se desea añadir la playlist.
 		 * @param playlist Playlist que se desea añadir a la lista.
 		 */
-		public void addPlaylist(Playlist playlist) {
+		public synchronized void addPlaylist(Playlist playlist) {
+			super.resolve();
 			super.playlists.add(playlist);
+			changes.mark(Field.PLAYLISTS);
 		}
 
 		/**
@@ -227,10 +305,12 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 *
 		 * @param recentSong Canción que se desea añadir a la lista.
 		 */
-		public void addRecentSong(Song recentSong) {
+		public synchronized void addRecentSong(Song recentSong) {
+			super.resolve();
 			if (super.recentSongs.size() == maxRecentSongs)
 				super.recentSongs.pollLast();
 			super.recentSongs.addFirst(recentSong);
+			changes.mark(Field.RECENT_SONGS);
 		}
 
 		/**
@@ -279,8 +359,14 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 *
 		 * @return {@code true} si se eliminó la canción favorita.
 		 */
-		public boolean removeFavouriteSong(Song favSong) {
-			return super.favouriteSongs.remove(favSong);
+		public synchronized boolean removeFavouriteSong(Song favSong) {
+			super.resolve();
+			boolean removed = super.favouriteSongs.remove(favSong);
+			if (removed)
+				changes.mark(Field.FAVOURITE_SONGS);
+			if (removed && favSong.asMut().isRegistered())
+				super.favouriteIds.clear(favSong.asMut().getId());
+			return removed;
 		}
 
 		/**
@@ -291,8 +377,12 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 *
 		 * @return Resultado de la eliminación.
 		 */
-		public boolean removePlaylist(Playlist p) {
-			return super.playlists.remove(p);
+		public synchronized boolean removePlaylist(Playlist p) {
+			super.resolve();
+			boolean removed = super.playlists.remove(p);
+			if (removed)
+				changes.mark(Field.PLAYLISTS);
+			return removed;
 		}
 
 		/**
@@ -303,8 +393,12 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 *
 		 * @return Canción que se ha eliminado.
 		 */
-		public boolean removeRecentSong(Song s) {
-			return super.recentSongs.removeIf(song -> song.equals(s));
+		public synchronized boolean removeRecentSong(Song s) {
+			super.resolve();
+			boolean removed = super.recentSongs.removeIf(song -> song.equals(s));
+			if (removed)
+				changes.mark(Field.RECENT_SONGS);
+			return removed;
 		}
 
 		/**
@@ -314,7 +408,9 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 *
 		 * @return Estado premium que se le ha establecido al usuario.
 		 */
-		public boolean setPremium(boolean premium) {
+		public synchronized boolean setPremium(boolean premium) {
+			if (super.isPremium != premium)
+				changes.mark(Field.PREMIUM);
 			super.isPremium = premium;
 			return super.isPremium;
 		}
@@ -324,19 +420,95 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		 * 
 		 * @param discount Descuento que se desea asignar al usuario.
 		 */
-		public void setDiscount(Discount discount) {
+		public synchronized void setDiscount(Discount discount) {
 			super.discount = discount;
+			changes.mark(Field.DISCOUNT);
+		}
+
+		/**
+		 * Establece la función que resolverá las playlists, canciones favoritas y
+		 * canciones recientes del usuario la primera vez que se acceda a ellas.
+		 * Permite recuperar de persistencia sólo los datos básicos del usuario
+		 * hasta que se necesiten sus referencias.
+		 *
+		 * Las referencias que la función no pueda resolver, por ejemplo canciones
+		 * eliminadas mientras el usuario no estaba resuelto, se marcan como
+		 * cambios para quitarlas de persistencia en la siguiente escritura.
+		 *
+		 * @param ids    Ids persistentes de las referencias del usuario.
+		 * @param loader Función que añade al usuario las referencias de ids.
+		 */
+		public synchronized void setReferenceLoader(References ids, Consumer<User.Internal> loader) {
+			super.unresolved = ids;
+			super.references = loader;
+		}
+
+		/**
+		 * Obtiene las ids de las referencias del usuario sin resolverlas. Véase
+		 * {@link User.Internal#setReferenceLoader(References, Consumer)}.
+		 *
+		 * @return Ids de las referencias o un opcional vacío si ya se han
+		 *         resuelto.
+		 */
+		public synchronized Optional<References> getUnresolvedReferences() {
+			return Optional.ofNullable(super.unresolved);
+		}
+
+		/**
+		 * Indica si las referencias del usuario ya se han resuelto. Véase
+		 * {@link User.Internal#setReferenceLoader(References, Consumer)}.
+		 *
+		 * @return {@code true} si no quedan referencias por resolver.
+		 */
+		public boolean isResolved() {
+			return super.references == null;
+		}
+
+		/**
+		 * Resuelve las referencias del usuario si aún no se había hecho.
+		 */
+		public void resolveReferences() {
+			super.resolve();
+		}
+
+		/**
+		 * Obtiene los campos que han cambiado desde la última llamada a este método
+		 * y vacía el registro de cambios. Utilizado por los adaptadores DAO para
+		 * escribir sólo las propiedades afectadas.
+		 *
+		 * @return Conjunto de los campos cambiados.
+		 */
+		public Set<Field> takeChanges() {
+			return changes.take();
+		}
+
+		/**
+		 * Vuelve a marcar como cambiados los campos dados. Utilizado por los
+		 * adaptadores DAO cuando no se han podido escribir los cambios obtenidos
+		 * mediante {@link User.Internal#takeChanges()}.
+		 *
+		 * @param fields Campos que se desean marcar como cambiados.
+		 */
+		public void restoreChanges(Set<Field> fields) {
+			changes.markAll(fields);
 		}
 	}
 
 	private final Date birthday;
 	private final Set<Song> favouriteSongs;
+	// Ids persistentes de las canciones favoritas. Evita consultas en el set
+	// al filtrar búsquedas.
+	private final BitSet favouriteIds;
 	private final String hashedPassword;
-	private boolean isPremium;
+	private volatile boolean isPremium;
 	private final List<Playlist> playlists;
 	private final Deque<Song> recentSongs;
 	private final String username;
-	private Discount discount;
+	private volatile Discount discount;
+	// Función que resuelve las referencias del usuario en el primer acceso y
+	// las ids que debe resolver.
+	private volatile Consumer<User.Internal> references;
+	private References unresolved;
 
 	/**
 	 * Constructor de usuarios.
@@ -351,8 +523,51 @@ public abstract sealed class User implements Mutable<User.Internal> {
 		this.playlists = builder.playlists;
 		this.recentSongs = builder.recentSongs;
 		this.favouriteSongs = builder.favouriteSongs;
+		this.favouriteIds = new BitSet();
+		this.favouriteSongs.stream().map(Song::asMut).filter(Song.Internal::isRegistered)
+				.forEach(s -> favouriteIds.set(s.getId()));
 		this.isPremium = builder.isPremium;
 		this.discount = builder.discount;
+		this.references = null;
+		this.unresolved = null;
+	}
+
+	private void resolve() {
+		if (references == null) {
+			return;
+		}
+		synchronized (this) {
+			Consumer<User.Internal> loader = references;
+			if (loader == null) {
+				return;
+			}
+			references = null;
+			References ids = unresolved;
+			unresolved = null;
+
+			// Las referencias resueltas coinciden con las persistidas, por lo que
+			// no cuentan como cambios, salvo las que no han podido resolverse.
+			Set<Internal.Field> changes = asMut().takeChanges();
+			loader.accept(asMut());
+			asMut().takeChanges();
+			changes.addAll(staleFields(ids));
+			asMut().restoreChanges(changes);
+		}
+	}
+
+	private Set<Internal.Field> staleFields(References ids) {
+		Set<Internal.Field> stale = EnumSet.noneOf(Internal.Field.class);
+		if (!ids.getPlaylistIds().equals(playlists.stream().map(p -> p.asMut().getId()).toList())) {
+			stale.add(Internal.Field.PLAYLISTS);
+		}
+		if (!ids.getRecentSongIds().equals(recentSongs.stream().map(s -> s.asMut().getId()).toList())) {
+			stale.add(Internal.Field.RECENT_SONGS);
+		}
+		if (!new HashSet<>(ids.getFavouriteSongIds())
+				.equals(favouriteSongs.stream().map(s -> s.asMut().getId()).collect(Collectors.toSet()))) {
+			stale.add(Internal.Field.FAVOURITE_SONGS);
+		}
+		return stale;
 	}
 
 	/**
@@ -396,10 +611,36 @@ public abstract sealed class User implements Mutable<User.Internal> {
 	 * Método para obtener un set no modificable de las canciones favoritas del
 	 * usuario.
 	 *
-	 * @return Set no modificable de las canciones favoritas.
+	 * @return Copia no modificable del set de canciones favoritas.
+	 */
+	public synchronized Set<Song> getFavouriteSongs() {
+		resolve();
+		return Collections.unmodifiableSet(new HashSet<>(favouriteSongs));
+	}
+
+	/**
+	 * Comprueba si una canción es favorita del usuario.
+	 *
+	 * @param song Canción que se desea consultar.
+	 *
+	 * @return {@code true} si la canción está entre las favoritas del usuario.
+	 */
+	public synchronized boolean isFavourite(Song song) {
+		resolve();
+		if (song.asMut().isRegistered())
+			return favouriteIds.get(song.asMut().getId());
+		return favouriteSongs.contains(song);
+	}
+
+	/**
+	 * Obtiene el conjunto de ids persistentes de las canciones favoritas del
+	 * usuario. Véase {@link Persistent}.
+	 *
+	 * @return Copia del conjunto de bits indexado por id de canción.
 	 */
-	public Set<Song> getFavouriteSongs() {
-		return Collections.unmodifiableSet(favouriteSongs);
+	public synchronized BitSet getFavouriteIds() {
+		resolve();
+		return (BitSet) favouriteIds.clone();
 	}
 
 	/**
@@ -409,17 +650,19 @@ public abstract sealed class User implements Mutable<User.Internal> {
 	 *
 	 * @return Playlist de la lista correspondiente al índice dado.
 	 */
-	public Playlist getPlaylist(int index) {
+	public synchronized Playlist getPlaylist(int index) {
+		resolve();
 		return playlists.get(index);
 	}
 
 	/**
 	 * Método para obtener una lista no modificable de las playlist del usuario.
 	 *
-	 * @return Lista no modificable de playlists.
+	 * @return Copia no modificable de la lista de playlists.
 	 */
-	public List<Playlist> getPlaylists() {
-		return Collections.unmodifiableList(playlists);
+	public synchronized List<Playlist> getPlaylists() {
+		resolve();
+		return Collections.unmodifiableList(new ArrayList<>(playlists));
 	}
 
 	/**
@@ -428,7 +671,8 @@ public abstract sealed class User implements Mutable<User.Internal> {
 	 *
 	 * @return Lista no modificable de las canciones recientes.
 	 */
-	public List<Song> getRecentSongs() {
+	public synchronized List<Song> getRecentSongs() {
+		resolve();
 		return Collections.unmodifiableList(new ArrayList<>(recentSongs));
 	}
 
@@ -465,8 +709,9 @@ public abstract sealed class User implements Mutable<User.Internal> {
 	 * @return Precio del premium del usuario.
 	 */
 	public double getPremiumCost() {
-		if (discount.aplicable(this))
-			return discount.getDiscountFactor() * premiumBaseCost;
+		Discount current = discount;
+		if (current.aplicable(this))
+			return current.getDiscountFactor() * premiumBaseCost;
 		return premiumBaseCost;
 	}
 }
\ No newline at end of file
@@ -1,28 +1,85 @@
 package umu.tds.chord.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import umu.tds.chord.dao.DAOFactory;
 
 /**
  * Repositorio de usuarios. Utilizado para la creación, obtención y
  * actualización de los datos de los usuarios. Véase {@link User}.
+ *
+ * Las actualizaciones de usuarios se escriben en diferido. Cada actualización
+ * marca al usuario como pendiente y un hilo en segundo plano escribe en
+ * persistencia todos los pendientes, una sola vez cada uno, pasado un retardo
+ * o al alcanzar un número de usuarios pendientes. Véase
+ * {@link UserRepository#flush()}. La escritura lee el estado de los usuarios
+ * mediante copias obtenidas bajo el monitor de cada usuario y playlist, por lo
+ * que pueden seguir modificándose mientras se escriben. Véase {@link User}.
  */
 public enum UserRepository {
 
 	INSTANCE;
 
+	/**
+	 * Propiedad del sistema con el retardo en milisegundos de la escritura de los
+	 * usuarios pendientes. Un valor de 0 escribe cada actualización de forma
+	 * inmediata.
+	 */
+	public static final String FLUSH_DELAY_PROPERTY = "chord.users.flush.delay";
+
+	/**
+	 * Propiedad del sistema con el número de usuarios pendientes a partir del
+	 * cual se adelanta la escritura sin esperar al retardo.
+	 */
+	public static final String FLUSH_BATCH_PROPERTY = "chord.users.flush.batch";
+
+	private static final long defaultFlushDelay = 500;
+	private static final int defaultFlushBatch = 32;
+	private static final String threadName = "chord-users";
+
 	private final Map<String, User> users;
+	private final Set<User> dirty;
+	private final Object writeLock;
+	private final ScheduledExecutorService writer;
+	private final long flushDelay;
+	private final int flushBatch;
+	private Future<?> pendingFlush;
 
 	private UserRepository() {
-		users = new HashMap<>();
+		// Los usuarios se consultan desde el hilo de escritura.
+		users = new ConcurrentHashMap<>();
+		dirty = new LinkedHashSet<>();
+		writeLock = new Object();
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, threadName);
+			t.setDaemon(true);
+			return t;
+		});
+		flushDelay = Math.max(0, Long.getLong(FLUSH_DELAY_PROPERTY, defaultFlushDelay));
+		flushBatch = Math.max(1, Integer.getInteger(FLUSH_BATCH_PROPERTY, defaultFlushBatch));
+		pendingFlush = null;
 
-		DAOFactory.getInstance().getUserDAO().recoverAll().forEach(u -> users.put(u.getUserName(), u));
+		// Si hay una instantánea válida se evita recuperar los usuarios de
+		// persistencia.
+		RepositorySnapshot snapshot = RepositorySnapshot.getInstance();
+		snapshot.takeUsers().orElseGet(() -> DAOFactory.getInstance().getUserDAO().recoverAll())
+				.forEach(u -> users.put(u.getUserName(), u));
+		// Las actualizaciones pendientes se escriben al cerrar la aplicación.
+		// Véase RepositorySnapshot#write().
+		snapshot.setUserSource(() -> new ArrayList<>(users.values()), this::flush);
 	}
 
 	/**
@@ -103,20 +160,29 @@ public enum UserRepository {
 			return false;
 		}
 
-		// Eliminación de persistencia.
-		boolean persistence = DAOFactory.getInstance().getUserDAO().delete(u.asMut());
+		synchronized (writeLock) {
+			// Ya no tiene sentido escribir sus actualizaciones pendientes.
+			synchronized (dirty) {
+				dirty.remove(u);
+			}
 
-		// Si hubo exito en la eliminación de persistencia se quita del mapa.
-		if (persistence) {
-			users.remove(u.getUserName());
-		}
+			// Eliminación de persistencia.
+			boolean persistence = DAOFactory.getInstance().getUserDAO().delete(u.asMut());
 
-		return persistence;
+			// Si hubo exito en la eliminación de persistencia se quita del mapa.
+			if (persistence) {
+				users.remove(u.getUserName());
+			}
+
+			return persistence;
+		}
 	}
 
 	/**
 	 * Actualiza los datos del usuario proporcionado, escribiendolos mediante el
-	 * servicio de persistencia.
+	 * servicio de persistencia. La escritura se realiza en diferido y agrupa todas
+	 * las actualizaciones del usuario producidas hasta entonces, salvo que el
+	 * retardo configurado en {@link UserRepository#FLUSH_DELAY_PROPERTY} sea 0.
 	 *
 	 * @param u Usuario del que se desea actualizar la información. Se espera que u
 	 *          haya sido obtenido mediante
@@ -126,6 +192,10 @@ public enum UserRepository {
 	 *         existe alguna inconsitencia entre el mapeo del nombre del usuario
 	 *         proporcionado y el objeto usuario proprocionado. {@code true} en otro
 	 *         caso.
+	 *
+	 * @implNote Un fallo de escritura diferida mantiene al usuario pendiente de
+	 *           escribir. Para conocer su resultado debe utilizarse
+	 *           {@link UserRepository#flush()}.
 	 */
 	public boolean updateUser(User u) {
 
@@ -140,16 +210,76 @@ public enum UserRepository {
 		// referencia se encuentra en el mapa de usuarios y ya está actualizada.
 		// Solo hace falta actualizar la información del usuario en
 		// persistencia.
+		if (flushDelay == 0) {
+			synchronized (writeLock) {
+				return persist(u);
+			}
+		}
 
-		// Actualización en persistencia.
-		boolean persistence = DAOFactory.getInstance().getUserDAO().modify(u.asMut());
+		markDirty(u);
+		return true;
+	}
 
-		// Fallo de actualización en persistencia da lugar a eliminación del
-		// usuario del mapa en memoria
-		if (!persistence) {
-			users.remove(u.getUserName());
+	/**
+	 * Escribe en persistencia todos los usuarios con actualizaciones pendientes.
+	 * Se invoca en el cierre de sesión y al terminar la aplicación.
+	 *
+	 * @return {@code true} si todas las escrituras fueron exitosas. {@code false}
+	 *         si falló alguna. Los usuarios cuya escritura falló se mantienen en
+	 *         el repositorio y pendientes de escribir, de modo que se reintentan
+	 *         en la siguiente escritura.
+	 */
+	public boolean flush() {
+		synchronized (writeLock) {
+			List<User> batch;
+			synchronized (dirty) {
+				batch = new ArrayList<>(dirty);
+				dirty.clear();
+			}
+
+			boolean result = true;
+			for (User u : batch) {
+				if (!persist(u)) {
+					// Se reintentará en la siguiente escritura. No se programa
+					// una nueva para no repetir sin fin un fallo permanente.
+					synchronized (dirty) {
+						dirty.add(u);
+					}
+					result = false;
+				}
+			}
+			return result;
 		}
+	}
+
+	private void markDirty(User u) {
+		synchronized (dirty) {
+			dirty.add(u);
 
-		return persistence;
+			// Se adelanta la escritura al alcanzar el tamaño de lote.
+			if (dirty.size() >= flushBatch) {
+				if (pendingFlush != null) {
+					pendingFlush.cancel(false);
+				}
+				pendingFlush = writer.submit(this::flush);
+			} else if (pendingFlush == null || pendingFlush.isDone()) {
+				pendingFlush = writer.schedule(this::flush, flushDelay, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private boolean persist(User u) {
+		// El usuario ha podido eliminarse desde que se marcó.
+		if (users.get(u.getUserName()) != u) {
+			return true;
+		}
+
+		// Actualización en persistencia. Los adaptadores conservan los cambios
+		// que no han podido escribir, por lo que un fallo puede reintentarse.
+		try {
+			return DAOFactory.getInstance().getUserDAO().modify(u.asMut());
+		} catch (RuntimeException e) {
+			return false;
+		}
 	}
 }
@@ -1,11 +1,15 @@
 package umu.tds.chord.ui;
 
+import java.awt.Component;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.util.Optional;
 
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JComboBox;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -15,6 +19,7 @@ import umu.tds.chord.controller.SongStatusEvent;
 import umu.tds.chord.controller.SongStatusListener;
 import umu.tds.chord.controller.UserStatusEvent;
 import umu.tds.chord.controller.UserStatusListener;
+import umu.tds.chord.model.SearchFacets;
 import umu.tds.chord.model.SongRepository;
 
 public class SearchFormPanel extends JPanel {
@@ -24,29 +29,45 @@ public class SearchFormPanel extends JPanel {
 	private static final String interpreterFilterText = "Intérprete";
 	private static final String titleFilterText = "Título";
 	private static final String favouriteText = "Favoritos";
+	private static final String fuzzyText = "Búsqueda aproximada";
+	private static final String queryFilterText = "Consulta avanzada";
+	private static final String countFormat = "%s (%d)";
 
 	private TextField titleFilter;
 	private TextField interpreterFilter;
 	private ResponsiveCheckBox favouriteFilter;
+	private ResponsiveCheckBox fuzzyFilter;
+	private TextField queryFilter;
 	private JComboBox<String> styleFilter;
 
+	// Recuento del catálogo y del resultado de la última búsqueda.
+	private SearchFacets catalogFacets;
+	private Optional<SearchFacets> resultFacets;
+
 	public SearchFormPanel() {
 		GridBagLayout layout = new GridBagLayout();
 		setLayout(layout);
 
+		resultFacets = Optional.empty();
+		catalogFacets = Controller.INSTANCE.getFacets();
+
 		initializeTitleFilter();
 		initializeInterpreterFilter();
 		initializeFavouriteFilter();
 		initializeStyleFilter();
+		initializeFuzzyFilter();
+		initializeQueryFilter();
 		initializeSearchButton();
 		initializeResultsPanel();
 
 		registerControllerListeners();
+		updateFacetLabels();
 	}
 
 	private void initializeTitleFilter() {
 		titleFilter = new TextField(titleFilterText);
 		titleFilter.addActionListener(e -> search());
+		new SuggestionPopup(titleFilter, Controller.INSTANCE::getTitleCompletions);
 		titleFilter.getDocument().addDocumentListener(new DocumentListener() {
 
 			@Override
@@ -78,6 +99,7 @@ public class SearchFormPanel extends JPanel {
 	private void initializeInterpreterFilter() {
 		interpreterFilter = new TextField(interpreterFilterText);
 		interpreterFilter.addActionListener(e -> search());
+		new SuggestionPopup(interpreterFilter, Controller.INSTANCE::getAuthorCompletions);
 		interpreterFilter.getDocument().addDocumentListener(new DocumentListener() {
 
 			@Override
@@ -124,6 +146,17 @@ public class SearchFormPanel extends JPanel {
 		styleFilter = new JComboBox<>();
 		styleFilter.addActionListener(e -> search());
 		styleFilter.addItem(SongRepository.ALL_STYLES);
+		styleFilter.setRenderer(new DefaultListCellRenderer() {
+
+			private static final long serialVersionUID = -4387532169404719215L;
+
+			@Override
+			public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+					boolean cellHasFocus) {
+				Object text = value == null ? null : String.format(countFormat, value, styleCount((String) value));
+				return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+			}
+		});
 
 		GridBagConstraints constraints = new GridBagConstraints();
 		constraints.gridx = 1;
@@ -134,13 +167,57 @@ public class SearchFormPanel extends JPanel {
 		add(styleFilter, constraints);
 	}
 
+	private void initializeFuzzyFilter() {
+		fuzzyFilter = new ResponsiveCheckBox(fuzzyText);
+		fuzzyFilter.addActionListener(e -> search());
+
+		GridBagConstraints constraints = new GridBagConstraints();
+		constraints.gridx = 0;
+		constraints.gridy = 2;
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.insets = new Insets(10, 10, 0, 5);
+
+		add(fuzzyFilter, constraints);
+	}
+
+	private void initializeQueryFilter() {
+		queryFilter = new TextField(queryFilterText);
+		queryFilter.addActionListener(e -> search());
+		queryFilter.getDocument().addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				search();
+			}
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				removeUpdate(e);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				removeUpdate(e);
+			}
+		});
+
+		GridBagConstraints constraints = new GridBagConstraints();
+		constraints.gridx = 1;
+		constraints.gridy = 2;
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.weightx = 1.0;
+		constraints.insets = new Insets(10, 5, 0, 10);
+
+		add(queryFilter, constraints);
+	}
+
 	private void initializeSearchButton() {
 		ResponsiveButton searchButton = new ResponsiveButton(searchText);
 		searchButton.addActionListener(e -> search());
 
 		GridBagConstraints constraints = new GridBagConstraints();
 		constraints.gridx = 0;
-		constraints.gridy = 2;
+		constraints.gridy = 3;
 		constraints.gridwidth = 2;
 		constraints.fill = GridBagConstraints.HORIZONTAL;
 		constraints.insets = new Insets(10, 10, 5, 10);
@@ -153,7 +230,7 @@ public class SearchFormPanel extends JPanel {
 
 		GridBagConstraints constraints = new GridBagConstraints();
 		constraints.gridx = 0;
-		constraints.gridy = 3;
+		constraints.gridy = 4;
 		constraints.gridwidth = 2;
 		constraints.weightx = 1.0;
 		constraints.weighty = 1.0;
@@ -175,7 +252,11 @@ public class SearchFormPanel extends JPanel {
 				titleFilter.reset();
 				interpreterFilter.reset();
 				favouriteFilter.setSelected(false);
+				fuzzyFilter.setSelected(false);
+				queryFilter.reset();
 				styleFilter.setSelectedItem(SongRepository.ALL_STYLES);
+				resultFacets = Optional.empty();
+				refreshFacets();
 			}
 
 			@Override
@@ -186,6 +267,8 @@ public class SearchFormPanel extends JPanel {
 			@Override
 			public void onFavouriteSongsUpdate(UserStatusEvent e) {
 				// Más dinámmico actualizar búsquedas en cambios de favoritos.
+				// Los recuentos cuentan las favoritas al consultarlos.
+				updateFacetLabels();
 				search();
 			}
 		});
@@ -196,20 +279,58 @@ public class SearchFormPanel extends JPanel {
 			public void onSongLoad(SongStatusEvent e) {
 				if (e.isFailed())
 					return;
-				e.getSongs().forEach(s -> styleFilter.addItem(s.getStyle()));
+				DefaultComboBoxModel<String> model = (DefaultComboBoxModel<String>) styleFilter.getModel();
+				e.getSongs().stream().map(s -> s.getStyle()).distinct().filter(s -> model.getIndexOf(s) < 0)
+						.forEach(styleFilter::addItem);
+				refreshFacets();
 			}
 
 			@Override
 			public void onSongDelete(SongStatusEvent e) {
 				if (e.isFailed())
 					return;
-				e.getSongs().forEach(s -> styleFilter.removeItem(s.getStyle()));
+				refreshFacets();
+				// Sólo se quitan los estilos que se han quedado sin canciones.
+				e.getSongs().stream().map(s -> s.getStyle()).distinct()
+						.filter(s -> !s.equals(SongRepository.ALL_STYLES) && catalogFacets.getStyleCount(s) == 0)
+						.forEach(styleFilter::removeItem);
 				styleFilter.setSelectedItem(SongRepository.ALL_STYLES);
 			}
+
+			@Override
+			public void onSongSearch(SongStatusEvent e) {
+				resultFacets = e.isFailed() ? Optional.empty() : e.getFacets();
+				updateFacetLabels();
+			}
 		});
 	}
 
+	private void refreshFacets() {
+		catalogFacets = Controller.INSTANCE.getFacets();
+		updateFacetLabels();
+	}
+
+	private void updateFacetLabels() {
+		int favourites = Controller.INSTANCE.getFavouriteCount(resultFacets.orElse(catalogFacets));
+		favouriteFilter.setText(String.format(countFormat, favouriteText, favourites));
+		styleFilter.repaint();
+	}
+
+	private int styleCount(String style) {
+		// Con el comodín seleccionado el resultado indica cuántas canciones
+		// quedarían al elegir cada estilo. En otro caso se muestra el catálogo.
+		boolean narrowing = resultFacets.isPresent()
+				&& SongRepository.ALL_STYLES.equals(styleFilter.getSelectedItem());
+		return narrowing ? resultFacets.get().getStyleCount(style) : catalogFacets.getStyleCount(style);
+	}
+
 	private void search() {
+		// La consulta avanzada sustituye al resto de filtros.
+		if (!queryFilter.isEmpty()) {
+			Controller.INSTANCE.querySongs(queryFilter.getText());
+			return;
+		}
+
 		Optional<String> name = Optional.empty();
 		if (!titleFilter.isEmpty())
 			name = Optional.ofNullable(titleFilter.getText());
@@ -219,6 +340,9 @@ public class SearchFormPanel extends JPanel {
 		Optional<String> style = Optional.ofNullable((String) styleFilter.getSelectedItem());
 		boolean favourite = favouriteFilter.isSelected();
 
-		Controller.INSTANCE.searchSongs(name, author, style, favourite);
+		if (fuzzyFilter.isSelected())
+			Controller.INSTANCE.fuzzySearchSongs(name, author, style, favourite);
+		else
+			Controller.INSTANCE.searchSongs(name, author, style, favourite);
 	}
 }
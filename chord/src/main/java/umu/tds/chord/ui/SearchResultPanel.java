@@ -2,14 +2,17 @@ package umu.tds.chord.ui;
 
 import java.awt.BorderLayout;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
 
+import umu.tds.chord.controller.Controller;
 import umu.tds.chord.ui.SongTable.Mode;
 
 public class SearchResultPanel extends JPanel {
 
 	private static final long serialVersionUID = 1281782779628796147L;
+	private static final int prefetchRows = 20;
 
 	public SearchResultPanel() {
 		setLayout(new BorderLayout(10, 10));
@@ -21,5 +24,13 @@ public class SearchResultPanel extends JPanel {
 		JScrollPane scrollPane = new JScrollPane(table, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
 				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 		add(scrollPane, BorderLayout.CENTER);
+
+		// Solicitar más resultados al acercarse al final de la tabla.
+		JScrollBar bar = scrollPane.getVerticalScrollBar();
+		bar.addAdjustmentListener(e -> {
+			int remaining = bar.getMaximum() - (bar.getValue() + bar.getVisibleAmount());
+			if (table.hasMoreSongs() && remaining <= table.getRowHeight() * prefetchRows)
+				Controller.INSTANCE.nextSearchPage();
+		});
 	}
 }
@@ -108,6 +108,10 @@ public class SongTable extends JTable {
 		data.setList(songs);
 	}
 
+	public boolean hasMoreSongs() {
+		return data.hasMore;
+	}
+
 	private final class SongTableModel extends AbstractTableModel {
 
 		private static final long serialVersionUID = 7161104567245200626L;
@@ -115,10 +119,12 @@ public class SongTable extends JTable {
 
 		private List<Song> songs;
 		private Set<Song> favourites;
+		private boolean hasMore;
 
 		private SongTableModel() {
 			this.songs = new ArrayList<>();
 			this.favourites = new HashSet<>();
+			this.hasMore = false;
 		}
 
 		@Override
@@ -274,8 +280,22 @@ public class SongTable extends JTable {
 
 				@Override
 				public void onSongSearch(SongStatusEvent e) {
-					if (!e.isFailed())
+					if (!e.isFailed()) {
+						hasMore = e.hasMore();
 						setList(e.getSongs());
+					}
+				}
+
+				@Override
+				public void onSongSearchPage(SongStatusEvent e) {
+					if (e.isFailed())
+						return;
+					// Añadir la página al final de los resultados.
+					int first = songs.size();
+					hasMore = e.hasMore();
+					songs.addAll(e.getSongs());
+					if (songs.size() > first)
+						fireTableRowsInserted(first, songs.size() - 1);
 				}
 			});
 
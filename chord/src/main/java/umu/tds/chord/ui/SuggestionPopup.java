@@ -0,0 +1,119 @@
+package umu.tds.chord.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyEvent;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+public class SuggestionPopup extends JPopupMenu {
+
+	private static final long serialVersionUID = -2310877166530425317L;
+	private static final String hideAction = "hideSuggestions";
+
+	private final TextField field;
+	private final Function<String, List<String>> provider;
+	// Evita volver a sugerir al escribir una sugerencia en el campo.
+	private boolean applying;
+
+	public SuggestionPopup(TextField field, Function<String, List<String>> provider) {
+		this.field = field;
+		this.provider = provider;
+		this.applying = false;
+
+		// El campo conserva el foco mientras se muestran las sugerencias.
+		setFocusable(false);
+
+		initializeDocumentListener();
+		initializeFocusListener();
+		initializeActionMap();
+	}
+
+	private void initializeDocumentListener() {
+		field.getDocument().addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				// No se muestra el menú mientras se modifica el documento.
+				SwingUtilities.invokeLater(SuggestionPopup.this::refresh);
+			}
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				removeUpdate(e);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				removeUpdate(e);
+			}
+		});
+	}
+
+	private void initializeFocusListener() {
+		field.addFocusListener(new FocusAdapter() {
+
+			@Override
+			public void focusLost(FocusEvent e) {
+				setVisible(false);
+			}
+		});
+	}
+
+	private void initializeActionMap() {
+		field.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), hideAction);
+		field.getActionMap().put(hideAction, new AbstractAction() {
+
+			private static final long serialVersionUID = 4937460297839432215L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setVisible(false);
+			}
+		});
+	}
+
+	private void refresh() {
+		if (applying || field.isEmpty() || !field.isFocusOwner()) {
+			setVisible(false);
+			return;
+		}
+
+		String text = field.getText();
+		List<String> suggestions = provider.apply(text);
+
+		// No sugerir lo que ya está escrito.
+		if (suggestions.isEmpty() || suggestions.size() == 1 && suggestions.get(0).equalsIgnoreCase(text)) {
+			setVisible(false);
+			return;
+		}
+
+		removeAll();
+		suggestions.forEach(s -> {
+			JMenuItem item = new JMenuItem(s);
+			item.addActionListener(e -> apply(s));
+			add(item);
+		});
+		pack();
+		show(field, 0, field.getHeight());
+		field.requestFocusInWindow();
+	}
+
+	private void apply(String suggestion) {
+		applying = true;
+		field.setText(suggestion);
+		// Las actualizaciones pendientes del cambio se ejecutan antes.
+		SwingUtilities.invokeLater(() -> applying = false);
+		setVisible(false);
+	}
+}
@@ -0,0 +1,32 @@
+package umu.tds.chord.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Clase de utilidad para la normalización de cadenas de texto utilizadas en
+ * búsquedas.
+ */
+public final class StringNormalizer {
+
+	private static final Pattern diacritics = Pattern.compile("\\p{M}+");
+	private static final Pattern whitespace = Pattern.compile("\\s+");
+	private static final String space = " ";
+
+	/**
+	 * Normaliza la cadena dada para comparaciones de búsqueda. Se pasa a
+	 * minúsculas, se eliminan los acentos y diacríticos y se reducen las
+	 * secuencias de espacios en blanco a un único espacio, eliminando los de los
+	 * extremos.
+	 *
+	 * @param s Cadena de texto que se desea normalizar.
+	 *
+	 * @return Cadena normalizada.
+	 */
+	public static String normalize(String s) {
+		String folded = Normalizer.normalize(s, Normalizer.Form.NFD);
+		folded = diacritics.matcher(folded).replaceAll("");
+		return whitespace.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(space).strip();
+	}
+}
@@ -4,8 +4,12 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import umu.tds.chord.dao.tds.TDSLoaderTest;
+import umu.tds.chord.model.RepositorySnapshotTest;
+
 @RunWith(Suite.class)
-@SuiteClasses({ ControllerTest.class, SongRepositoryTest.class, UserRepositoryTest.class, UserTest.class })
+@SuiteClasses({ ControllerTest.class, LogDAOTest.class, MemoryDAOTest.class, RepositorySnapshotTest.class,
+		SongRepositoryTest.class, TDSDAOTest.class, TDSLoaderTest.class, UserRepositoryTest.class, UserTest.class })
 public class AllTests {
 
 }
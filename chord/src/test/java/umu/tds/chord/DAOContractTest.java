@@ -0,0 +1,132 @@
+package umu.tds.chord;
+
+import static org.junit.Assert.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+
+/**
+ * Pruebas comunes a todas las familias de adaptadores DAO. Cada familia las
+ * ejecuta mediante una subclase que proporciona sus adaptadores.
+ */
+public abstract class DAOContractTest {
+
+	private static final String testAuthor = "testAuthor";
+	private static final String testStyle = "testStyle";
+	private static final String testPath = "testPath";
+	private static final String testPassword = "testPassword";
+	private static final Date birthday = Date.from(Instant.now());
+
+	/**
+	 * Obtiene el adaptador de canciones de la familia probada.
+	 *
+	 * @return Adaptador de canciones.
+	 */
+	protected abstract DAO<Song.Internal> getSongDAO();
+
+	/**
+	 * Obtiene el adaptador de playlists de la familia probada.
+	 *
+	 * @return Adaptador de playlists.
+	 */
+	protected abstract DAO<Playlist.Internal> getPlaylistDAO();
+
+	/**
+	 * Obtiene el adaptador de usuarios de la familia probada.
+	 *
+	 * @return Adaptador de usuarios.
+	 */
+	protected abstract DAO<User.Internal> getUserDAO();
+
+	private static Song.Internal newSong(String name) {
+		return new Song.Builder(name).author(testAuthor).path(testPath).style(testStyle).build().get().asMut();
+	}
+
+	@Test
+	public void testRegisterSong() {
+		Song.Internal s = newSong("testRegisterSong");
+		assertEquals(true, getSongDAO().register(s));
+		assertEquals(false, getSongDAO().register(s));
+		assertEquals(true, s.isRegistered());
+
+		// Se recupera la misma instancia.
+		assertSame(s, getSongDAO().recover(s.getId()).get());
+		assertEquals(true, getSongDAO().recoverAll().contains(s));
+
+		s.addReproduccion();
+		assertEquals(true, getSongDAO().modify(s));
+
+		assertEquals(true, getSongDAO().delete(s));
+		assertEquals(false, getSongDAO().delete(s));
+		assertEquals(true, getSongDAO().recover(s.getId()).isEmpty());
+		s.addReproduccion();
+		assertEquals(false, getSongDAO().modify(s));
+	}
+
+	@Test
+	public void testIds() {
+		Song.Internal s = newSong("testIds");
+		Playlist.Internal p = new Playlist.Builder("testIds").description("").build().get().asMut();
+		getSongDAO().register(s);
+		getPlaylistDAO().register(p);
+
+		// Las ids son únicas entre tipos y no se recuperan con otro adaptador.
+		assertEquals(false, s.getId() == p.getId());
+		assertEquals(true, getPlaylistDAO().recover(s.getId()).isEmpty());
+		assertEquals(true, getSongDAO().recover(p.getId()).isEmpty());
+
+		List<Song.Internal> songs = getSongDAO().registerAll(List.of(newSong("testIds1"), newSong("testIds2")));
+		assertEquals(2, songs.size());
+		assertEquals(songs, getSongDAO().stringToPersistents(DAO.persistentsToString(songs)));
+	}
+
+	@Test
+	public void testUserCascade() {
+		Song.Internal s = newSong("testUserCascade");
+		getSongDAO().register(s);
+		Playlist p = new Playlist.Builder("testUserCascade").description("").songs(List.of(s)).build().get();
+		User.Internal u = new User.Builder("testUserCascade").password(testPassword).birthday(birthday)
+				.playlists(new ArrayList<>(List.of(p))).build().get().asMut();
+
+		// Registro en cascada de las playlists.
+		assertEquals(true, getUserDAO().register(u));
+		assertEquals(true, p.asMut().isRegistered());
+		assertSame(u, getUserDAO().recover(u.getId()).get());
+
+		// Las playlists eliminadas del usuario se eliminan al modificarlo.
+		Playlist q = new Playlist.Builder("testUserCascade2").description("").build().get();
+		u.addPlaylist(q);
+		u.removePlaylist(p);
+		u.addFavouriteSong(s);
+		assertEquals(true, getUserDAO().modify(u));
+		assertEquals(true, q.asMut().isRegistered());
+		assertEquals(true, getPlaylistDAO().recover(p.asMut().getId()).isEmpty());
+
+		// Eliminación en cascada de las playlists.
+		assertEquals(true, getUserDAO().delete(u));
+		assertEquals(true, getPlaylistDAO().recover(q.asMut().getId()).isEmpty());
+		assertEquals(true, getUserDAO().recover(u.getId()).isEmpty());
+	}
+
+	@Test
+	public void testIntern() {
+		Song.Internal s = newSong("testIntern");
+		getSongDAO().register(s);
+
+		// Otra instancia con la misma id se sustituye por la de la familia.
+		Song.Internal copy = newSong("testIntern");
+		copy.registerId(s.getId());
+		assertSame(s, getSongDAO().intern(copy));
+		assertSame(s, getSongDAO().recover(s.getId()).get());
+		getSongDAO().delete(s);
+	}
+}
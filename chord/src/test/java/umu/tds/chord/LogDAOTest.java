@@ -0,0 +1,38 @@
+package umu.tds.chord;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.BeforeClass;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.log.LogPlaylistDAO;
+import umu.tds.chord.dao.log.LogSongDAO;
+import umu.tds.chord.dao.log.LogUserDAO;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+
+public class LogDAOTest extends DAOContractTest {
+
+	@BeforeClass
+	public static void beforeAll() throws IOException {
+		// Registros de pruebas en un directorio temporal.
+		System.setProperty("chord.dao.log.dir", Files.createTempDirectory("chord-log").toString());
+	}
+
+	@Override
+	protected DAO<Song.Internal> getSongDAO() {
+		return LogSongDAO.INSTANCE;
+	}
+
+	@Override
+	protected DAO<Playlist.Internal> getPlaylistDAO() {
+		return LogPlaylistDAO.INSTANCE;
+	}
+
+	@Override
+	protected DAO<User.Internal> getUserDAO() {
+		return LogUserDAO.INSTANCE;
+	}
+}
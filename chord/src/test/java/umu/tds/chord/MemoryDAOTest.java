@@ -0,0 +1,27 @@
+package umu.tds.chord;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.memory.MemoryPlaylistDAO;
+import umu.tds.chord.dao.memory.MemorySongDAO;
+import umu.tds.chord.dao.memory.MemoryUserDAO;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+
+public class MemoryDAOTest extends DAOContractTest {
+
+	@Override
+	protected DAO<Song.Internal> getSongDAO() {
+		return MemorySongDAO.INSTANCE;
+	}
+
+	@Override
+	protected DAO<Playlist.Internal> getPlaylistDAO() {
+		return MemoryPlaylistDAO.INSTANCE;
+	}
+
+	@Override
+	protected DAO<User.Internal> getUserDAO() {
+		return MemoryUserDAO.INSTANCE;
+	}
+}
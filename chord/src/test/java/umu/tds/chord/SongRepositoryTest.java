@@ -2,13 +2,24 @@ package umu.tds.chord;
 
 import static org.junit.Assert.*;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import umu.tds.chord.model.SearchFacets;
+import umu.tds.chord.model.SearchPage;
 import umu.tds.chord.model.Song;
+import umu.tds.chord.model.SongQuery;
 import umu.tds.chord.model.SongRepository;
 
 public class SongRepositoryTest {
@@ -76,4 +87,374 @@ public class SongRepositoryTest {
 		assertEquals(false, res5);
 	}
 
+	@Test
+	public void testGetSearchSubstring() {
+		boolean res1 = SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle).isPresent();
+		assertEquals(true, res1);
+		int size1 = SongRepository.INSTANCE.getSearch(Optional.of("TSONG"), Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size1);
+		int size2 = SongRepository.INSTANCE.getSearch(Optional.of("s"), Optional.of("auth"), Optional.empty()).size();
+		assertEquals(1, size2);
+		int size3 = SongRepository.INSTANCE.getSearch(Optional.of("songs"), Optional.empty(), Optional.empty()).size();
+		assertEquals(0, size3);
+		int size4 = SongRepository.INSTANCE.getSearch(Optional.empty(), Optional.of("Author"), Optional.empty()).size();
+		assertEquals(1, size4);
+	}
+
+	@Test
+	public void testStyleCount() {
+		int count1 = SongRepository.INSTANCE.getStyleCount(testStyle);
+		assertEquals(0, count1);
+		SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle);
+		SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath + "2", testStyle);
+		int count2 = SongRepository.INSTANCE.getStyleCount(testStyle);
+		assertEquals(2, count2);
+		int size1 = SongRepository.INSTANCE.getSearch(Optional.empty(), Optional.empty(), Optional.of(testStyle))
+				.size();
+		assertEquals(2, size1);
+		boolean res1 = SongRepository.INSTANCE.removeSong(testSong);
+		assertEquals(true, res1);
+		int count3 = SongRepository.INSTANCE.getStyleCount(testStyle);
+		assertEquals(1, count3);
+		boolean res2 = SongRepository.INSTANCE.existStyle(testStyle);
+		assertEquals(true, res2);
+	}
+
+	@Test
+	public void testGetSearchNormalized() {
+		boolean res1 = SongRepository.INSTANCE.addSong("Vié en  rose", "Édith Piaf", testPath, testStyle).isPresent();
+		assertEquals(true, res1);
+		int size1 = SongRepository.INSTANCE.getSearch(Optional.of("vie en rose"), Optional.of("EDITH"), Optional.empty())
+				.size();
+		assertEquals(1, size1);
+		boolean res2 = SongRepository.INSTANCE.existSong("Vié en  rose", "Édith Piaf", testPath, testStyle);
+		assertEquals(true, res2);
+		boolean res3 = SongRepository.INSTANCE.existSong("Vie en rose", "Édith Piaf", testPath, testStyle);
+		assertEquals(false, res3);
+	}
+
+	@Test
+	public void testGetSearchRefinement() {
+		int size1 = SongRepository.INSTANCE.getSearch(Optional.of("test"), Optional.empty(), Optional.empty()).size();
+		assertEquals(0, size1);
+		boolean res1 = SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle).isPresent();
+		assertEquals(true, res1);
+		int size2 = SongRepository.INSTANCE.getSearch(Optional.of("testS"), Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size2);
+		int size3 = SongRepository.INSTANCE.getSearch(Optional.of("testSo"), Optional.empty(), Optional.of(testStyle))
+				.size();
+		assertEquals(1, size3);
+		int size4 = SongRepository.INSTANCE.getSearch(Optional.of("testSox"), Optional.empty(), Optional.of(testStyle))
+				.size();
+		assertEquals(0, size4);
+		int size5 = SongRepository.INSTANCE.getSearch(Optional.of("testSo"), Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size5);
+	}
+
+	@Test
+	public void testGetSearchPage() {
+		SongRepository.INSTANCE.addSong(testSongName + "C", testAuthorName, testPath, testStyle);
+		SongRepository.INSTANCE.addSong(testSongName + "A", testAuthorName, testPath, testStyle);
+		SongRepository.INSTANCE.addSong(testSongName + "B", testAuthorName, testPath, testStyle);
+		SearchPage page1 = SongRepository.INSTANCE.getSearchPage(Optional.empty(), Optional.empty(), Optional.empty(),
+				new BitSet(), false, Optional.empty(), 2);
+		assertEquals(2, page1.getSongs().size());
+		assertEquals(true, page1.hasMore());
+		assertEquals(testSongName + "A", page1.getSongs().get(0).getName());
+		assertEquals(testSongName + "B", page1.getSongs().get(1).getName());
+		SearchPage page2 = SongRepository.INSTANCE.getSearchPage(Optional.empty(), Optional.empty(), Optional.empty(),
+				new BitSet(), false, page1.getCursor(), 2);
+		assertEquals(1, page2.getSongs().size());
+		assertEquals(false, page2.hasMore());
+		assertEquals(testSongName + "C", page2.getSongs().get(0).getName());
+	}
+
+	@Test
+	public void testGetFuzzySearch() {
+		SongRepository.INSTANCE.addSong("La vie en rose", "Edith Piaf", testPath, testStyle);
+		SongRepository.INSTANCE.addSong("La foule", "Edith Piaf", testPath, testStyle);
+		SongRepository.INSTANCE.addSong("Bohemian Rhapsody", "Queen", testPath, testStyle);
+		List<Song> res1 = SongRepository.INSTANCE.getFuzzySearch(Optional.of("la vie en rosse"), Optional.empty(),
+				Optional.empty(), s -> true, 10);
+		assertEquals(1, res1.size());
+		assertEquals("La vie en rose", res1.get(0).getName());
+		int size2 = SongRepository.INSTANCE
+				.getFuzzySearch(Optional.empty(), Optional.of("edit piaff"), Optional.empty(), s -> true, 10).size();
+		assertEquals(2, size2);
+		int size3 = SongRepository.INSTANCE
+				.getFuzzySearch(Optional.empty(), Optional.of("edit piaff"), Optional.empty(), s -> true, 1).size();
+		assertEquals(1, size3);
+		int size4 = SongRepository.INSTANCE
+				.getFuzzySearch(Optional.of("xyz"), Optional.empty(), Optional.empty(), s -> true, 10).size();
+		assertEquals(0, size4);
+	}
+
+	@Test
+	public void testSearchCache() {
+		SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle);
+		Optional<String> name = Optional.of(testSongName);
+		long hits = SongRepository.INSTANCE.getSearchCacheHits();
+		long misses = SongRepository.INSTANCE.getSearchCacheMisses();
+		int size1 = SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size1);
+		int size2 = SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size2);
+		assertEquals(hits + 1, SongRepository.INSTANCE.getSearchCacheHits());
+		assertEquals(misses + 1, SongRepository.INSTANCE.getSearchCacheMisses());
+		// Una canción que no coincide no invalida el resultado.
+		SongRepository.INSTANCE.addSong("other", testAuthorName, testPath, testStyle);
+		SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty());
+		assertEquals(hits + 2, SongRepository.INSTANCE.getSearchCacheHits());
+		// Una canción que coincide sí lo invalida.
+		SongRepository.INSTANCE.addSong(testSongName + "2", testAuthorName, testPath, testStyle);
+		int size3 = SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty()).size();
+		assertEquals(2, size3);
+		assertEquals(misses + 2, SongRepository.INSTANCE.getSearchCacheMisses());
+		SongRepository.INSTANCE.removeSong(testSong);
+		int size4 = SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size4);
+	}
+
+	@Test
+	public void testGetQuerySearch() {
+		Song s1 = SongRepository.INSTANCE.addSong("La vie en rose", "Edith Piaf", testPath, "Folk").get();
+		SongRepository.INSTANCE.addSong("Por una cabeza", "Carlos Gardel", testPath, "Tango");
+		SongRepository.INSTANCE.addSong("Bohemian Rhapsody", "Queen", testPath, "Rock");
+		s1.asMut().addReproduccion();
+		SongRepository.INSTANCE.updateSong(s1);
+		BitSet favourites = new BitSet();
+
+		int size1 = SongRepository.INSTANCE
+				.getQuerySearch(SongQuery.parse("estilo:(tango|FOLK)").get(), favourites).size();
+		assertEquals(2, size1);
+		int size2 = SongRepository.INSTANCE
+				.getQuerySearch(SongQuery.parse("autor:piaf estilo:(Tango|Folk) plays>0").get(), favourites).size();
+		assertEquals(1, size2);
+		int size3 = SongRepository.INSTANCE.getQuerySearch(SongQuery.parse("plays>=1 rose").get(), favourites)
+				.size();
+		assertEquals(1, size3);
+		int size4 = SongRepository.INSTANCE.getQuerySearch(SongQuery.parse("titulo:\"una cabeza\"").get(), favourites)
+				.size();
+		assertEquals(1, size4);
+		int size5 = SongRepository.INSTANCE.getQuerySearch(SongQuery.parse("fav").get(), favourites).size();
+		assertEquals(0, size5);
+		favourites.set(s1.asMut().getId());
+		int size6 = SongRepository.INSTANCE.getQuerySearch(SongQuery.parse("fav").get(), favourites).size();
+		assertEquals(1, size6);
+		int size7 = SongRepository.INSTANCE.getQuerySearch(SongQuery.parse("").get(), favourites).size();
+		assertEquals(3, size7);
+		assertEquals(false, SongQuery.parse("genero:rock").isPresent());
+		assertEquals(false, SongQuery.parse("estilo:(rock").isPresent());
+		assertEquals(false, SongQuery.parse("plays>mucho").isPresent());
+	}
+
+	@Test
+	public void testAddSongs() {
+		SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle);
+		Song existing = new Song.Builder(testSongName).author(testAuthorName).path(testPath).style(testStyle).build()
+				.get();
+		Song s1 = new Song.Builder("s1").author(testAuthorName).path(testPath).style(testStyle).build().get();
+		Song s1Copy = new Song.Builder("s1").author(testAuthorName).path(testPath).style(testStyle).build().get();
+		Song s2 = new Song.Builder("s2").author(testAuthorName).path(testPath).style("otherStyle").build().get();
+		Song blank = new Song.Builder(" ").author(testAuthorName).path(testPath).style(testStyle).build().get();
+
+		List<Song> added = SongRepository.INSTANCE.addSongs(List.of(existing, s1, s1Copy, blank, s2));
+		assertEquals(List.of(s1, s2), added);
+		assertEquals(true, s1.asMut().isRegistered());
+		assertEquals(false, s1Copy.asMut().isRegistered());
+		assertEquals(3, SongRepository.INSTANCE.getSongs().size());
+		assertEquals(true, SongRepository.INSTANCE.existStyle("otherStyle"));
+		assertEquals(1, SongRepository.INSTANCE
+				.getSearch(Optional.of("s2"), Optional.empty(), Optional.empty()).size());
+		assertEquals(0, SongRepository.INSTANCE.addSongs(List.of(s1Copy)).size());
+	}
+
+	@Test
+	public void testAddPlay() {
+		Song s1 = SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle).get();
+		Song copy = new Song.Builder(testSongName).author(testAuthorName).path(testPath).style(testStyle).build()
+				.get();
+		Song other = new Song.Builder("other").author(testAuthorName).path(testPath).style(testStyle).build().get();
+
+		assertEquals(true, SongRepository.INSTANCE.addPlay(s1));
+		assertEquals(true, SongRepository.INSTANCE.addPlay(copy));
+		assertEquals(false, SongRepository.INSTANCE.addPlay(other));
+		assertEquals(2, s1.getReproducciones());
+		int size = SongRepository.INSTANCE.getQuerySearch(SongQuery.parse("plays=2").get(), new BitSet()).size();
+		assertEquals(1, size);
+		assertEquals(true, SongRepository.INSTANCE.checkpointPlays());
+		assertEquals(2, s1.getReproducciones());
+	}
+
+	@Test
+	public void testExistSongs() {
+		SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle);
+		Song other = new Song.Builder("other").author(testAuthorName).path(testPath).style(testStyle).build().get();
+		Set<Song> existing = SongRepository.INSTANCE.existSongs(List.of(testSong, other));
+		assertEquals(1, existing.size());
+		assertEquals(true, existing.contains(testSong));
+		assertEquals(false, existing.contains(other));
+	}
+
+	@Test
+	public void testFacets() {
+		Song s1 = SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle).get();
+		SongRepository.INSTANCE.addSong(testSongName + "2", testAuthorName, testPath, testStyle);
+		SongRepository.INSTANCE.addSong("other", "other", testPath, "otherStyle");
+		BitSet favourites = new BitSet();
+		favourites.set(s1.asMut().getId());
+
+		SearchFacets facets1 = SongRepository.INSTANCE.getFacets();
+		assertEquals(3, facets1.getTotal());
+		assertEquals(2, facets1.getStyleCount(testStyle));
+		assertEquals(1, facets1.getStyleCount("otherStyle"));
+		assertEquals(2, facets1.getAuthorCounts().get(testAuthorName).intValue());
+		assertEquals(1, facets1.getFavouriteCount(favourites));
+		assertEquals(2, SongRepository.INSTANCE.getAuthorCount(testAuthorName));
+
+		SearchPage page = SongRepository.INSTANCE.getSearchPage(Optional.of(testSongName), Optional.empty(),
+				Optional.empty(), favourites, false, Optional.empty(), 10);
+		SearchFacets facets2 = page.getFacets().get();
+		assertEquals(2, facets2.getTotal());
+		assertEquals(0, facets2.getStyleCount("otherStyle"));
+		assertEquals(1, facets2.getFavouriteCount(favourites));
+
+		// Las favoritas se cuentan al consultar el recuento.
+		favourites.clear(s1.asMut().getId());
+		assertEquals(0, facets1.getFavouriteCount(favourites));
+		assertEquals(0, facets2.getFavouriteCount(favourites));
+
+		// El recorrido en paralelo obtiene el mismo recuento.
+		int threshold = SongRepository.INSTANCE.getParallelThreshold();
+		try {
+			SongRepository.INSTANCE.setParallelThreshold(1);
+			SearchFacets parallel = SongRepository.INSTANCE.getQueryPage(SongQuery.parse("").get(), favourites,
+					Optional.empty(), 10).getFacets().get();
+			assertEquals(facets1.getStyleCounts(), parallel.getStyleCounts());
+			assertEquals(facets1.getAuthorCounts(), parallel.getAuthorCounts());
+			assertEquals(3, parallel.getTotal());
+		} finally {
+			SongRepository.INSTANCE.setParallelThreshold(threshold);
+		}
+
+		// Una búsqueda sin filtros que recorre el catálogo desde el cursor
+		// obtiene el recuento del catálogo.
+		SearchPage tail = SongRepository.INSTANCE.getSearchPage(Optional.empty(), Optional.empty(), Optional.empty(),
+				favourites, false, Optional.empty(), 1);
+		assertEquals(1, tail.getSongs().size());
+		assertEquals(3, tail.getFacets().get().getTotal());
+
+		SongRepository.INSTANCE.removeSong(s1);
+		favourites.set(s1.asMut().getId());
+		assertEquals(1, SongRepository.INSTANCE.getAuthorCount(testAuthorName));
+		assertEquals(1, SongRepository.INSTANCE.getFacets().getStyleCount(testStyle));
+		assertEquals(0, SongRepository.INSTANCE.getFacets().getFavouriteCount(favourites));
+	}
+
+	@Test
+	public void testCompletions() {
+		Song s1 = SongRepository.INSTANCE.addSong("La vie en rose", "Edith Piaf", testPath, testStyle).get();
+		SongRepository.INSTANCE.addSong("La foule", "Edith Piaf", testPath, testStyle);
+		SongRepository.INSTANCE.addSong("Lagrimas negras", "Bebo Valdés", testPath, testStyle);
+		List<String> res1 = SongRepository.INSTANCE.getTitleCompletions("la", 10);
+		assertEquals(3, res1.size());
+		s1.asMut().addReproduccion();
+		SongRepository.INSTANCE.updateSong(s1);
+		List<String> res2 = SongRepository.INSTANCE.getTitleCompletions("LA", 1);
+		assertEquals(List.of("La vie en rose"), res2);
+		List<String> res3 = SongRepository.INSTANCE.getTitleCompletions("la f", 10);
+		assertEquals(List.of("La foule"), res3);
+		List<String> res4 = SongRepository.INSTANCE.getAuthorCompletions("edi", 10);
+		assertEquals(List.of("Edith Piaf"), res4);
+		SongRepository.INSTANCE.removeSong(s1);
+		List<String> res5 = SongRepository.INSTANCE.getTitleCompletions("la v", 10);
+		assertEquals(0, res5.size());
+		assertEquals(1, SongRepository.INSTANCE.getAuthorCompletions("edith", 10).size());
+	}
+
+	@Test
+	public void testConcurrentSearch() throws Exception {
+		// Las búsquedas se ejecutan en un hilo de trabajo mientras el catálogo
+		// cambia desde otro hilo.
+		ExecutorService worker = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> searches = worker.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					SongRepository.INSTANCE.getSearch(Optional.of(testSongName), Optional.empty(), Optional.empty());
+					SongRepository.INSTANCE.getSearchPage(Optional.empty(), Optional.of(testAuthorName),
+							Optional.empty(), new BitSet(), false, Optional.empty(), 5);
+				}
+			});
+			for (int i = 0; i < 200; i++) {
+				Song s = SongRepository.INSTANCE.addSong(testSongName + i, testAuthorName, testPath, testStyle).get();
+				if (i % 2 == 0) {
+					SongRepository.INSTANCE.removeSong(s);
+				}
+			}
+			searches.get(30, TimeUnit.SECONDS);
+		} finally {
+			worker.shutdownNow();
+		}
+
+		int size = SongRepository.INSTANCE.getSearch(Optional.of(testSongName), Optional.empty(), Optional.empty())
+				.size();
+		assertEquals(100, size);
+	}
+
+	@Test
+	public void testParallelSearch() {
+		for (int i = 0; i < 300; i++) {
+			SongRepository.INSTANCE.addSong(testSongName + i, testAuthorName + (i % 7), testPath, "style" + (i % 3));
+		}
+		List<SongQuery> queries = List.of(SongQuery.parse("").get(), SongQuery.parse("titulo:song1").get(),
+				SongQuery.parse("estilo:style2 autor:author3").get());
+		BitSet favourites = new BitSet();
+		int threshold = SongRepository.INSTANCE.getParallelThreshold();
+
+		// Los recorridos en paralelo obtienen el mismo resultado, en el mismo
+		// orden, que los secuenciales.
+		try {
+			for (SongQuery query : queries) {
+				SongRepository.INSTANCE.setParallelThreshold(Integer.MAX_VALUE);
+				List<Song> sequential = SongRepository.INSTANCE.getQuerySearch(query, favourites);
+				SongRepository.INSTANCE.setParallelThreshold(1);
+				List<Song> parallel = SongRepository.INSTANCE.getQuerySearch(query, favourites);
+				assertEquals(sequential, parallel);
+			}
+
+			// La copia ordenada del catálogo se reconstruye tras los cambios.
+			int size1 = SongRepository.INSTANCE.getQuerySearch(queries.get(0), favourites).size();
+			assertEquals(300, size1);
+			Song added = SongRepository.INSTANCE.addSong("aaa", testAuthorName, testPath, testStyle).get();
+			List<Song> res2 = SongRepository.INSTANCE.getQuerySearch(queries.get(0), favourites);
+			assertEquals(301, res2.size());
+			assertEquals(added, res2.get(0));
+			SongRepository.INSTANCE.removeSong(added);
+			int size3 = SongRepository.INSTANCE.getQuerySearch(queries.get(0), favourites).size();
+			assertEquals(300, size3);
+		} finally {
+			SongRepository.INSTANCE.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testInterruptedSearch() {
+		SongRepository.INSTANCE.addSong(testSongName, testAuthorName, testPath, testStyle);
+		Optional<String> name = Optional.of(testSongName);
+
+		// Una búsqueda interrumpida se abandona sin guardar su resultado.
+		Thread.currentThread().interrupt();
+		try {
+			SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty());
+			fail();
+		} catch (CancellationException e) {
+		} finally {
+			Thread.interrupted();
+		}
+		long misses = SongRepository.INSTANCE.getSearchCacheMisses();
+		int size = SongRepository.INSTANCE.getSearch(name, Optional.empty(), Optional.empty()).size();
+		assertEquals(1, size);
+		assertEquals(misses + 1, SongRepository.INSTANCE.getSearchCacheMisses());
+	}
+
 }
@@ -0,0 +1,91 @@
+package umu.tds.chord;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Optional;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import beans.Entidad;
+import beans.Propiedad;
+import tds.driver.FactoriaServicioPersistencia;
+import tds.driver.ServicioPersistencia;
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.DAOFactory;
+import umu.tds.chord.dao.DAOFactory.DAOImplementation;
+import umu.tds.chord.model.Playlist;
+import umu.tds.chord.model.Song;
+import umu.tds.chord.model.User;
+
+public class TDSDAOTest extends DAOContractTest {
+
+	private static final String reproducciones = "REPRODUCCIONES";
+	private static final String description = "DESCRIPTION";
+
+	@BeforeClass
+	public static void beforeAll() {
+		// Requiere el servidor de persistencia. Sólo se ejecuta con la familia
+		// TDS configurada, por ejemplo mediante el perfil tds.
+		assumeTrue(DAOFactory.getInstance().getImplementation().equals(Optional.of(DAOImplementation.TDS_FAMILY)));
+	}
+
+	@Override
+	protected DAO<Song.Internal> getSongDAO() {
+		return DAOFactory.getInstance().getSongDAO();
+	}
+
+	@Override
+	protected DAO<Playlist.Internal> getPlaylistDAO() {
+		return DAOFactory.getInstance().getPlaylistDAO();
+	}
+
+	@Override
+	protected DAO<User.Internal> getUserDAO() {
+		return DAOFactory.getInstance().getUserDAO();
+	}
+
+	@Test
+	public void testUnchangedSongNotWritten() {
+		ServicioPersistencia persistence = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		Song.Internal s = new Song.Builder("testUnchangedSong").author("testAuthor").path("testPath")
+				.style("testStyle").build().get().asMut();
+		getSongDAO().register(s);
+
+		// Sólo se escribe la propiedad cambiada.
+		s.addReproduccion();
+		assertEquals(true, getSongDAO().modify(s));
+		assertEquals("1", property(persistence.recuperarEntidad(s.getId()), reproducciones));
+
+		// Sin cambios no se consulta ni se escribe la entidad, por lo que la
+		// modificación no detecta que se ha eliminado.
+		persistence.borrarEntidad(persistence.recuperarEntidad(s.getId()));
+		assertEquals(true, getSongDAO().modify(s));
+		s.addReproduccion();
+		assertEquals(false, getSongDAO().modify(s));
+	}
+
+	@Test
+	public void testUnchangedPlaylistNotWritten() {
+		ServicioPersistencia persistence = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		Playlist.Internal p = new Playlist.Builder("testUnchangedPlaylist").description("").build().get().asMut();
+		getPlaylistDAO().register(p);
+
+		// Sólo se escribe la propiedad cambiada.
+		p.setDescription("testDescription");
+		assertEquals(true, getPlaylistDAO().modify(p));
+		assertEquals("testDescription", property(persistence.recuperarEntidad(p.getId()), description));
+
+		// Sin cambios no se consulta ni se escribe la entidad.
+		persistence.borrarEntidad(persistence.recuperarEntidad(p.getId()));
+		assertEquals(true, getPlaylistDAO().modify(p));
+		p.setDescription("");
+		assertEquals(false, getPlaylistDAO().modify(p));
+	}
+
+	private static String property(Entidad entity, String name) {
+		return entity.getPropiedades().stream().filter(p -> p.getNombre().equals(name)).map(Propiedad::getValor)
+				.findFirst().orElse(null);
+	}
+}
@@ -4,6 +4,10 @@ import static org.junit.Assert.*;
 
 import java.time.Instant;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -12,6 +16,7 @@ import org.junit.Test;
 
 import umu.tds.chord.model.Playlist;
 import umu.tds.chord.model.PlaylistFactory;
+import umu.tds.chord.model.User;
 import umu.tds.chord.model.UserRepository;
 
 public class UserRepositoryTest {
@@ -112,4 +117,66 @@ public class UserRepositoryTest {
 			assertEquals(0, res8);
 		});
 	}
+
+	@Test
+	public void testFlush() {
+		UserRepository.INSTANCE.getUser(persistentTestUsername, persistentTestPassword).ifPresent(u -> {
+			// Varias actualizaciones seguidas se escriben en una sola.
+			u.asMut().addPlaylist(testPlaylist);
+			boolean res1 = UserRepository.INSTANCE.updateUser(u);
+			assertEquals(true, res1);
+			u.asMut().removePlaylist(testPlaylist);
+			boolean res2 = UserRepository.INSTANCE.updateUser(u);
+			assertEquals(true, res2);
+			boolean res3 = UserRepository.INSTANCE.flush();
+			assertEquals(true, res3);
+		});
+		boolean res4 = UserRepository.INSTANCE.getUser(persistentTestUsername, persistentTestPassword).isPresent();
+		assertEquals(true, res4);
+		// Sin actualizaciones pendientes no hay nada que escribir.
+		boolean res5 = UserRepository.INSTANCE.flush();
+		assertEquals(true, res5);
+	}
+
+	@Test
+	public void testConcurrentFlush() throws Exception {
+		User u = UserRepository.INSTANCE.getUser(persistentTestUsername, persistentTestPassword).get();
+		Playlist playlist = PlaylistFactory.createPlaylist("ConcurrentPlaylist", "TestDescription").get();
+		u.asMut().addPlaylist(playlist);
+		assertEquals(true, UserRepository.INSTANCE.updateUser(u) && UserRepository.INSTANCE.flush());
+
+		// El usuario y su playlist se modifican mientras se escriben.
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> updates = executor.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					Playlist other = PlaylistFactory.createPlaylist("Playlist" + i, "TestDescription").get();
+					u.asMut().addPlaylist(other);
+					playlist.asMut().setName("ConcurrentPlaylist" + i);
+					u.asMut().setPremium(i % 2 == 0);
+					UserRepository.INSTANCE.updateUser(u);
+					u.asMut().removePlaylist(other);
+					UserRepository.INSTANCE.updateUser(u);
+				}
+			});
+			while (!updates.isDone()) {
+				assertEquals(true, UserRepository.INSTANCE.flush());
+			}
+			updates.get(30, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// Tras la última escritura el usuario sigue en el repositorio con su
+		// estado final.
+		assertEquals(true, UserRepository.INSTANCE.flush());
+		User res1 = UserRepository.INSTANCE.getUser(persistentTestUsername, persistentTestPassword).get();
+		assertSame(u, res1);
+		assertEquals(1, res1.getPlaylists().size());
+		assertEquals("ConcurrentPlaylist199", res1.getPlaylist(0).getName());
+		assertEquals(false, res1.isPremium());
+
+		u.asMut().removePlaylist(playlist);
+		assertEquals(true, UserRepository.INSTANCE.updateUser(u) && UserRepository.INSTANCE.flush());
+	}
 }
@@ -4,6 +4,13 @@ import static org.junit.Assert.*;
 
 import java.time.Instant;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -66,6 +73,20 @@ public class UserTest {
 		assertEquals(false, user.getFavouriteSongs().contains(song));
 	}
 	
+	@Test
+	public void testFavouriteIds() {
+		Song registered = new Song.Builder(songName).author(testAuthor).path(testPath + "2").style(testStyle).build()
+				.get();
+		registered.asMut().registerId(42);
+		assertEquals(false, user.isFavourite(registered));
+		user.asMut().addFavouriteSong(registered);
+		assertEquals(true, user.isFavourite(registered));
+		assertEquals(true, user.getFavouriteIds().get(42));
+		user.asMut().removeFavouriteSong(registered);
+		assertEquals(false, user.isFavourite(registered));
+		assertEquals(0, user.getFavouriteIds().cardinality());
+	}
+	
 	@Test
 	public void testRecentSong() {
 		assertEquals(0, user.getRecentSongs().size());
@@ -103,4 +124,87 @@ public class UserTest {
 		user.asMut().setDiscount(DiscountFactory.createDiscount(Type.TEMPORARY));
 		assertEquals(DiscountFactory.Type.TEMPORARY, user.getDiscount().getType());
 	}
+
+	@Test
+	public void testChanges() {
+		User u = new User.Builder(username).password(pass).birthday(birth).build().get();
+		Playlist p = new Playlist.Builder(playlistName).description(playlistDesc).build().get();
+		assertEquals(0, u.asMut().takeChanges().size());
+
+		u.asMut().setPremium(false);
+		assertEquals(0, u.asMut().takeChanges().size());
+		u.asMut().setPremium(true);
+		u.asMut().addFavouriteSong(song);
+		u.asMut().addFavouriteSong(song);
+		assertEquals(EnumSet.of(User.Internal.Field.PREMIUM, User.Internal.Field.FAVOURITE_SONGS),
+				u.asMut().takeChanges());
+		assertEquals(0, u.asMut().takeChanges().size());
+
+		u.asMut().addPlaylist(p);
+		u.asMut().removeRecentSong(song);
+		Set<User.Internal.Field> changes = u.asMut().takeChanges();
+		assertEquals(EnumSet.of(User.Internal.Field.PLAYLISTS), changes);
+		u.asMut().restoreChanges(changes);
+		assertEquals(changes, u.asMut().takeChanges());
+
+		p.asMut().addSong(song);
+		p.asMut().removeSong(song);
+		p.asMut().removeSong(song);
+		assertEquals(EnumSet.of(Playlist.Internal.Field.SONGS), p.asMut().takeChanges());
+		assertEquals(0, u.asMut().takeChanges().size());
+	}
+
+	@Test
+	public void testReferenceLoader() {
+		User u = new User.Builder(username).password(pass).birthday(birth).build().get();
+		Playlist p = new Playlist.Builder(playlistName).description(playlistDesc).build().get();
+		Song s = registeredSong(songName, 1);
+		p.asMut().registerId(2);
+		u.asMut().setPremium(true);
+		u.asMut().setReferenceLoader(new User.References(List.of(2), List.of(), List.of(1)), l -> {
+			l.addPlaylist(p);
+			l.addFavouriteSong(s);
+		});
+		assertEquals(false, u.asMut().isResolved());
+		assertEquals(List.of(2), u.asMut().getUnresolvedReferences().get().getPlaylistIds());
+
+		// El primer acceso resuelve las referencias sin marcarlas como cambios.
+		assertEquals(1, u.getPlaylists().size());
+		assertEquals(true, u.asMut().isResolved());
+		assertEquals(true, u.asMut().getUnresolvedReferences().isEmpty());
+		assertEquals(true, u.getFavouriteSongs().contains(s));
+		assertEquals(EnumSet.of(User.Internal.Field.PREMIUM), u.asMut().takeChanges());
+	}
+
+	@Test
+	public void testReferenceLoaderDeletedSong() {
+		User u = new User.Builder(username).password(pass).birthday(birth).build().get();
+		Song kept = registeredSong(songName, 1);
+		Song deleted = registeredSong(songName + "2", 2);
+		Map<Integer, Song> catalog = new HashMap<>(Map.of(1, kept, 2, deleted));
+		User.References references = new User.References(List.of(), List.of(2, 1), List.of(1, 2));
+		u.asMut().setReferenceLoader(references, l -> {
+			for (int i = references.getRecentSongIds().size() - 1; i >= 0; i--) {
+				Optional.ofNullable(catalog.get(references.getRecentSongIds().get(i))).ifPresent(l::addRecentSong);
+			}
+			references.getFavouriteSongIds().stream().map(catalog::get).filter(Objects::nonNull)
+					.forEach(l::addFavouriteSong);
+		});
+
+		// La canción se elimina mientras el usuario no está resuelto, por lo que
+		// sus ids guardadas quedan obsoletas.
+		catalog.remove(2);
+
+		// Al resolverse se marcan para escribir los campos con ids obsoletas.
+		assertEquals(List.of(kept), u.getRecentSongs());
+		assertEquals(Set.of(kept), u.getFavouriteSongs());
+		assertEquals(EnumSet.of(User.Internal.Field.RECENT_SONGS, User.Internal.Field.FAVOURITE_SONGS),
+				u.asMut().takeChanges());
+	}
+
+	private static Song registeredSong(String name, int id) {
+		Song s = new Song.Builder(name).author(testAuthor).path(testPath).style(testStyle).build().get();
+		s.asMut().registerId(id);
+		return s;
+	}
 }
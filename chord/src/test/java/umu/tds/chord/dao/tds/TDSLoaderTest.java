@@ -0,0 +1,74 @@
+package umu.tds.chord.dao.tds;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import beans.Entidad;
+import beans.Propiedad;
+import umu.tds.chord.model.Song;
+
+public class TDSLoaderTest {
+
+	private static final int entityCount = 600;
+	private static final int firstId = 1000000;
+	private static final String songEntityType = "SONG_ENTITY_TYPE";
+
+	private List<Entidad> entities;
+
+	@Before
+	public void before() {
+		entities = new ArrayList<>(entityCount);
+		for (int i = 0; i < entityCount; i++) {
+			Entidad e = new Entidad();
+			e.setId(firstId + i);
+			e.setNombre(songEntityType);
+			e.setPropiedades(Arrays.asList(new Propiedad("NAME", "song" + i), new Propiedad("AUTHOR", "author" + i % 7),
+					new Propiedad("PATH", "path" + i), new Propiedad("STYLE", "style" + i % 3),
+					new Propiedad("REPRODUCCIONES", String.valueOf(i))));
+			entities.add(e);
+		}
+	}
+
+	@After
+	public void after() {
+		entities.forEach(e -> TDSPoolDAO.getPersistent(e.getId()).ifPresent(TDSPoolDAO::removePersistent));
+	}
+
+	@Test
+	public void testRecoverAll() {
+		// Las canciones se construyen en el orden de las entidades a partir de
+		// sus propiedades.
+		List<Song.Internal> recovered = TDSLoader.recoverAll(entities, TDSSongDAO.INSTANCE::fromEntity);
+		assertEquals(entityCount, recovered.size());
+		for (int i = 0; i < entityCount; i++) {
+			Song.Internal s = recovered.get(i);
+			assertEquals(firstId + i, s.getId());
+			assertEquals("song" + i, s.getName());
+			assertEquals("author" + i % 7, s.getAuthor());
+			assertEquals("path" + i, s.getPath());
+			assertEquals("style" + i % 3, s.getStyle());
+			assertEquals(i, s.getReproducciones());
+			assertEquals(true, s.takeChanges().isEmpty());
+
+			// Cada canción recuperada es la instancia de la pool.
+			assertSame(s, TDSPoolDAO.getPersistent(s.getId()).get());
+		}
+
+		// Con las canciones ya en la pool se obtienen sus instancias.
+		List<Song.Internal> pooled = TDSLoader.recoverAll(entities, TDSSongDAO.INSTANCE::fromEntity);
+		for (int i = 0; i < entityCount; i++) {
+			assertSame(recovered.get(i), pooled.get(i));
+		}
+
+		// Las entidades de otro tipo se ignoran.
+		entities.get(0).setNombre("PLAYLIST_ENTITY_TYPE");
+		assertEquals(entityCount - 1, TDSLoader.recoverAll(entities, TDSSongDAO.INSTANCE::fromEntity).size());
+	}
+}
@@ -0,0 +1,268 @@
+package umu.tds.chord.model;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import umu.tds.chord.dao.DAO;
+import umu.tds.chord.dao.DAOFactory;
+
+public class RepositorySnapshotTest {
+
+	private static final String snapshotName = "repository.snapshot";
+	private static final long firstGeneration = 1;
+	private static final int songId = 1;
+	private static final int playlistId = 2;
+	private static final int userId = 3;
+	private static final int unresolvedId = 4;
+	private static final int unresolvedPlaylistId = 5;
+
+	/**
+	 * Adaptador con una pool en memoria. Simula la pool de una familia DAO.
+	 */
+	private static final class PoolDAO<T extends Persistent> implements DAO<T> {
+
+		private final Map<Integer, T> pool = new ConcurrentHashMap<>();
+
+		@Override
+		public Optional<T> recover(int id) {
+			return Optional.ofNullable(pool.get(id));
+		}
+
+		@Override
+		public List<T> recoverAll() {
+			return List.copyOf(pool.values());
+		}
+
+		@Override
+		public T intern(T t) {
+			T pooled = pool.putIfAbsent(t.getId(), t);
+			return pooled != null ? pooled : t;
+		}
+	}
+
+	/**
+	 * Factoría con marca de generación y pools propias, independiente de la
+	 * familia DAO configurada.
+	 */
+	private static final class SnapshotFactory extends DAOFactory {
+
+		private final PoolDAO<Playlist.Internal> playlistDAO = new PoolDAO<>();
+		private final PoolDAO<Song.Internal> songDAO = new PoolDAO<>();
+		private final PoolDAO<User.Internal> userDAO = new PoolDAO<>();
+		private long generation;
+
+		private SnapshotFactory(long generation) {
+			this.generation = generation;
+		}
+
+		@Override
+		public Optional<Long> getGeneration() {
+			return Optional.of(generation);
+		}
+
+		@Override
+		public boolean setGeneration(long generation) {
+			this.generation = generation;
+			return true;
+		}
+
+		@Override
+		public DAO<Playlist.Internal> getPlaylistDAO() {
+			return playlistDAO;
+		}
+
+		@Override
+		public DAO<Song.Internal> getSongDAO() {
+			return songDAO;
+		}
+
+		@Override
+		public DAO<User.Internal> getUserDAO() {
+			return userDAO;
+		}
+	}
+
+	private Path directory;
+	private Path path;
+	private Song.Internal song;
+	private User.Internal user;
+	private User.Internal unresolved;
+	private boolean resolved;
+
+	@Before
+	public void before() throws IOException {
+		directory = Files.createTempDirectory("chord-snapshot");
+		path = directory.resolve(snapshotName);
+
+		song = new Song.Builder("snapshotSong").author("snapshotAuthor").path("snapshotPath").style("snapshotStyle")
+				.reproducciones(7).build().get().asMut();
+		song.registerId(songId);
+		Playlist.Internal playlist = new Playlist.Builder("snapshotPlaylist").description("snapshotDescription")
+				.songs(List.of(song)).build().get().asMut();
+		playlist.registerId(playlistId);
+		user = new User.Builder("snapshotUser").password("pass").birthday(Date.from(Instant.now())).premium(true)
+				.playlists(List.of(playlist)).recentSongs(List.of(song)).favouriteSongs(Set.of(song)).build().get()
+				.asMut();
+		user.registerId(userId);
+
+		// Usuario cuyas referencias no se han utilizado desde que se recuperó.
+		unresolved = new User.Builder("unresolvedUser").password("pass").birthday(Date.from(Instant.now())).build()
+				.get().asMut();
+		unresolved.registerId(unresolvedId);
+		resolved = false;
+		unresolved.setReferenceLoader(
+				new User.References(List.of(unresolvedPlaylistId), List.of(songId), List.of(songId)),
+				u -> resolved = true);
+	}
+
+	@After
+	public void after() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		SnapshotFactory factory = new SnapshotFactory(firstGeneration);
+		write(factory);
+
+		// Escribir la instantánea no resuelve las referencias de los usuarios.
+		assertEquals(false, resolved);
+		assertEquals(false, unresolved.isResolved());
+
+		// Nueva ejecución sobre la misma persistencia, con pools vacías salvo la
+		// playlist que no forma parte de la instantánea.
+		SnapshotFactory next = new SnapshotFactory(factory.generation);
+		Playlist.Internal persisted = new Playlist.Builder("persistedPlaylist").description("persistedDescription")
+				.build().get().asMut();
+		persisted.registerId(unresolvedPlaylistId);
+		next.getPlaylistDAO().intern(persisted);
+		RepositorySnapshot snapshot = new RepositorySnapshot(path, next);
+
+		// Canciones.
+		List<Song.Internal> songs = snapshot.takeSongs().get();
+		assertEquals(1, songs.size());
+		Song.Internal s = songs.get(0);
+		assertNotSame(song, s);
+		assertEquals(songId, s.getId());
+		assertEquals(song.getName(), s.getName());
+		assertEquals(song.getAuthor(), s.getAuthor());
+		assertEquals(song.getPath(), s.getPath());
+		assertEquals(song.getStyle(), s.getStyle());
+		assertEquals(song.getReproducciones(), s.getReproducciones());
+		assertSame(s, next.getSongDAO().recover(songId).get());
+
+		// Usuarios. Se recuperan sin resolver sus referencias.
+		List<User.Internal> users = snapshot.takeUsers().get();
+		assertEquals(2, users.size());
+		User.Internal u = users.stream().filter(r -> r.getId() == userId).findFirst().get();
+		User.Internal v = users.stream().filter(r -> r.getId() == unresolvedId).findFirst().get();
+		assertSame(u, next.getUserDAO().recover(userId).get());
+		assertSame(v, next.getUserDAO().recover(unresolvedId).get());
+		assertEquals(false, u.isResolved());
+		assertEquals(List.of(playlistId), u.getUnresolvedReferences().get().getPlaylistIds());
+		assertEquals(List.of(unresolvedPlaylistId), v.getUnresolvedReferences().get().getPlaylistIds());
+		assertEquals(user.getUserName(), u.getUserName());
+		assertEquals(user.getHashedPassword(), u.getHashedPassword());
+		assertEquals(user.getBirthday(), u.getBirthday());
+		assertEquals(true, u.isPremium());
+
+		// Las referencias se resuelven sobre los objetos de la pool.
+		Playlist p = u.getPlaylists().get(0);
+		assertSame(p, next.getPlaylistDAO().recover(playlistId).get());
+		assertEquals("snapshotPlaylist", p.getName());
+		assertEquals("snapshotDescription", p.getDescription());
+		assertSame(s, p.getSongs().get(0));
+		assertSame(s, u.getRecentSongs().get(0));
+		assertEquals(Set.of(s), u.getFavouriteSongs());
+		assertEquals(Set.of(), u.takeChanges());
+
+		assertSame(persisted, v.getPlaylists().get(0).asMut());
+		assertSame(s, v.getRecentSongs().get(0));
+		assertEquals(Set.of(), v.takeChanges());
+
+		// Sólo se obtienen una vez.
+		assertEquals(true, snapshot.takeSongs().isEmpty());
+		assertEquals(true, snapshot.takeUsers().isEmpty());
+	}
+
+	@Test
+	public void testCorruption() throws IOException {
+		SnapshotFactory factory = new SnapshotFactory(firstGeneration);
+		write(factory);
+
+		// Un byte alterado invalida la suma de control.
+		byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(path, bytes);
+
+		RepositorySnapshot snapshot = new RepositorySnapshot(path, new SnapshotFactory(factory.generation));
+		assertEquals(true, snapshot.takeSongs().isEmpty());
+		assertEquals(true, snapshot.takeUsers().isEmpty());
+	}
+
+	@Test
+	public void testGenerationMismatch() {
+		SnapshotFactory factory = new SnapshotFactory(firstGeneration);
+		write(factory);
+
+		// Otra instancia ha escrito en persistencia después de la instantánea.
+		RepositorySnapshot snapshot = new RepositorySnapshot(path, new SnapshotFactory(factory.generation + 1));
+		assertEquals(true, snapshot.takeSongs().isEmpty());
+		assertEquals(true, snapshot.takeUsers().isEmpty());
+
+		// Tampoco se escribe una instantánea si la marca ha cambiado desde el
+		// arranque.
+		RepositorySnapshot stale = new RepositorySnapshot(path, factory);
+		stale.setSongSource(() -> List.of(song), () -> true);
+		stale.setUserSource(() -> List.of(user), () -> true);
+		factory.setGeneration(factory.generation + 1);
+		assertEquals(false, stale.write());
+	}
+
+	@Test
+	public void testWriteOrder() {
+		// Los usuarios se escriben antes que las reproducciones, y éstas se
+		// escriben aunque falle la escritura de los usuarios.
+		StringBuilder order = new StringBuilder();
+		RepositorySnapshot snapshot = new RepositorySnapshot(path, new SnapshotFactory(firstGeneration));
+		snapshot.setUserSource(() -> List.of(user), () -> {
+			order.append("users ");
+			return false;
+		});
+		snapshot.setSongSource(() -> List.of(song), () -> {
+			order.append("plays");
+			return true;
+		});
+		assertEquals(false, snapshot.write());
+		assertEquals("users plays", order.toString());
+		assertEquals(false, Files.exists(path));
+	}
+
+	private void write(SnapshotFactory factory) {
+		RepositorySnapshot snapshot = new RepositorySnapshot(path, factory);
+		snapshot.setSongSource(() -> List.of(song), () -> true);
+		snapshot.setUserSource(() -> List.of(user, unresolved), () -> true);
+		assertEquals(true, snapshot.write());
+		assertEquals(true, Files.isRegularFile(path));
+	}
+}